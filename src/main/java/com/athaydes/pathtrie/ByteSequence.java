@@ -0,0 +1,121 @@
+package com.athaydes.pathtrie;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * View of a range of UTF-8 bytes as a sequence of chars, one char per byte.
+ * <p>
+ * Paths given as bytes are matched through this view without being decoded: ASCII bytes are the same chars as in a
+ * String, and literal keys containing other characters are compared in their {@link #byteForm(String) byte form}.
+ * Only {@link #toString()} decodes the bytes, so parameters stay as byte ranges until they are read.
+ */
+final class ByteSequence implements CharSequence {
+
+    // heap bytes are read from the array, direct buffers through absolute gets
+    private final byte[] array;
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+
+    private ByteSequence(byte[] array, ByteBuffer buffer, int offset, int length) {
+        this.array = array;
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    static ByteSequence of(byte[] bytes, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > bytes.length) {
+            throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length +
+                    ", array length: " + bytes.length);
+        }
+        return new ByteSequence(bytes, null, offset, length);
+    }
+
+    /**
+     * @param buffer whose remaining bytes make up the sequence; its position is not changed
+     * @return view of the buffer
+     */
+    static ByteSequence of(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return new ByteSequence(buffer.array(), null, buffer.arrayOffset() + buffer.position(),
+                    buffer.remaining());
+        }
+        return new ByteSequence(null, buffer, buffer.position(), buffer.remaining());
+    }
+
+    /**
+     * @param key a literal key or separator
+     * @return the key with each of its UTF-8 bytes as a char, which is the key itself if it only contains ASCII
+     */
+    static String byteForm(String key) {
+        if (isAscii(key)) {
+            return key;
+        }
+        return new String(key.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+    }
+
+    static boolean isAscii(String key) {
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index: " + index + ", length: " + length);
+        }
+        byte b = array == null ? buffer.get(offset + index) : array[offset + index];
+        return (char) (b & 0xFF);
+    }
+
+    /**
+     * @return index of the first occurrence of the given byte in the range, or -1 if there is none
+     */
+    int indexOf(byte b, int from, int to) {
+        if (array != null) {
+            for (int i = offset + from, end = offset + to; i < end; i++) {
+                if (array[i] == b) {
+                    return i - offset;
+                }
+            }
+        } else {
+            for (int i = offset + from, end = offset + to; i < end; i++) {
+                if (buffer.get(i) == b) {
+                    return i - offset;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public ByteSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + length);
+        }
+        return new ByteSequence(array, buffer, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        if (array != null) {
+            return new String(array, offset, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,7 @@
+package com.athaydes.pathtrie;
+
+final class CatchAllTrieNode<E> extends ParameterizedTrieNode<E> {
+    CatchAllTrieNode(String parameterName) {
+        super(parameterName, null);
+    }
+}
@@ -0,0 +1,223 @@
+package com.athaydes.pathtrie;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Table of literal children looked up by a matcher generated for its keys.
+ * <p>
+ * The matcher is a tree of {@link MethodHandles#guardWithTest(MethodHandle, MethodHandle, MethodHandle)}
+ * combinators: it first switches on the length of the path part, then, among the keys of that length, on the
+ * character at the position which best tells them apart, until a single key is left. That key is then compared with
+ * the path part, and the child under it is returned as a {@link MethodHandles#constant(Class, Object) constant}.
+ * <p>
+ * Paths given as bytes are looked up by the table this one was compiled from if some keys are not pure ASCII, as
+ * the matcher only knows the keys in char form.
+ *
+ * @param <N> type of child
+ */
+final class CompiledLiteralChildren<N> extends LiteralChildren<N> {
+
+    private static final MethodType MATCHER_TYPE =
+            MethodType.methodType(Object.class, CharSequence.class, int.class, int.class);
+
+    private static final MethodHandle NOT_FOUND = MethodHandles.dropArguments(
+            MethodHandles.constant(Object.class, null), 0, MATCHER_TYPE.parameterList());
+
+    private static final MethodHandle LENGTH_BELOW;
+    private static final MethodHandle CHAR_BELOW;
+    private static final MethodHandle FOLDED_CHAR_BELOW;
+    private static final MethodHandle MATCHES;
+    private static final MethodHandle MATCHES_FOLDED;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodType testType = MethodType.methodType(boolean.class, CharSequence.class, int.class, int.class);
+        try {
+            LENGTH_BELOW = lookup.findStatic(CompiledLiteralChildren.class, "lengthBelow",
+                    testType.insertParameterTypes(0, int.class));
+            CHAR_BELOW = lookup.findStatic(CompiledLiteralChildren.class, "charBelow",
+                    testType.insertParameterTypes(0, int.class, char.class));
+            FOLDED_CHAR_BELOW = lookup.findStatic(CompiledLiteralChildren.class, "foldedCharBelow",
+                    testType.insertParameterTypes(0, int.class, char.class));
+            MATCHES = lookup.findStatic(CompiledLiteralChildren.class, "matches",
+                    testType.insertParameterTypes(0, String.class));
+            MATCHES_FOLDED = lookup.findStatic(CompiledLiteralChildren.class, "matchesFolded",
+                    testType.insertParameterTypes(0, String.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final MethodHandle matcher;
+
+    private CompiledLiteralChildren(LiteralChildren<N> source) {
+        super(source);
+        this.matcher = matcher(source);
+    }
+
+    /**
+     * @param source table to compile
+     * @param <N>    type of child
+     * @return the compiled table, or the given table if it is empty or already compiled
+     */
+    static <N> LiteralChildren<N> compile(LiteralChildren<N> source) {
+        if (source.size() == 0 || source instanceof CompiledLiteralChildren) {
+            return source;
+        }
+        return new CompiledLiteralChildren<>(source);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    N lookUp(CharSequence path, int start, int end) {
+        if (byteForms != null && isByteView(path)) {
+            return byteForms.lookUp(path, start, end);
+        }
+        try {
+            return (N) (Object) matcher.invokeExact(path, start, end);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            // the matcher only calls methods of this class, which throw no checked exceptions
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle matcher(LiteralChildren<?> source) {
+        Map<Integer, List<Integer>> indexesByLength = new TreeMap<>();
+        for (int i = 0; i < source.size(); i++) {
+            indexesByLength.computeIfAbsent(source.keys[i].length(), length -> new ArrayList<>()).add(i);
+        }
+        int[] lengths = new int[indexesByLength.size()];
+        List<List<Integer>> groups = new ArrayList<>(lengths.length);
+        int index = 0;
+        for (Map.Entry<Integer, List<Integer>> entry : indexesByLength.entrySet()) {
+            lengths[index++] = entry.getKey();
+            groups.add(entry.getValue());
+        }
+        return switchOnLength(source, lengths, groups, 0, lengths.length);
+    }
+
+    /**
+     * Binary search of the length of the path part among the given lengths, from the given index (inclusive) to the
+     * given index (exclusive).
+     */
+    private static MethodHandle switchOnLength(LiteralChildren<?> source, int[] lengths, List<List<Integer>> groups,
+                                               int from, int to) {
+        if (to - from == 1) {
+            // the length is checked when the last key left is compared with the path part
+            return switchOnChars(source, groups.get(from));
+        }
+        int middle = (from + to) >>> 1;
+        return MethodHandles.guardWithTest(
+                MethodHandles.insertArguments(LENGTH_BELOW, 0, lengths[middle]),
+                switchOnLength(source, lengths, groups, from, middle),
+                switchOnLength(source, lengths, groups, middle, to));
+    }
+
+    /**
+     * Switch on the characters of the path part, given the indexes of keys which all have the same length.
+     */
+    private static MethodHandle switchOnChars(LiteralChildren<?> source, List<Integer> indexes) {
+        if (indexes.size() == 1) {
+            int index = indexes.get(0);
+            return MethodHandles.guardWithTest(
+                    MethodHandles.insertArguments(source.ignoreCase ? MATCHES_FOLDED : MATCHES, 0,
+                            source.keys[index]),
+                    MethodHandles.dropArguments(MethodHandles.constant(Object.class, source.child(index)),
+                            0, MATCHER_TYPE.parameterList()),
+                    NOT_FOUND);
+        }
+        int position = mostDistinctPosition(source.keys, indexes);
+        Map<Character, List<Integer>> indexesByChar = new TreeMap<>();
+        for (int index : indexes) {
+            indexesByChar.computeIfAbsent(source.keys[index].charAt(position), c -> new ArrayList<>()).add(index);
+        }
+        char[] chars = new char[indexesByChar.size()];
+        List<List<Integer>> groups = new ArrayList<>(chars.length);
+        int i = 0;
+        for (Map.Entry<Character, List<Integer>> entry : indexesByChar.entrySet()) {
+            chars[i++] = entry.getKey();
+            groups.add(entry.getValue());
+        }
+        return switchOnChar(source, position, chars, groups, 0, chars.length);
+    }
+
+    /**
+     * Binary search of the character of the path part at the given position among the given characters, from the
+     * given index (inclusive) to the given index (exclusive).
+     */
+    private static MethodHandle switchOnChar(LiteralChildren<?> source, int position, char[] chars,
+                                             List<List<Integer>> groups, int from, int to) {
+        if (to - from == 1) {
+            return switchOnChars(source, groups.get(from));
+        }
+        int middle = (from + to) >>> 1;
+        return MethodHandles.guardWithTest(
+                MethodHandles.insertArguments(source.ignoreCase ? FOLDED_CHAR_BELOW : CHAR_BELOW, 0,
+                        position, chars[middle]),
+                switchOnChar(source, position, chars, groups, from, middle),
+                switchOnChar(source, position, chars, groups, middle, to));
+    }
+
+    /**
+     * @return the position at which the given keys, which all have the same length, have the most distinct
+     * characters
+     */
+    private static int mostDistinctPosition(String[] keys, List<Integer> indexes) {
+        int length = keys[indexes.get(0)].length();
+        int result = 0;
+        int maxDistinct = 0;
+        for (int position = 0; position < length; position++) {
+            int distinct = 0;
+            char[] seen = new char[indexes.size()];
+            for (int index : indexes) {
+                char c = keys[index].charAt(position);
+                boolean found = false;
+                for (int i = 0; i < distinct; i++) {
+                    if (seen[i] == c) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    seen[distinct++] = c;
+                }
+            }
+            if (distinct > maxDistinct) {
+                maxDistinct = distinct;
+                result = position;
+            }
+        }
+        return result;
+    }
+
+    private static boolean lengthBelow(int bound, CharSequence path, int start, int end) {
+        return end - start < bound;
+    }
+
+    // path parts too short to have the position can take any branch, as they are rejected by the final comparison
+
+    private static boolean charBelow(int position, char bound, CharSequence path, int start, int end) {
+        return start + position < end && path.charAt(start + position) < bound;
+    }
+
+    private static boolean foldedCharBelow(int position, char bound, CharSequence path, int start, int end) {
+        return start + position < end && fold(path.charAt(start + position), false) < bound;
+    }
+
+    private static boolean matches(String key, CharSequence path, int start, int end) {
+        return key.length() == end - start && regionMatches(key, path, start);
+    }
+
+    private static boolean matchesFolded(String key, CharSequence path, int start, int end) {
+        return key.length() == end - start && regionMatchesFolded(key, path, start, false);
+    }
+
+}
@@ -1,18 +1,41 @@
 package com.athaydes.pathtrie;
 
+import java.util.AbstractList;
 import java.util.Collections;
-import java.util.Map;
+import java.util.LinkedHashSet;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.UUID;
 
+/**
+ * Parameters are kept as ranges of the path that was looked up, and are only turned into Strings when read.
+ * <p>
+ * Typed parameters are also available as the primitive values parsed while the path was matched.
+ */
 final class DefaultParameterizedElement<E> implements ParameterizedElement<E> {
 
     private final Box<E> element;
-    private final Map<String, String> parameters;
+    private final CharSequence path;
+    private final ImmutablePathTrie.Parameters parameters;
+    private final int parameterCount;
+    private String[] parameterValues;
+    private Set<String> parameterNames;
 
-    DefaultParameterizedElement(Box<E> element, Map<String, String> parameters) {
+    /**
+     * @param element        the element
+     * @param path           the path the element was found under
+     * @param parameters     the parameters matched in the path
+     * @param parameterCount number of parameters visible to this element, which may be less than the number of
+     *                       parameters given so that elements located along the same path can share them
+     */
+    DefaultParameterizedElement(Box<E> element,
+                                CharSequence path,
+                                ImmutablePathTrie.Parameters parameters,
+                                int parameterCount) {
         this.element = element;
-        this.parameters = Collections.unmodifiableMap(parameters);
+        this.path = path;
+        this.parameters = parameters;
+        this.parameterCount = parameterCount;
     }
 
     @Override
@@ -22,16 +45,83 @@ final class DefaultParameterizedElement<E> implements ParameterizedElement<E> {
 
     @Override
     public Set<String> getParameterNames() {
-        return parameters.keySet();
+        if (parameterNames == null) {
+            parameterNames = Collections.unmodifiableSet(new LinkedHashSet<>(new AbstractList<String>() {
+                @Override
+                public String get(int index) {
+                    return parameters.nodes[index].parameterName;
+                }
+
+                @Override
+                public int size() {
+                    return parameterCount;
+                }
+            }));
+        }
+        return parameterNames;
+    }
+
+    @Override
+    public int getParameterCount() {
+        return parameterCount;
     }
 
     @Override
     public String param(String parameterName) {
-        String value = parameters.get(parameterName);
+        for (int i = 0; i < parameterCount; i++) {
+            if (parameters.nodes[i].parameterName.equals(parameterName)) {
+                return param(i);
+            }
+        }
+        throw new NoSuchElementException();
+    }
+
+    @Override
+    public String param(int index) {
+        checkIndex(index);
+        if (parameterValues == null) {
+            parameterValues = new String[parameterCount];
+        }
+        String value = parameterValues[index];
         if (value == null) {
-            throw new NoSuchElementException();
+            value = path.subSequence(parameters.bounds[index * 2], parameters.bounds[index * 2 + 1]).toString();
+            parameterValues[index] = value;
         }
         return value;
     }
 
+    @Override
+    public long paramLong(int index) {
+        checkIndex(index);
+        ParameterType type = parameters.nodes[index].type;
+        if (type == ParameterType.LONG || type == ParameterType.INT) {
+            return parameters.values[index * 2];
+        }
+        return ParameterizedElement.super.paramLong(index);
+    }
+
+    @Override
+    public int paramInt(int index) {
+        checkIndex(index);
+        if (parameters.nodes[index].type == ParameterType.INT) {
+            return (int) parameters.values[index * 2];
+        }
+        return ParameterizedElement.super.paramInt(index);
+    }
+
+    @Override
+    public UUID paramUuid(int index) {
+        checkIndex(index);
+        if (parameters.nodes[index].type == ParameterType.UUID) {
+            return new UUID(parameters.values[index * 2], parameters.values[index * 2 + 1]);
+        }
+        return ParameterizedElement.super.paramUuid(index);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= parameterCount) {
+            throw new NoSuchElementException();
+        }
+    }
+
 }
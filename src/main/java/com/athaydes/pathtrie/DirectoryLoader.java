@@ -0,0 +1,66 @@
+package com.athaydes.pathtrie;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+
+/**
+ * Task that puts the files under a directory tree into a {@link MutableTrieNode}, loading sub-directories in
+ * parallel.
+ * <p>
+ * Each task only modifies the node of its own directory, and each entry of a directory has a node of its own, so no
+ * node is ever modified by more than one task. Nodes of sub-directories without any regular file under them are
+ * removed once their tasks are done.
+ */
+final class DirectoryLoader<E> extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Path directory;
+    private final MutableTrieNode<E> node;
+    private final Function<? super Path, ? extends E> elementForFile;
+
+    DirectoryLoader(Path directory,
+                    MutableTrieNode<E> node,
+                    Function<? super Path, ? extends E> elementForFile) {
+        this.directory = directory;
+        this.node = node;
+        this.elementForFile = elementForFile;
+    }
+
+    @Override
+    protected void compute() {
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            stream.forEach(entries::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // directory streams have no defined order
+        entries.sort(null);
+
+        List<DirectoryLoader<E>> subDirectories = new ArrayList<>();
+        for (Path entry : entries) {
+            // names are literal parts, even if they start with a parameter prefix
+            String name = entry.getFileName().toString();
+            if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                subDirectories.add(new DirectoryLoader<>(entry, node.literalChild(name), elementForFile));
+            } else if (Files.isRegularFile(entry, LinkOption.NOFOLLOW_LINKS)) {
+                node.literalChild(name).element = new Box.SimpleBox<>(elementForFile.apply(entry));
+            }
+        }
+        invokeAll(subDirectories);
+        for (DirectoryLoader<E> subDirectory : subDirectories) {
+            if (subDirectory.node.isEmpty()) {
+                node.childrenByPath.remove(subDirectory.directory.getFileName().toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.athaydes.pathtrie;
+
+import java.util.Optional;
+
+final class EmptyTrie implements PathTrie<Object> {
+
+    static final EmptyTrie INSTANCE = new EmptyTrie();
+
+    private EmptyTrie() {
+    }
+
+    @Override
+    public Optional<Object> get(String path) {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<ParameterizedElement<Object>> getParameterized(String path) {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<PathTrie<Object>> getChild(String path) {
+        return Optional.empty();
+    }
+
+}
@@ -0,0 +1,357 @@
+package com.athaydes.pathtrie;
+
+import com.athaydes.pathtrie.ImmutablePathTrie.ImmutableTrieNode;
+import com.athaydes.pathtrie.ImmutablePathTrie.ParameterizedImmutableTrieNode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Query of the routes of a trie whose templates match a glob pattern.
+ * <p>
+ * The pattern is split into parts as paths are. A part {@code **} matches any number of parts, including none, while
+ * other parts match a single part of a template: {@code *} matches any number of characters, {@code ?} a single
+ * character and {@code [...]} any of the characters in the brackets, or not in the brackets if the first character
+ * is {@code !}. A backslash escapes the character following it. Template parts of parameters are matched as written
+ * in the template, e.g. {@code :id<int>}.
+ * <p>
+ * The trie is walked keeping the set of positions of the pattern that may match each node, so branches are pruned
+ * as soon as no position can match, and pattern parts without wildcards are looked up directly among the literal
+ * children of a node.
+ */
+final class GlobQuery<E> {
+
+    private static final String DOUBLE_STAR = "**";
+
+    private final ImmutablePathTrie<E> trie;
+
+    // each part of the pattern, as a literal if it has no wildcards, or null
+    private final String[] literals;
+
+    // each part of the pattern, compiled unless it is a literal or a double star
+    private final Pattern[] patterns;
+
+    private final boolean[] doubleStars;
+
+    private GlobQuery(ImmutablePathTrie<E> trie, List<String> parts) {
+        if (parts.size() >= Long.SIZE) {
+            throw new IllegalArgumentException("Glob pattern has too many parts: " + parts.size());
+        }
+        this.trie = trie;
+        this.literals = new String[parts.size()];
+        this.patterns = new Pattern[parts.size()];
+        this.doubleStars = new boolean[parts.size()];
+        for (int i = 0; i < parts.size(); i++) {
+            String part = parts.get(i);
+            if (part.equals(DOUBLE_STAR)) {
+                doubleStars[i] = true;
+            } else if (isLiteral(part)) {
+                String literal = unescape(part);
+                literals[i] = trie.isIgnoringCase() ? LiteralChildren.fold(literal) : literal;
+            } else {
+                patterns[i] = Pattern.compile(toRegex(part),
+                        trie.isIgnoringCase() ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0);
+            }
+        }
+    }
+
+    static <E> Stream<PathTrieEntry<E>> of(PathTrie<E> trie, String pattern, boolean parallel) {
+        if (trie instanceof EmptyTrie) {
+            return Stream.empty();
+        }
+        ImmutablePathTrie<E> immutableTrie = ImmutablePathTrie.unwrap(trie);
+        if (immutableTrie == null) {
+            throw new IllegalArgumentException("Only tries created by a PathTrieBuilder can be queried: " +
+                    trie.getClass().getName());
+        }
+        List<String> parts = new ArrayList<>();
+        immutableTrie.getPathSplitter().apply(pattern).forEach(parts::add);
+        GlobQuery<E> query = new GlobQuery<>(immutableTrie, parts);
+        Deque<Frame<E>> pending = new ArrayDeque<>();
+        pending.push(new Frame<>(null, null, immutableTrie.getRoot(), query.closure(1L)));
+        return StreamSupport.stream(query.new Walker(pending), parallel);
+    }
+
+    private static boolean isLiteral(String part) {
+        for (int i = 0; i < part.length(); i++) {
+            char c = part.charAt(i);
+            if (c == '*' || c == '?' || c == '[') {
+                return false;
+            }
+            if (c == '\\') {
+                i++;
+            }
+        }
+        return true;
+    }
+
+    private static String unescape(String part) {
+        if (part.indexOf('\\') < 0) {
+            return part;
+        }
+        StringBuilder result = new StringBuilder(part.length());
+        for (int i = 0; i < part.length(); i++) {
+            char c = part.charAt(i);
+            if (c == '\\' && i + 1 < part.length()) {
+                c = part.charAt(++i);
+            }
+            result.append(c);
+        }
+        return result.toString();
+    }
+
+    private static String toRegex(String part) {
+        StringBuilder regex = new StringBuilder(part.length() + 8);
+        for (int i = 0; i < part.length(); i++) {
+            char c = part.charAt(i);
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else if (c == '[') {
+                int end = part.indexOf(']', i + 2);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unclosed character class in glob pattern: '" + part + "'");
+                }
+                regex.append('[');
+                int start = i + 1;
+                if (part.charAt(start) == '!') {
+                    regex.append('^');
+                    start++;
+                }
+                for (int j = start; j < end; j++) {
+                    char member = part.charAt(j);
+                    if (member == '\\' || member == '[' || member == '&' || member == '^') {
+                        regex.append('\\');
+                    }
+                    regex.append(member);
+                }
+                regex.append(']');
+                i = end;
+            } else {
+                if (c == '\\' && i + 1 < part.length()) {
+                    c = part.charAt(++i);
+                }
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return regex.toString();
+    }
+
+    /**
+     * @return the given positions, together with the positions following double stars, which may match nothing
+     */
+    private long closure(long positions) {
+        for (int i = 0; i < doubleStars.length; i++) {
+            if (doubleStars[i] && (positions & (1L << i)) != 0) {
+                positions |= 1L << (i + 1);
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * @return the positions of the pattern after matching the given template part from the given positions
+     */
+    private long advance(long positions, String templatePart) {
+        long result = 0L;
+        for (int i = 0; i < literals.length; i++) {
+            if ((positions & (1L << i)) == 0) {
+                continue;
+            }
+            if (doubleStars[i]) {
+                result |= 1L << i;
+            } else if (literals[i] != null
+                    ? literals[i].equals(templatePart) ||
+                    trie.isIgnoringCase() && literals[i].equalsIgnoreCase(templatePart)
+                    : patterns[i].matcher(templatePart).matches()) {
+                result |= 1L << (i + 1);
+            }
+        }
+        return closure(result);
+    }
+
+    /**
+     * @return true if all positions which may still match a part are literals
+     */
+    private boolean onlyLiterals(long positions) {
+        for (int i = 0; i < literals.length; i++) {
+            if ((positions & (1L << i)) != 0 && literals[i] == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isFinal(long positions) {
+        return (positions & (1L << literals.length)) != 0;
+    }
+
+    /**
+     * A node of the trie to visit, with the positions of the pattern that may match it.
+     */
+    private static final class Frame<E> {
+        final Frame<E> parent;
+        final String key;
+        final ImmutableTrieNode<E> node;
+        final long positions;
+
+        Frame(Frame<E> parent, String key, ImmutableTrieNode<E> node, long positions) {
+            this.parent = parent;
+            this.key = key;
+            this.node = node;
+            this.positions = positions;
+        }
+    }
+
+    /**
+     * Depth-first walk of the trie, which can be split by handing over the nodes still to be visited.
+     */
+    private final class Walker implements Spliterator<PathTrieEntry<E>> {
+
+        // nodes still to be visited, the next one on top
+        private final Deque<Frame<E>> pending;
+
+        // entries of the last node visited, not yet given to the consumer
+        private final Deque<PathTrieEntry<E>> found = new ArrayDeque<>(2);
+
+        Walker(Deque<Frame<E>> pending) {
+            this.pending = pending;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super PathTrieEntry<E>> action) {
+            while (found.isEmpty() && !pending.isEmpty()) {
+                visit(pending.pop());
+            }
+            if (found.isEmpty()) {
+                return false;
+            }
+            action.accept(found.poll());
+            return true;
+        }
+
+        @Override
+        public Spliterator<PathTrieEntry<E>> trySplit() {
+            while (found.isEmpty() && pending.size() == 1) {
+                visit(pending.pop());
+            }
+            if (!found.isEmpty() || pending.size() < 2) {
+                return null;
+            }
+            // the nodes on top of the stack come first, so they are handed over
+            Deque<Frame<E>> prefix = new ArrayDeque<>();
+            for (int i = pending.size() / 2; i > 0; i--) {
+                prefix.addLast(pending.pop());
+            }
+            return new Walker(prefix);
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+
+        private void visit(Frame<E> frame) {
+            ImmutableTrieNode<E> node = frame.node;
+            if (frame.parent != null && isFinal(frame.positions)) {
+                addEntries(frame);
+            }
+            List<Frame<E>> children = new ArrayList<>();
+            if (onlyLiterals(frame.positions)) {
+                for (int i = 0; i < literals.length; i++) {
+                    if ((frame.positions & (1L << i)) != 0) {
+                        addLiteralMatches(frame, literals[i], children);
+                    }
+                }
+            } else {
+                node.forEach((key, child) -> addIfMatches(frame, key, child, children));
+            }
+            // push in reverse, so that children are visited in order
+            for (int i = children.size() - 1; i >= 0; i--) {
+                pending.push(children.get(i));
+            }
+        }
+
+        private void addLiteralMatches(Frame<E> frame, String literal, List<Frame<E>> children) {
+            ImmutableTrieNode<E> child = frame.node.getLiteral(literal, 0, literal.length());
+            if (child != null) {
+                addIfMatches(frame, literal, child, children);
+            }
+            // parameters only match a literal part written as in their template
+            if (literal.startsWith(trie.getPathSplitter().parameterizedParameterPrefix()) ||
+                    MutableTrieNode.isCatchAll(literal, trie.getPathSplitter())) {
+                for (ParameterizedImmutableTrieNode<E> typed : frame.node.getTyped()) {
+                    addIfMatches(frame, typed.parameterName, typed, children);
+                }
+                if (frame.node.getParameterized() != null) {
+                    addIfMatches(frame, frame.node.getParameterized().parameterName,
+                            frame.node.getParameterized(), children);
+                }
+                if (frame.node.getCatchAll() != null) {
+                    addIfMatches(frame, frame.node.getCatchAll().parameterName, frame.node.getCatchAll(), children);
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void addIfMatches(Frame<E> frame, String key, ImmutableTrieNode<?> child, List<Frame<E>> children) {
+            for (Frame<E> existing : children) {
+                // two literal positions of the pattern may lead to the same child
+                if (existing.node == child) {
+                    return;
+                }
+            }
+            long positions = advance(frame.positions, trie.templatePart(key, child));
+            if (positions != 0L) {
+                children.add(new Frame<>(frame, key, (ImmutableTrieNode<E>) child, positions));
+            }
+        }
+
+        private void addEntries(Frame<E> frame) {
+            ImmutableTrieNode<E> node = frame.node;
+            String template = null;
+            if (node.element != null) {
+                template = template(frame);
+                found.add(new PathTrieEntry<>(template, null, node.element));
+            }
+            if (node.methodElements != null) {
+                for (HttpMethod method : HttpMethod.values()) {
+                    Box<E> element = node.methodElements[method.ordinal()];
+                    if (element != null) {
+                        if (template == null) {
+                            template = template(frame);
+                        }
+                        found.add(new PathTrieEntry<>(template, method, element));
+                    }
+                }
+            }
+        }
+
+        private String template(Frame<E> frame) {
+            List<String> parts = new ArrayList<>();
+            for (Frame<E> f = frame; f.parent != null; f = f.parent) {
+                parts.add(trie.templatePart(f.key, f.node));
+            }
+            StringBuilder template = new StringBuilder();
+            for (int i = parts.size() - 1; i >= 0; i--) {
+                template.append(parts.get(i));
+                if (i > 0) {
+                    template.append(trie.templateSeparator());
+                }
+            }
+            return template.toString();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.athaydes.pathtrie;
+
+/**
+ * HTTP request methods, used to store and look up different elements for each method under the same path.
+ *
+ * @see PathTrieBuilder#put(HttpMethod, String, Object)
+ * @see PathTrie#getByMethod(HttpMethod, String)
+ */
+public enum HttpMethod {
+    GET, HEAD, POST, PUT, DELETE, CONNECT, OPTIONS, TRACE, PATCH
+}
@@ -1,19 +1,211 @@
 package com.athaydes.pathtrie;
 
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
 
 final class ImmutablePathTrie<E> implements PathTrie<E> {
 
+    private static final Predicate<ImmutableTrieNode<?>> ANY_NODE = node -> true;
+    private static final Predicate<ImmutableTrieNode<?>> HAS_ELEMENT = node -> node.element != null;
+    private static final Predicate<ImmutableTrieNode<?>> HAS_ANY_METHOD_ELEMENT = node ->
+            node.element != null || node.methodElements != null;
+
     private final PathSplitter pathSplitter;
     private final ImmutableTrieNode<E> root;
 
+    // roots of the routes including a host, indexed by the number of host labels
+    private final ImmutableTrieNode<E>[] hostRoots;
+
+    // filter of paths without a host that cannot match, or null if not enabled
+    private final Prefilter prefilter;
+
+    private final boolean ignoreCase;
+
+    // whether literal children are sorted, so that routes can be navigated in order
+    private final boolean sorted;
+
     ImmutablePathTrie(PathSplitter pathSplitter, ImmutableTrieNode<E> root) {
+        this(pathSplitter, root, Collections.emptyList(), null, false, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    ImmutablePathTrie(PathSplitter pathSplitter,
+                      ImmutableTrieNode<E> root,
+                      List<ImmutableTrieNode<E>> hostRoots,
+                      Prefilter prefilter,
+                      boolean ignoreCase,
+                      boolean sorted) {
         this.pathSplitter = pathSplitter;
         this.root = root;
+        this.hostRoots = (ImmutableTrieNode<E>[]) hostRoots.toArray(new ImmutableTrieNode<?>[0]);
+        this.prefilter = prefilter;
+        this.ignoreCase = ignoreCase;
+        this.sorted = sorted;
+    }
+
+    /**
+     * @return the given trie if it is an {@link ImmutablePathTrie}, the trie it is based on if it is a profiled or
+     * held trie, or null otherwise
+     */
+    @SuppressWarnings("unchecked")
+    static <E> ImmutablePathTrie<E> unwrap(PathTrie<E> trie) {
+        if (trie instanceof ImmutablePathTrie) {
+            return (ImmutablePathTrie<E>) trie;
+        }
+        if (trie instanceof PathTrieProfiler) {
+            return unwrap(((PathTrieProfiler<E>) trie).getTrie());
+        }
+        if (trie instanceof PathTrieHolder) {
+            return unwrap(((PathTrieHolder<E>) trie).get());
+        }
+        return null;
+    }
+
+    @Override
+    public PathSplitter getPathSplitter() {
+        return pathSplitter;
+    }
+
+    ImmutableTrieNode<E> getRoot() {
+        return root;
+    }
+
+    /**
+     * @return the roots of the routes including a host, indexed by the number of host labels, with null elements
+     * for numbers of labels without routes
+     */
+    ImmutableTrieNode<E>[] getHostRoots() {
+        return hostRoots;
+    }
+
+    Prefilter getPrefilter() {
+        return prefilter;
+    }
+
+    boolean isIgnoringCase() {
+        return ignoreCase;
+    }
+
+    boolean isSorted() {
+        return sorted;
+    }
+
+    /**
+     * Visit the nodes matched by the given path, if it matches an element.
+     */
+    void forEachMatchedNode(String path, Consumer<ImmutableTrieNode<E>> action) {
+        Match<E> match = match(PathScanner.of(pathSplitter, path), HAS_ANY_METHOD_ELEMENT);
+        if (match != null) {
+            match.forEachNode(action);
+        }
+    }
+
+    /**
+     * @return the node of the element matched by the given path, or null if there is none
+     */
+    ImmutableTrieNode<E> matchedNode(CharSequence path, BatchCursor<E> cursor) {
+        PathScanner scanner = PathScanner.of(pathSplitter, path);
+        if (prefilter != null && !prefilter.mightMatch(scanner)) {
+            return null;
+        }
+        Match<E> match = cursor.match(scanner, HAS_ANY_METHOD_ELEMENT);
+        return match == null ? null : match.nodes[match.size - 1];
+    }
+
+    BatchCursor<E> newCursor() {
+        return new BatchCursor<>(root);
+    }
+
+    /**
+     * Visit each node of this trie, in depth-first order, together with the template of the paths matching it, as
+     * it would be given to a {@link PathTrieBuilder}.
+     */
+    void forEachTemplate(BiConsumer<String, ImmutableTrieNode<E>> action) {
+        forEachTemplate(root, null, templateSeparator(), action);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void forEachTemplate(ImmutableTrieNode<E> node,
+                                 String prefix,
+                                 String separator,
+                                 BiConsumer<String, ImmutableTrieNode<E>> action) {
+        node.forEach((pathPart, child) -> {
+            String template = prefix == null
+                    ? templatePart(pathPart, child)
+                    : prefix + separator + templatePart(pathPart, child);
+            action.accept(template, child);
+            forEachTemplate(child, template, separator, action);
+        });
+    }
+
+    /**
+     * @return the separator between the parts of a template, as given to a {@link PathTrieBuilder}
+     */
+    String templateSeparator() {
+        return templateSeparator(pathSplitter);
+    }
+
+    static String templateSeparator(PathSplitter pathSplitter) {
+        return pathSplitter instanceof SeparatorPathSplitter
+                ? ((SeparatorPathSplitter) pathSplitter).separator
+                : "/";
+    }
+
+    /**
+     * @param pathPart the key of the given node in its parent
+     * @param node     a node of this trie
+     * @return the part of a template matching the node, as given to a {@link PathTrieBuilder}
+     */
+    String templatePart(String pathPart, ImmutableTrieNode<?> node) {
+        if (node instanceof CatchAllImmutableTrieNode) {
+            return pathSplitter.catchAllParameterPrefix() + pathPart;
+        }
+        if (node instanceof ParameterizedImmutableTrieNode) {
+            ParameterType type = ((ParameterizedImmutableTrieNode<?>) node).type;
+            return type == null
+                    ? pathSplitter.parameterizedParameterPrefix() + pathPart
+                    : pathSplitter.parameterizedParameterPrefix() + pathPart + '<' + type.typeName + '>';
+        }
+        return pathPart;
+    }
+
+    /**
+     * @param hits number of times each node was matched
+     * @return copy of this trie with the literal children of each node ordered by decreasing number of hits, or this
+     * trie if its literal children are sorted
+     */
+    ImmutablePathTrie<E> orderedByHits(ToLongFunction<ImmutableTrieNode<?>> hits) {
+        if (sorted) {
+            return this;
+        }
+        return new ImmutablePathTrie<>(pathSplitter, root.orderedByHits(hits), Arrays.asList(hostRoots), prefilter,
+                ignoreCase, false);
+    }
+
+    /**
+     * @return copy of this trie looking up literal children with {@link CompiledLiteralChildren compiled} tables
+     */
+    ImmutablePathTrie<E> compiled() {
+        List<ImmutableTrieNode<E>> compiledHostRoots = new ArrayList<>(hostRoots.length);
+        for (ImmutableTrieNode<E> hostRoot : hostRoots) {
+            compiledHostRoots.add(hostRoot == null ? null : hostRoot.compiled());
+        }
+        return new ImmutablePathTrie<>(pathSplitter, root.compiled(), compiledHostRoots, prefilter,
+                ignoreCase, sorted);
     }
 
     @Override
@@ -23,37 +215,334 @@ final class ImmutablePathTrie<E> implements PathTrie<E> {
 
     @Override
     public Optional<ParameterizedElement<E>> getParameterized(String path) {
-        final Iterable<String> pathParts = pathSplitter.apply(path);
-        Map<String, String> parameterMap = new HashMap<>();
-        return findNode(pathParts, parameterMap)
-                .map(n -> n.element == null
-                        ? null
-                        : new DefaultParameterizedElement<>(n.element, parameterMap));
+        return getParameterized(PathScanner.of(pathSplitter, path));
+    }
+
+    /**
+     * Same as {@link #getParameterized(String)}, but also visiting the nodes matched by the path if it matches.
+     */
+    Optional<ParameterizedElement<E>> getParameterized(String path, Consumer<ImmutableTrieNode<E>> visitor) {
+        return getParameterized(PathScanner.of(pathSplitter, path), visitor);
+    }
+
+    @Override
+    public Optional<ParameterizedElement<E>> getParameterized(Path path) {
+        return getParameterized(PathScanner.of(pathSplitter, path));
+    }
+
+    @Override
+    public Optional<ParameterizedElement<E>> getParameterized(ByteBuffer path) {
+        return getParameterized(PathScanner.of(pathSplitter, ByteSequence.of(path)));
+    }
+
+    @Override
+    public Optional<ParameterizedElement<E>> getParameterized(byte[] path, int offset, int length) {
+        return getParameterized(PathScanner.of(pathSplitter, ByteSequence.of(path, offset, length)));
+    }
+
+    private Optional<ParameterizedElement<E>> getParameterized(PathScanner scanner) {
+        return getParameterized(scanner, null);
+    }
+
+    private Optional<ParameterizedElement<E>> getParameterized(PathScanner scanner,
+                                                               Consumer<ImmutableTrieNode<E>> visitor) {
+        if (prefilter != null && !prefilter.mightMatch(scanner)) {
+            return Optional.empty();
+        }
+        Match<E> match = match(scanner, HAS_ELEMENT);
+        if (match == null) {
+            return Optional.empty();
+        }
+        if (visitor != null) {
+            match.forEachNode(visitor);
+        }
+        return Optional.of(match.elementAt(match.size - 1, match.parameters()));
+    }
+
+    @Override
+    public Optional<ParameterizedElement<E>> getByRequestTarget(String target) {
+        return getParameterized(PathScanner.ofRequestTarget(pathSplitter, target));
+    }
+
+    @Override
+    public Optional<E> get(String host, String path) {
+        return getParameterized(host, path).map(ParameterizedElement::getElement);
+    }
+
+    @Override
+    public Optional<ParameterizedElement<E>> getParameterized(String host, String path) {
+        PathScanner.HostPathScanner scanner = new PathScanner.HostPathScanner(
+                host, PathScanner.of(pathSplitter, path));
+        int labelCount = scanner.labelCount();
+        if (labelCount >= hostRoots.length || hostRoots[labelCount] == null) {
+            return Optional.empty();
+        }
+        Match<E> match = match(hostRoots[labelCount], scanner, HAS_ELEMENT);
+        if (match == null) {
+            return Optional.empty();
+        }
+        return Optional.of(match.elementAt(match.size - 1, match.parameters()));
+    }
+
+    @Override
+    public MethodMatch<E> getByMethod(HttpMethod method, String path) {
+        return getByMethod(method, path, null);
+    }
+
+    /**
+     * Same as {@link #getByMethod(HttpMethod, String)}, but also visiting the nodes matched by the path if it matches
+     * an element for the method.
+     */
+    MethodMatch<E> getByMethod(HttpMethod method, String path, Consumer<ImmutableTrieNode<E>> visitor) {
+        PathScanner scanner = PathScanner.of(pathSplitter, path);
+        if (prefilter != null && !prefilter.mightMatch(scanner)) {
+            return MethodMatch.notFound();
+        }
+        MethodAccept accept = new MethodAccept(method);
+        Match<E> match = match(root, scanner, accept);
+        if (match != null) {
+            if (visitor != null) {
+                match.forEachNode(visitor);
+            }
+            Box<E> element = match.nodes[match.size - 1].elementFor(method);
+            return MethodMatch.found(match.elementAt(match.size - 1, match.parameters(), element));
+        }
+        return accept.allowedMethods == 0
+                ? MethodMatch.notFound()
+                : MethodMatch.methodNotAllowed(accept.allowedMethods());
     }
 
     @Override
     public Optional<PathTrie<E>> getChild(String path) {
-        Iterable<String> pathParts = pathSplitter.apply(path);
-        return findNode(pathParts, null).map(n -> new ImmutablePathTrie<>(pathSplitter, n));
+        Match<E> match = match(PathScanner.of(pathSplitter, path), ANY_NODE);
+        if (match == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new ImmutablePathTrie<>(pathSplitter, match.nodes[match.size - 1],
+                Collections.emptyList(), null, ignoreCase, sorted));
     }
 
-    private Optional<ImmutableTrieNode<E>> findNode(Iterable<String> pathParts, Map<String, String> parameterMap) {
-        ImmutableTrieNode<E> current = root;
-        for (String pathPart : pathParts) {
-            current = current.get(pathPart);
-            if (current == null) {
-                break;
-            } else if (parameterMap != null && current instanceof ParameterizedImmutableTrieNode) {
-                parameterMap.put(((ParameterizedImmutableTrieNode<E>) current).parameterName, pathPart);
+    @Override
+    public void forEachOnPath(String path, Consumer<? super ParameterizedElement<E>> action) {
+        PathScanner scanner = PathScanner.of(pathSplitter, path);
+        int cursor = scanner.first();
+        if (cursor < 0) {
+            return;
+        }
+        Match<E> match = new Match<>(scanner.path, root.height);
+        match.partial = new Match<>(scanner.path, root.height);
+        if (!match(root, scanner, cursor, 0, match, HAS_ELEMENT)) {
+            // no element under the full path, so use the route to the deepest element found on the way
+            match = match.partial;
+        }
+        Parameters parameters = match.parameters();
+        for (int i = 0; i < match.size; i++) {
+            if (match.nodes[i].element != null) {
+                action.accept(match.elementAt(i, parameters));
             }
         }
-        return Optional.ofNullable(current == null || current == root ? null : current);
+    }
+
+    /**
+     * Match the given path against this trie.
+     * <p>
+     * Literal children are always tried first, but when the branch under a literal child does not match the rest of
+     * the path, the typed parameter siblings which accept the path part are tried, then the untyped parameter sibling
+     * and finally the catch-all sibling, before giving up.
+     * <p>
+     * As each node sits at a single depth in the trie, a node can only ever be tried against one path part index,
+     * hence no node is visited more than once in a lookup and the cost of backtracking is bounded by the number of
+     * nodes matching prefixes of the path, regardless of how the path is crafted.
+     *
+     * @param scanner of the path
+     * @param accept  whether the last node is accepted as a match
+     * @return the match, or null if the path does not match
+     */
+    private Match<E> match(PathScanner scanner, Predicate<ImmutableTrieNode<?>> accept) {
+        return match(root, scanner, accept);
+    }
+
+    private static <E> Match<E> match(ImmutableTrieNode<E> root,
+                                      PathScanner scanner,
+                                      Predicate<ImmutableTrieNode<?>> accept) {
+        int cursor = scanner.first();
+        if (cursor < 0) {
+            return null;
+        }
+        Match<E> match = new Match<>(scanner.path, root.height);
+        return match(root, scanner, cursor, 0, match, accept) ? match : null;
+    }
+
+    private static <E> boolean match(ImmutableTrieNode<E> node,
+                                     PathScanner scanner,
+                                     int cursor,
+                                     int depth,
+                                     Match<E> match,
+                                     Predicate<ImmutableTrieNode<?>> accept) {
+        if (cursor < 0) {
+            match.size = depth;
+            return accept.test(node);
+        }
+        if (match.partial != null && node.element != null && depth > match.partial.size) {
+            match.partial.copyOf(match, depth);
+        }
+        int start = scanner.start(cursor);
+        int end = scanner.end(cursor);
+        int next = scanner.next(cursor, end);
+        ImmutableTrieNode<E> child = node.getLiteral(scanner.path, start, end);
+        if (child != null) {
+            match.set(depth, child, start, end);
+            if (match(child, scanner, next, depth + 1, match, accept)) {
+                return true;
+            }
+        }
+        return matchParameters(node, scanner, cursor, depth, match, accept);
+    }
+
+    /**
+     * Same as {@link #match(ImmutableTrieNode, PathScanner, int, int, Match, Predicate)}, but only trying the
+     * parameterized children of the node.
+     */
+    private static <E> boolean matchParameters(ImmutableTrieNode<E> node,
+                                               PathScanner scanner,
+                                               int cursor,
+                                               int depth,
+                                               Match<E> match,
+                                               Predicate<ImmutableTrieNode<?>> accept) {
+        int start = scanner.start(cursor);
+        int end = scanner.end(cursor);
+        int next = scanner.next(cursor, end);
+        for (ParameterizedImmutableTrieNode<E> typedChild : node.getTyped()) {
+            // the parsed value is left in the slots of this depth if the branch matches
+            if (typedChild.type.parse(scanner.path, start, end, match.values, depth * 2)) {
+                match.set(depth, typedChild, start, end);
+                if (match(typedChild, scanner, next, depth + 1, match, accept)) {
+                    return true;
+                }
+            }
+        }
+        ImmutableTrieNode<E> child = node.getParameterized();
+        if (child != null) {
+            match.set(depth, child, start, end);
+            if (match(child, scanner, next, depth + 1, match, accept)) {
+                return true;
+            }
+        }
+        child = node.getCatchAll();
+        if (child != null && accept.test(child)) {
+            // no need to look any further into the path, the remainder is captured as a range
+            match.size = depth + 1;
+            match.set(depth, child, start, scanner.limit());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Re-uses the work of matching the parts a path shares with the previous one, which is why batches must be sorted.
+     */
+    @Override
+    public void getAll(List<? extends CharSequence> paths, ResultSink<E> sink) {
+        requireSorted(paths);
+        BatchCursor<E> cursor = new BatchCursor<>(root);
+        int index = 0;
+        for (CharSequence path : paths) {
+            PathScanner scanner = PathScanner.of(pathSplitter, path);
+            Match<E> match = prefilter == null || prefilter.mightMatch(scanner)
+                    ? cursor.match(scanner, HAS_ELEMENT)
+                    : null;
+            if (match == null) {
+                sink.notFound(index);
+            } else {
+                sink.found(index, match.elementAt(match.size - 1, match.parameters()));
+            }
+            index++;
+        }
+    }
+
+    /**
+     * @param paths batch of paths
+     * @throws IllegalArgumentException if the paths are not in their natural order
+     */
+    static void requireSorted(List<? extends CharSequence> paths) {
+        CharSequence previous = null;
+        int index = 0;
+        for (CharSequence path : paths) {
+            if (previous != null && compare(previous, path) > 0) {
+                throw new IllegalArgumentException("Batch of paths is not sorted: '" + path + "' at index " + index +
+                        " comes after '" + previous + "'");
+            }
+            previous = path;
+            index++;
+        }
+    }
+
+    /**
+     * Same as {@link String#compareTo(String)}, for any character sequences.
+     */
+    private static int compare(CharSequence a, CharSequence b) {
+        int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            char x = a.charAt(i);
+            char y = b.charAt(i);
+            if (x != y) {
+                return x - y;
+            }
+        }
+        return a.length() - b.length();
+    }
+
+    /**
+     * Accepts nodes with an element for a method and, as a miss backtracks through every branch matching the path,
+     * collects the methods of the other nodes matching the path on the way, to tell 405 from 404 in a single walk.
+     */
+    private static final class MethodAccept implements Predicate<ImmutableTrieNode<?>> {
+        private final int method;
+
+        // bit set of the ordinals of the methods found under the path
+        int allowedMethods;
+
+        MethodAccept(HttpMethod method) {
+            this.method = method.ordinal();
+        }
+
+        @Override
+        public boolean test(ImmutableTrieNode<?> node) {
+            if (node.element != null) {
+                return true;
+            }
+            if (node.methodElements != null) {
+                if (node.methodElements[method] != null) {
+                    return true;
+                }
+                for (int i = 0; i < node.methodElements.length; i++) {
+                    if (node.methodElements[i] != null) {
+                        allowedMethods |= 1 << i;
+                    }
+                }
+            }
+            return false;
+        }
+
+        Set<HttpMethod> allowedMethods() {
+            Set<HttpMethod> result = EnumSet.noneOf(HttpMethod.class);
+            for (HttpMethod method : HttpMethod.values()) {
+                if ((allowedMethods & (1 << method.ordinal())) != 0) {
+                    result.add(method);
+                }
+            }
+            return result;
+        }
     }
 
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
-        builder.append("PathTrie {\n");
+        builder.append("PathTrie ");
+        if (prefilter != null) {
+            builder.append('[').append(prefilter).append("] ");
+        }
+        builder.append("{\n");
         buildString(builder, root, "");
         builder.append("}");
         return builder.toString();
@@ -62,71 +551,673 @@ final class ImmutablePathTrie<E> implements PathTrie<E> {
     private static void buildString(StringBuilder builder, ImmutableTrieNode<?> node, String indent) {
         node.forEach((pathPart, child) -> {
             builder.append(indent);
-            if (child instanceof ParameterizedImmutableTrieNode) {
-                builder.append('<').append(pathPart).append('>');
+            if (child instanceof CatchAllImmutableTrieNode) {
+                builder.append("<*").append(pathPart).append('>');
+            } else if (child instanceof ParameterizedImmutableTrieNode) {
+                builder.append('<').append(pathPart);
+                ParameterType type = ((ParameterizedImmutableTrieNode<?>) child).type;
+                if (type != null) {
+                    builder.append(": ").append(type.typeName);
+                }
+                builder.append('>');
             } else {
                 builder.append(pathPart);
             }
             if (child.element != null) {
                 builder.append(": ").append(child.element);
             }
+            if (child.methodElements != null) {
+                builder.append(' ').append(methodElementsString(child.methodElements));
+            }
             builder.append('\n');
             buildString(builder, child, indent + "  ");
         });
     }
 
+    private static String methodElementsString(Box<?>[] methodElements) {
+        StringBuilder builder = new StringBuilder("{");
+        for (HttpMethod method : HttpMethod.values()) {
+            Box<?> element = methodElements[method.ordinal()];
+            if (element != null) {
+                if (builder.length() > 1) {
+                    builder.append(", ");
+                }
+                builder.append(method).append(": ").append(element);
+            }
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * Matcher of a sequence of paths which re-uses the literal children found for the previous path while the
+     * parts of the current path are the same as its parts.
+     * <p>
+     * For each path, literal children are followed as far as possible, then the search backs off one part at a
+     * time trying the parameterized children, which visits nodes in the same order as
+     * {@link #match(ImmutableTrieNode, PathScanner, int, int, Match, Predicate)}, hence gives the same results.
+     */
+    static final class BatchCursor<E> {
+        private final ImmutableTrieNode<E>[] chain;
+        private final int[] cursors;
+        private final int[] bounds;
+        private CharSequence previousPath;
+
+        // only the parameters copied out of a match are handed out, so a single match can be used for all paths
+        private final Match<E> match;
+
+        // number of path parts matched by literal children in the chain
+        private int length;
+
+        @SuppressWarnings("unchecked")
+        BatchCursor(ImmutableTrieNode<E> root) {
+            this.chain = (ImmutableTrieNode<E>[]) new ImmutableTrieNode<?>[root.height];
+            this.cursors = new int[root.height];
+            this.bounds = new int[root.height * 2];
+            this.chain[0] = root;
+            this.match = new Match<>(null, root.height);
+        }
+
+        Match<E> match(PathScanner scanner, Predicate<ImmutableTrieNode<?>> accept) {
+            int cursor = scanner.first();
+            if (cursor < 0) {
+                return null;
+            }
+            CharSequence path = scanner.path;
+            int depth = 0;
+            if (!(previousPath instanceof String)) {
+                // the previous path may have been mutated since it was matched
+                length = 0;
+            }
+            while (depth < length && cursor >= 0) {
+                int start = scanner.start(cursor);
+                int end = scanner.end(cursor);
+                if (!sameRange(path, start, end, previousPath, bounds[depth * 2], bounds[depth * 2 + 1])) {
+                    break;
+                }
+                bounds[depth * 2] = start;
+                bounds[depth * 2 + 1] = end;
+                cursors[depth++] = cursor;
+                cursor = scanner.next(cursor, end);
+            }
+            while (cursor >= 0 && depth < chain.length - 1) {
+                int start = scanner.start(cursor);
+                int end = scanner.end(cursor);
+                ImmutableTrieNode<E> child = chain[depth].getLiteral(path, start, end);
+                if (child == null) {
+                    break;
+                }
+                chain[depth + 1] = child;
+                bounds[depth * 2] = start;
+                bounds[depth * 2 + 1] = end;
+                cursors[depth++] = cursor;
+                cursor = scanner.next(cursor, end);
+            }
+            length = depth;
+            previousPath = path;
+
+            match.path = path;
+            for (int d = depth; d >= 0; d--) {
+                boolean matched;
+                if (d == depth && cursor < 0) {
+                    match.size = depth;
+                    matched = accept.test(chain[depth]);
+                } else {
+                    // the literal child for this part, if any, has already been tried
+                    matched = matchParameters(chain[d], scanner, d == depth ? cursor : cursors[d], d, match, accept);
+                }
+                if (matched) {
+                    for (int i = 0; i < d; i++) {
+                        match.set(i, chain[i + 1], bounds[i * 2], bounds[i * 2 + 1]);
+                    }
+                    return match;
+                }
+            }
+            return null;
+        }
+
+        private static boolean sameRange(CharSequence path, int start, int end,
+                                         CharSequence other, int otherStart, int otherEnd) {
+            if (end - start != otherEnd - otherStart) {
+                return false;
+            }
+            for (int i = 0; i < end - start; i++) {
+                if (path.charAt(start + i) != other.charAt(otherStart + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The nodes matched by each part of a path, with the range of the path each of them matched.
+     */
+    private static final class Match<E> {
+        CharSequence path;
+        final ImmutableTrieNode<E>[] nodes;
+        final int[] bounds;
+        final long[] values;
+        int size;
+
+        // the match of the deepest node with an element found on the way, only kept when visiting the path
+        Match<E> partial;
+
+        @SuppressWarnings("unchecked")
+        Match(CharSequence path, int capacity) {
+            this.path = path;
+            this.nodes = (ImmutableTrieNode<E>[]) new ImmutableTrieNode<?>[capacity];
+            this.bounds = new int[capacity * 2];
+            this.values = new long[capacity * 2];
+        }
+
+        void set(int depth, ImmutableTrieNode<E> node, int start, int end) {
+            nodes[depth] = node;
+            bounds[depth * 2] = start;
+            bounds[depth * 2 + 1] = end;
+        }
+
+        void forEachNode(Consumer<ImmutableTrieNode<E>> action) {
+            for (int i = 0; i < size; i++) {
+                action.accept(nodes[i]);
+            }
+        }
+
+        void copyOf(Match<E> other, int size) {
+            System.arraycopy(other.nodes, 0, nodes, 0, size);
+            System.arraycopy(other.bounds, 0, bounds, 0, size * 2);
+            System.arraycopy(other.values, 0, values, 0, size * 2);
+            this.size = size;
+        }
+
+        private int parameterCount(int maxDepth) {
+            int count = 0;
+            for (int i = 0; i <= maxDepth; i++) {
+                if (nodes[i] instanceof ParameterizedImmutableTrieNode) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        Parameters parameters() {
+            int count = parameterCount(size - 1);
+            if (count == 0) {
+                return Parameters.NONE;
+            }
+            ParameterizedImmutableTrieNode<?>[] parameterNodes = new ParameterizedImmutableTrieNode<?>[count];
+            int[] parameterBounds = new int[count * 2];
+            long[] parameterValues = new long[count * 2];
+            int index = 0;
+            for (int i = 0; i < size; i++) {
+                if (nodes[i] instanceof ParameterizedImmutableTrieNode) {
+                    parameterNodes[index] = (ParameterizedImmutableTrieNode<?>) nodes[i];
+                    System.arraycopy(bounds, i * 2, parameterBounds, index * 2, 2);
+                    System.arraycopy(values, i * 2, parameterValues, index * 2, 2);
+                    index++;
+                }
+            }
+            return new Parameters(parameterNodes, parameterBounds, parameterValues);
+        }
+
+        /**
+         * Create the element found at the given depth, which only sees the parameters matched up to that depth.
+         */
+        ParameterizedElement<E> elementAt(int depth, Parameters parameters) {
+            return elementAt(depth, parameters, nodes[depth].element);
+        }
+
+        ParameterizedElement<E> elementAt(int depth, Parameters parameters, Box<E> element) {
+            return new DefaultParameterizedElement<>(element, path, parameters, parameterCount(depth));
+        }
+    }
+
+    /**
+     * The parameters matched in a path, with the range of the path each of them matched and, for typed parameters,
+     * their parsed value.
+     */
+    static final class Parameters {
+        static final Parameters NONE = new Parameters(new ParameterizedImmutableTrieNode<?>[0], new int[0], new long[0]);
+
+        final ParameterizedImmutableTrieNode<?>[] nodes;
+        final int[] bounds;
+        final long[] values;
+
+        Parameters(ParameterizedImmutableTrieNode<?>[] nodes, int[] bounds, long[] values) {
+            this.nodes = nodes;
+            this.bounds = bounds;
+            this.values = values;
+        }
+    }
+
     static abstract class ImmutableTrieNode<E> {
         final Box<E> element;
 
-        ImmutableTrieNode(Box<E> element) {
+        /**
+         * Elements for each {@link HttpMethod}, indexed by ordinal, or null if there are none.
+         */
+        final Box<E>[] methodElements;
+
+        /**
+         * Number of nodes in the longest branch starting at this node, including this node.
+         */
+        final int height;
+
+        /**
+         * Number of elements of this node and of all nodes under it, counting each method element.
+         */
+        final long size;
+
+        /**
+         * Minimum number of parts after this node of paths reaching an element under it, or
+         * {@code Integer.MAX_VALUE} if there are no elements under it.
+         */
+        final int minElementDepth;
+
+        /**
+         * Maximum number of parts after this node of paths reaching an element under it, {@code Integer.MAX_VALUE}
+         * if there is a catch-all parameter under it, or 0 if there are no elements under it.
+         */
+        final int maxElementDepth;
+
+        /**
+         * Bloom filter of the names of the parameters under this node, one bit per name.
+         */
+        final long parameterNameBits;
+
+        /**
+         * Whether this node or any node under it has a function element.
+         */
+        final boolean hasFunElements;
+
+        ImmutableTrieNode(Box<E> element, Box<E>[] methodElements, Subtree children) {
             this.element = element;
+            this.methodElements = methodElements;
+            this.height = 1 + children.height;
+            this.size = elementCount() + children.size;
+            this.minElementDepth = children.minElementDepth;
+            this.maxElementDepth = children.maxElementDepth;
+            this.parameterNameBits = children.parameterNameBits;
+            this.hasFunElements = children.hasFunElements || hasFunElement(element, methodElements);
+        }
+
+        boolean hasElements() {
+            return element != null || methodElements != null;
+        }
+
+        private static boolean hasFunElement(Box<?> element, Box<?>[] methodElements) {
+            if (element instanceof Box.FunBox) {
+                return true;
+            }
+            if (methodElements != null) {
+                for (Box<?> methodElement : methodElements) {
+                    if (methodElement instanceof Box.FunBox) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        static long parameterNameBit(String parameterName) {
+            return 1L << (parameterName.hashCode() & 63);
+        }
+
+        /**
+         * @return the number of elements of this node, counting each method element
+         */
+        int elementCount() {
+            int count = element == null ? 0 : 1;
+            if (methodElements != null) {
+                for (Box<E> methodElement : methodElements) {
+                    if (methodElement != null) {
+                        count++;
+                    }
+                }
+            }
+            return count;
+        }
+
+        Box<E> elementFor(HttpMethod method) {
+            if (methodElements != null && methodElements[method.ordinal()] != null) {
+                return methodElements[method.ordinal()];
+            }
+            return element;
+        }
+
+        /**
+         * Get the first child matching the given path part, without considering whether the rest of the path can
+         * be matched under it.
+         */
+        ImmutableTrieNode<E> get(CharSequence path, int start, int end, long[] values, int slot) {
+            ImmutableTrieNode<E> result = getLiteral(path, start, end);
+            if (result == null) {
+                for (ParameterizedImmutableTrieNode<E> typedChild : getTyped()) {
+                    if (typedChild.type.parse(path, start, end, values, slot)) {
+                        return typedChild;
+                    }
+                }
+                result = getParameterized();
+            }
+            if (result == null) {
+                result = getCatchAll();
+            }
+            return result;
         }
 
-        abstract ImmutableTrieNode<E> get(String pathPart);
+        abstract ImmutableTrieNode<E> getLiteral(CharSequence path, int start, int end);
+
+        abstract LiteralChildren<ImmutableTrieNode<E>> getLiterals();
+
+        /**
+         * @param index index of a literal child, up to the number of literal children
+         * @return the number of elements under the literal children before the given index, only known for indexes
+         * after the first one if the literal children are sorted
+         */
+        abstract long literalSizeBefore(int index);
+
+        abstract void forEachLiteral(BiConsumer<String, ImmutableTrieNode<E>> action);
+
+        abstract ParameterizedImmutableTrieNode<E>[] getTyped();
+
+        abstract ParameterizedImmutableTrieNode<E> getParameterized();
+
+        abstract CatchAllImmutableTrieNode<E> getCatchAll();
 
         abstract void forEach(BiConsumer<String, ImmutableTrieNode> action);
+
+        /**
+         * Copy this node, ordering literal children by decreasing number of hits, and only looking up literal children
+         * without hits when no other literal child matches. Children without hits are shared with this node.
+         */
+        abstract ImmutableTrieNode<E> orderedByHits(ToLongFunction<ImmutableTrieNode<?>> hits);
+
+        /**
+         * Copy this node, looking up the literal children of it and of all nodes under it with
+         * {@link CompiledLiteralChildren compiled} tables.
+         */
+        abstract ImmutableTrieNode<E> compiled();
+    }
+
+    /**
+     * Summary of the children of a node, computed once when the node is created so that it never requires visiting
+     * the nodes under them.
+     */
+    static final class Subtree {
+        static final Subtree EMPTY = new Subtree();
+
+        int height;
+        long size;
+        int minElementDepth = Integer.MAX_VALUE;
+        int maxElementDepth;
+        long parameterNameBits;
+        boolean hasFunElements;
+
+        static Subtree of(LiteralChildren<? extends ImmutableTrieNode<?>> childrenByPath,
+                          List<? extends ParameterizedImmutableTrieNode<?>> typedChildren,
+                          ParameterizedImmutableTrieNode<?> parameterizedChild,
+                          CatchAllImmutableTrieNode<?> catchAllChild) {
+            if (childrenByPath.size() == 0 && typedChildren.isEmpty() &&
+                    parameterizedChild == null && catchAllChild == null) {
+                return EMPTY;
+            }
+            Subtree result = new Subtree();
+            for (int i = 0; i < childrenByPath.size(); i++) {
+                result.add(childrenByPath.child(i));
+            }
+            for (ParameterizedImmutableTrieNode<?> child : typedChildren) {
+                result.add(child);
+                result.parameterNameBits |= ImmutableTrieNode.parameterNameBit(child.parameterName);
+            }
+            if (parameterizedChild != null) {
+                result.add(parameterizedChild);
+                result.parameterNameBits |= ImmutableTrieNode.parameterNameBit(parameterizedChild.parameterName);
+            }
+            if (catchAllChild != null) {
+                result.add(catchAllChild);
+                result.parameterNameBits |= ImmutableTrieNode.parameterNameBit(catchAllChild.parameterName);
+                // the catch-all captures any number of remaining parts
+                result.maxElementDepth = Integer.MAX_VALUE;
+            }
+            return result;
+        }
+
+        private void add(ImmutableTrieNode<?> child) {
+            height = Math.max(height, child.height);
+            size += child.size;
+            if (child.hasElements()) {
+                minElementDepth = 1;
+                maxElementDepth = Math.max(maxElementDepth, 1);
+            }
+            if (child.minElementDepth != Integer.MAX_VALUE) {
+                minElementDepth = Math.min(minElementDepth, child.minElementDepth + 1);
+                maxElementDepth = child.maxElementDepth == Integer.MAX_VALUE
+                        ? Integer.MAX_VALUE
+                        : Math.max(maxElementDepth, child.maxElementDepth + 1);
+            }
+            parameterNameBits |= child.parameterNameBits;
+            hasFunElements |= child.hasFunElements;
+        }
     }
 
     static class ImmutableTrieNodeImpl<E> extends ImmutableTrieNode<E> {
 
-        private final Map<String, ImmutableTrieNode<E>> childrenByPath;
+        private final LiteralChildren<ImmutableTrieNode<E>> childrenByPath;
+        private final ParameterizedImmutableTrieNode<E>[] typedChildren;
         private final ParameterizedImmutableTrieNode<E> parameterizedChild;
+        private final CatchAllImmutableTrieNode<E> catchAllChild;
+
+        // number of elements under the literal children before each index, only kept if they are sorted
+        private final long[] literalSizesBefore;
 
         ImmutableTrieNodeImpl(Box<E> element,
+                              Box<E>[] methodElements,
                               Map<String, ImmutableTrieNode<E>> childrenByPath,
-                              ParameterizedImmutableTrieNode<E> parameterizedChild) {
-            super(element);
-            this.childrenByPath = Collections.unmodifiableMap(childrenByPath);
+                              List<ParameterizedImmutableTrieNode<E>> typedChildren,
+                              ParameterizedImmutableTrieNode<E> parameterizedChild,
+                              CatchAllImmutableTrieNode<E> catchAllChild) {
+            this(element, methodElements, LiteralChildren.of(childrenByPath),
+                    typedChildren, parameterizedChild, catchAllChild);
+        }
+
+        @SuppressWarnings("unchecked")
+        ImmutableTrieNodeImpl(Box<E> element,
+                              Box<E>[] methodElements,
+                              LiteralChildren<ImmutableTrieNode<E>> childrenByPath,
+                              List<ParameterizedImmutableTrieNode<E>> typedChildren,
+                              ParameterizedImmutableTrieNode<E> parameterizedChild,
+                              CatchAllImmutableTrieNode<E> catchAllChild) {
+            super(element, methodElements, Subtree.of(childrenByPath, typedChildren, parameterizedChild,
+                    catchAllChild));
+            this.childrenByPath = childrenByPath;
+            this.typedChildren = (ParameterizedImmutableTrieNode<E>[])
+                    typedChildren.toArray(new ParameterizedImmutableTrieNode<?>[0]);
             this.parameterizedChild = parameterizedChild;
+            this.catchAllChild = catchAllChild;
+            this.literalSizesBefore = childrenByPath.sorted ? sizesBefore(childrenByPath) : null;
+        }
+
+        private static long[] sizesBefore(LiteralChildren<? extends ImmutableTrieNode<?>> childrenByPath) {
+            long[] result = new long[childrenByPath.size() + 1];
+            for (int i = 0; i < childrenByPath.size(); i++) {
+                result[i + 1] = result[i] + childrenByPath.child(i).size;
+            }
+            return result;
         }
 
         @Override
         void forEach(BiConsumer<String, ImmutableTrieNode> action) {
             childrenByPath.forEach(action);
+            for (ParameterizedImmutableTrieNode<E> typedChild : typedChildren) {
+                action.accept(typedChild.parameterName, typedChild);
+            }
             if (parameterizedChild != null) {
                 action.accept(parameterizedChild.parameterName, parameterizedChild);
             }
+            if (catchAllChild != null) {
+                action.accept(catchAllChild.parameterName, catchAllChild);
+            }
         }
 
         @Override
-        public ImmutableTrieNode<E> get(String pathPart) {
-            ImmutableTrieNode<E> result = childrenByPath.get(pathPart);
-            if (result == null) {
-                result = parameterizedChild;
+        ImmutableTrieNode<E> getLiteral(CharSequence path, int start, int end) {
+            return childrenByPath.get(path, start, end);
+        }
+
+        @Override
+        LiteralChildren<ImmutableTrieNode<E>> getLiterals() {
+            return childrenByPath;
+        }
+
+        @Override
+        long literalSizeBefore(int index) {
+            // empty tables are not sorted, but have no literal children before the first index
+            return index == 0 ? 0L : literalSizesBefore[index];
+        }
+
+        @Override
+        void forEachLiteral(BiConsumer<String, ImmutableTrieNode<E>> action) {
+            childrenByPath.forEach(action);
+        }
+
+        @Override
+        ParameterizedImmutableTrieNode<E>[] getTyped() {
+            return typedChildren;
+        }
+
+        @Override
+        ParameterizedImmutableTrieNode<E> getParameterized() {
+            return parameterizedChild;
+        }
+
+        @Override
+        CatchAllImmutableTrieNode<E> getCatchAll() {
+            return catchAllChild;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        ImmutableTrieNode<E> orderedByHits(ToLongFunction<ImmutableTrieNode<?>> hits) {
+            List<Integer> order = new ArrayList<>(childrenByPath.size());
+            long totalHits = 0;
+            for (int i = 0; i < childrenByPath.size(); i++) {
+                order.add(i);
+                totalHits += hits.applyAsLong(childrenByPath.child(i));
             }
-            return result;
+            // the sort is stable, so children with the same number of hits keep their order
+            order.sort(Comparator.comparingLong((Integer i) -> hits.applyAsLong(childrenByPath.child(i))).reversed());
+
+            Map<String, ImmutableTrieNode<E>> orderedChildren = new LinkedHashMap<>(order.size() * 2);
+            int hotCount = 0;
+            int coldCount = 0;
+            for (int i : order) {
+                ImmutableTrieNode<E> child = childrenByPath.child(i);
+                long childHits = hits.applyAsLong(child);
+                // children receiving a large share of the hits are scanned before hashing
+                if (childHits > 0 && childHits * LiteralChildren.MAX_LINEAR_SCAN_SIZE >= totalHits) {
+                    hotCount++;
+                }
+                // children without hits are moved out of the way of the others
+                if (childHits == 0) {
+                    coldCount++;
+                }
+                orderedChildren.put(childrenByPath.keys[i], orderedByHits(child, hits));
+            }
+
+            List<ParameterizedImmutableTrieNode<E>> typed = new ArrayList<>(typedChildren.length);
+            for (ParameterizedImmutableTrieNode<E> typedChild : typedChildren) {
+                typed.add((ParameterizedImmutableTrieNode<E>) orderedByHits(typedChild, hits));
+            }
+            return copy(LiteralChildren.of(orderedChildren, hotCount, coldCount, childrenByPath.ignoreCase), typed,
+                    (ParameterizedImmutableTrieNode<E>) orderedByHits(parameterizedChild, hits));
+        }
+
+        private static <E> ImmutableTrieNode<E> orderedByHits(ImmutableTrieNode<E> node,
+                                                              ToLongFunction<ImmutableTrieNode<?>> hits) {
+            return node == null || hits.applyAsLong(node) == 0 ? node : node.orderedByHits(hits);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        ImmutableTrieNode<E> compiled() {
+            List<ParameterizedImmutableTrieNode<E>> typed = new ArrayList<>(typedChildren.length);
+            for (ParameterizedImmutableTrieNode<E> typedChild : typedChildren) {
+                typed.add((ParameterizedImmutableTrieNode<E>) typedChild.compiled());
+            }
+            return copy(CompiledLiteralChildren.compile(childrenByPath.mapChildren(ImmutableTrieNode::compiled)),
+                    typed, parameterizedChild == null
+                            ? null
+                            : (ParameterizedImmutableTrieNode<E>) parameterizedChild.compiled());
+        }
+
+        ImmutableTrieNodeImpl<E> copy(LiteralChildren<ImmutableTrieNode<E>> childrenByPath,
+                                      List<ParameterizedImmutableTrieNode<E>> typedChildren,
+                                      ParameterizedImmutableTrieNode<E> parameterizedChild) {
+            return new ImmutableTrieNodeImpl<>(element, methodElements, childrenByPath,
+                    typedChildren, parameterizedChild, catchAllChild);
         }
     }
 
     static class ParameterizedImmutableTrieNode<E> extends ImmutableTrieNodeImpl<E> {
         final String parameterName;
 
+        /**
+         * The type of the parameter, or null if the parameter is untyped.
+         */
+        final ParameterType type;
+
         ParameterizedImmutableTrieNode(Box<E> element,
+                                       Box<E>[] methodElements,
                                        Map<String, ImmutableTrieNode<E>> childrenByPath,
+                                       List<ParameterizedImmutableTrieNode<E>> typedChildren,
+                                       ParameterizedImmutableTrieNode<E> parameterizedChild,
+                                       CatchAllImmutableTrieNode<E> catchAllChild,
+                                       String parameterName,
+                                       ParameterType type) {
+            this(element, methodElements, LiteralChildren.of(childrenByPath), typedChildren,
+                    parameterizedChild, catchAllChild, parameterName, type);
+        }
+
+        ParameterizedImmutableTrieNode(Box<E> element,
+                                       Box<E>[] methodElements,
+                                       LiteralChildren<ImmutableTrieNode<E>> childrenByPath,
+                                       List<ParameterizedImmutableTrieNode<E>> typedChildren,
                                        ParameterizedImmutableTrieNode<E> parameterizedChild,
-                                       String parameterName) {
-            super(element, childrenByPath, parameterizedChild);
+                                       CatchAllImmutableTrieNode<E> catchAllChild,
+                                       String parameterName,
+                                       ParameterType type) {
+            super(element, methodElements, childrenByPath, typedChildren, parameterizedChild, catchAllChild);
             this.parameterName = parameterName;
+            this.type = type;
+        }
+
+        @Override
+        ParameterizedImmutableTrieNode<E> copy(LiteralChildren<ImmutableTrieNode<E>> childrenByPath,
+                                               List<ParameterizedImmutableTrieNode<E>> typedChildren,
+                                               ParameterizedImmutableTrieNode<E> parameterizedChild) {
+            return new ParameterizedImmutableTrieNode<>(element, methodElements, childrenByPath, typedChildren,
+                    parameterizedChild, getCatchAll(), parameterName, type);
+        }
+    }
+
+    /**
+     * Parameterized node that captures all of the remaining path, hence it has no children.
+     */
+    static final class CatchAllImmutableTrieNode<E> extends ParameterizedImmutableTrieNode<E> {
+        CatchAllImmutableTrieNode(Box<E> element, Box<E>[] methodElements, String parameterName) {
+            super(element, methodElements, Collections.emptyMap(), Collections.emptyList(),
+                    null, null, parameterName, null);
+        }
+
+        @Override
+        ImmutableTrieNode<E> orderedByHits(ToLongFunction<ImmutableTrieNode<?>> hits) {
+            // no children to order
+            return this;
+        }
+
+        @Override
+        ImmutableTrieNode<E> compiled() {
+            // no children to look up
+            return this;
         }
     }
 
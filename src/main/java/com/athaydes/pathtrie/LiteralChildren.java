@@ -0,0 +1,431 @@
+package com.athaydes.pathtrie;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Immutable table of the literal children of a trie node, keyed by path part.
+ * <p>
+ * Children can be looked up by any range of characters, so lookups do not require a String to be created for each
+ * path part. Small tables are scanned linearly, comparing lengths before characters, while larger ones also keep an
+ * open-addressing hash index, using the same hash function as {@link String#hashCode()}. Larger tables may also have
+ * a few hot keys at the front which are scanned linearly before the hash index is used. Larger
+ * {@link #sorted(Map, boolean) sorted} tables are binary searched instead, and have no hash index. Tables may also
+ * keep a few cold keys at the end, which are only looked up in a separate table when no other key matches, so that
+ * the keys which are actually hit can be scanned linearly or hashed into a small index.
+ * <p>
+ * Tables with keys that are not pure ASCII keep a second table keyed by the {@link ByteSequence#byteForm(String) byte
+ * form} of the keys, which is used to look up paths given as bytes.
+ * <p>
+ * Tables ignoring case hold keys in {@link #fold(String) folded} form, and fold the characters of the path while
+ * hashing and comparing them. In paths given as bytes, only ASCII letters can be folded, so parts which contain other
+ * characters and are not found are decoded and looked up again.
+ * <p>
+ * Iteration follows the order in which children were given, which is the natural order of the keys in
+ * {@link #sorted(Map, boolean) sorted} tables.
+ * <p>
+ * {@link CompiledLiteralChildren Compiled} tables keep the same keys and children, but look them up with a matcher
+ * generated for the keys.
+ *
+ * @param <N> type of child
+ */
+class LiteralChildren<N> {
+
+    static final int MAX_LINEAR_SCAN_SIZE = 8;
+
+    private static final LiteralChildren<?> EMPTY = new LiteralChildren<>(
+            new String[0], new Object[0], 0, 0, false, false, false);
+
+    final String[] keys;
+    private final Object[] children;
+
+    // slots hold the index of a child plus one, so that zero means an empty slot
+    private final int[] hashIndex;
+
+    // number of keys at the front that are scanned before the hash index is used
+    private final int hotCount;
+
+    // number of keys at the front that are looked up by this table, the others being looked up by the cold table
+    private final int lookupSize;
+
+    // same children as the keys at the end which are not looked up by this table, or null if there are none
+    private final LiteralChildren<N> cold;
+
+    // same children keyed by the byte form of the keys, or null if all keys are ASCII
+    final LiteralChildren<N> byteForms;
+
+    final boolean ignoreCase;
+    private final boolean byteFormKeys;
+
+    // whether the keys are in their natural order, so that they can be searched by order
+    final boolean sorted;
+
+    private LiteralChildren(String[] keys, Object[] children, int hotCount, int coldCount, boolean ignoreCase,
+                            boolean byteFormKeys, boolean sorted) {
+        this.keys = keys;
+        this.children = children;
+        this.lookupSize = keys.length - coldCount;
+        this.hashIndex = lookupSize > MAX_LINEAR_SCAN_SIZE && !sorted ? createHashIndex(keys, lookupSize) : null;
+        this.hotCount = Math.min(hotCount, MAX_LINEAR_SCAN_SIZE);
+        this.cold = coldCount == 0 ? null : new LiteralChildren<>(
+                Arrays.copyOfRange(keys, lookupSize, keys.length), Arrays.copyOfRange(children, lookupSize, keys.length),
+                0, 0, ignoreCase, byteFormKeys, false);
+        this.ignoreCase = ignoreCase;
+        this.byteFormKeys = byteFormKeys;
+        this.sorted = sorted;
+        this.byteForms = byteFormKeys ? null : byteForms(keys, children, hotCount, coldCount, ignoreCase);
+    }
+
+    /**
+     * Copy the given table.
+     */
+    LiteralChildren(LiteralChildren<N> other) {
+        this.keys = other.keys;
+        this.children = other.children;
+        this.hashIndex = other.hashIndex;
+        this.hotCount = other.hotCount;
+        this.lookupSize = other.lookupSize;
+        this.cold = other.cold;
+        this.ignoreCase = other.ignoreCase;
+        this.byteFormKeys = other.byteFormKeys;
+        this.sorted = other.sorted;
+        this.byteForms = other.byteForms;
+    }
+
+    private static <N> LiteralChildren<N> byteForms(String[] keys, Object[] children, int hotCount, int coldCount,
+                                                    boolean ignoreCase) {
+        String[] byteKeys = null;
+        for (int i = 0; i < keys.length; i++) {
+            if (!ByteSequence.isAscii(keys[i])) {
+                if (byteKeys == null) {
+                    byteKeys = keys.clone();
+                }
+                byteKeys[i] = ByteSequence.byteForm(keys[i]);
+            }
+        }
+        return byteKeys == null
+                ? null
+                : new LiteralChildren<>(byteKeys, children, hotCount, coldCount, ignoreCase, true, false);
+    }
+
+    static <N> LiteralChildren<N> of(Map<String, ? extends N> childrenByPath) {
+        return of(childrenByPath, 0, false);
+    }
+
+    static <N> LiteralChildren<N> of(Map<String, ? extends N> childrenByPath, int hotCount, boolean ignoreCase) {
+        return of(childrenByPath, hotCount, 0, ignoreCase);
+    }
+
+    /**
+     * @param childrenByPath the children, in the order they should be scanned, with folded keys if ignoring case
+     * @param hotCount       number of children that should be scanned before using the hash index, if there is one
+     * @param coldCount      number of children at the end that should only be looked up if no other child matches
+     * @param ignoreCase     whether to ignore case when looking up children
+     * @param <N>            type of child
+     * @return the children
+     */
+    @SuppressWarnings("unchecked")
+    static <N> LiteralChildren<N> of(Map<String, ? extends N> childrenByPath, int hotCount, int coldCount,
+                                     boolean ignoreCase) {
+        if (childrenByPath.isEmpty()) {
+            return (LiteralChildren<N>) EMPTY;
+        }
+        String[] keys = new String[childrenByPath.size()];
+        Object[] children = new Object[keys.length];
+        int index = 0;
+        for (Map.Entry<String, ? extends N> entry : childrenByPath.entrySet()) {
+            keys[index] = entry.getKey();
+            children[index] = entry.getValue();
+            index++;
+        }
+        return new LiteralChildren<>(keys, children, hotCount, coldCount, ignoreCase, false, false);
+    }
+
+    /**
+     * @param childrenByPath the children, with folded keys if ignoring case
+     * @param ignoreCase     whether to ignore case when looking up children
+     * @param <N>            type of child
+     * @return the children, ordered by key
+     */
+    @SuppressWarnings("unchecked")
+    static <N> LiteralChildren<N> sorted(Map<String, ? extends N> childrenByPath, boolean ignoreCase) {
+        if (childrenByPath.isEmpty()) {
+            return (LiteralChildren<N>) EMPTY;
+        }
+        String[] keys = childrenByPath.keySet().toArray(new String[0]);
+        Arrays.sort(keys);
+        Object[] children = new Object[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            children[i] = childrenByPath.get(keys[i]);
+        }
+        return new LiteralChildren<>(keys, children, 0, 0, ignoreCase, false, true);
+    }
+
+    int size() {
+        return keys.length;
+    }
+
+    /**
+     * @param function to apply to each child
+     * @return copy of this table with each child replaced by the result of the given function
+     */
+    LiteralChildren<N> mapChildren(UnaryOperator<N> function) {
+        if (keys.length == 0) {
+            return this;
+        }
+        Object[] mapped = new Object[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            mapped[i] = function.apply(child(i));
+        }
+        return new LiteralChildren<>(keys, mapped, hotCount, keys.length - lookupSize, ignoreCase, byteFormKeys,
+                sorted);
+    }
+
+    N get(String key) {
+        return get(key, 0, key.length());
+    }
+
+    /**
+     * @param path  containing the key
+     * @param start offset of the key in the path
+     * @param end   offset after the last character of the key
+     * @return the child under the given key, or null if there is none
+     */
+    final N get(CharSequence path, int start, int end) {
+        N result = lookUp(path, start, end);
+        if (result == null && ignoreCase && !byteFormKeys && isByteView(path) && !isAscii(path, start, end)) {
+            // chars which are not ASCII may only be equal ignoring case to chars with a different UTF-8 encoding
+            String part = path.subSequence(start, end).toString();
+            return lookUp(part, 0, part.length());
+        }
+        return result;
+    }
+
+    /**
+     * Look up the child under the given key, folding only ASCII letters in paths given as bytes.
+     *
+     * @see #get(CharSequence, int, int)
+     */
+    N lookUp(CharSequence path, int start, int end) {
+        if (byteForms != null && isByteView(path)) {
+            return byteForms.lookUp(path, start, end);
+        }
+        if (sorted && keys.length > MAX_LINEAR_SCAN_SIZE) {
+            return getSorted(path, start, end);
+        }
+        N result = ignoreCase ? getIgnoringCase(path, start, end) : getExact(path, start, end);
+        return result != null || cold == null ? result : cold.lookUp(path, start, end);
+    }
+
+    private N getExact(CharSequence path, int start, int end) {
+        int length = end - start;
+        if (hashIndex == null) {
+            for (int i = 0; i < lookupSize; i++) {
+                String key = keys[i];
+                if (key.length() == length && regionMatches(key, path, start)) {
+                    return child(i);
+                }
+            }
+            return null;
+        }
+        for (int i = 0; i < hotCount; i++) {
+            String key = keys[i];
+            if (key.length() == length && regionMatches(key, path, start)) {
+                return child(i);
+            }
+        }
+        int mask = hashIndex.length - 1;
+        int slot = spread(hash(path, start, end)) & mask;
+        int entry;
+        while ((entry = hashIndex[slot]) != 0) {
+            String key = keys[entry - 1];
+            if (key.length() == length && regionMatches(key, path, start)) {
+                return child(entry - 1);
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    private N getIgnoringCase(CharSequence path, int start, int end) {
+        int length = end - start;
+        // only ASCII is folded in byte form, as other bytes are parts of multi-byte chars
+        boolean asciiOnly = byteFormKeys;
+        if (hashIndex == null) {
+            for (int i = 0; i < lookupSize; i++) {
+                String key = keys[i];
+                if (key.length() == length && regionMatchesFolded(key, path, start, asciiOnly)) {
+                    return child(i);
+                }
+            }
+            return null;
+        }
+        for (int i = 0; i < hotCount; i++) {
+            String key = keys[i];
+            if (key.length() == length && regionMatchesFolded(key, path, start, asciiOnly)) {
+                return child(i);
+            }
+        }
+        int mask = hashIndex.length - 1;
+        int slot = spread(foldedHash(path, start, end, asciiOnly)) & mask;
+        int entry;
+        while ((entry = hashIndex[slot]) != 0) {
+            String key = keys[entry - 1];
+            if (key.length() == length && regionMatchesFolded(key, path, start, asciiOnly)) {
+                return child(entry - 1);
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Binary search of the key in a sorted table, folding the characters of the path if ignoring case.
+     */
+    private N getSorted(CharSequence path, int start, int end) {
+        int low = 0;
+        int high = keys.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(keys[middle], path, start, end);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return child(middle);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Same as {@link String#compareTo(String)}, comparing the key with a range of the path.
+     */
+    private int compare(String key, CharSequence path, int start, int end) {
+        int length = Math.min(key.length(), end - start);
+        boolean byteView = isByteView(path);
+        for (int i = 0; i < length; i++) {
+            char c = ignoreCase ? fold(path.charAt(start + i), byteView) : path.charAt(start + i);
+            if (key.charAt(i) != c) {
+                return key.charAt(i) - c;
+            }
+        }
+        return key.length() - (end - start);
+    }
+
+    static boolean isByteView(CharSequence path) {
+        return path instanceof ByteSequence || path instanceof RequestTarget && ((RequestTarget) path).isByteView();
+    }
+
+    static boolean isAscii(CharSequence path, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (path.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Search a key in a sorted table.
+     *
+     * @param key a key, folded if ignoring case
+     * @return the index of the key if present, or {@code -(insertion index) - 1} as returned by
+     * {@link Arrays#binarySearch(Object[], Object)}
+     */
+    int search(String key) {
+        return Arrays.binarySearch(keys, key);
+    }
+
+    void forEach(BiConsumer<String, ? super N> action) {
+        for (int i = 0; i < keys.length; i++) {
+            action.accept(keys[i], child(i));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    N child(int index) {
+        return (N) children[index];
+    }
+
+    static int hash(CharSequence path, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + path.charAt(i);
+        }
+        return hash;
+    }
+
+    /**
+     * Same as {@link #hash(CharSequence, int, int)}, but hashing the folded characters.
+     */
+    static int foldedHash(CharSequence path, int start, int end, boolean asciiOnly) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + fold(path.charAt(i), asciiOnly);
+        }
+        return hash;
+    }
+
+    /**
+     * Fold the case of a character, so that characters which are equal ignoring case, as by
+     * {@link String#equalsIgnoreCase(String)}, have the same folded form.
+     */
+    static char fold(char c, boolean asciiOnly) {
+        if (c < 0x80) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return asciiOnly ? c : Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    static String fold(String key) {
+        char[] chars = new char[key.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = fold(key.charAt(i), false);
+        }
+        return new String(chars);
+    }
+
+    static boolean regionMatchesFolded(String key, CharSequence path, int start, boolean asciiOnly) {
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != fold(path.charAt(start + i), asciiOnly)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean regionMatches(String key, CharSequence path, int start) {
+        if (path instanceof String) {
+            return ((String) path).regionMatches(start, key, 0, key.length());
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != path.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int[] createHashIndex(String[] keys, int size) {
+        int capacity = Integer.highestOneBit(size * 2 - 1) << 1;
+        int[] index = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = spread(keys[i].hashCode()) & mask;
+            while (index[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            index[slot] = i + 1;
+        }
+        return index;
+    }
+
+}
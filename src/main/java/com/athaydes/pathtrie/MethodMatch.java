@@ -0,0 +1,81 @@
+package com.athaydes.pathtrie;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The result of looking up an element by HTTP method and path.
+ * <p>
+ * A lookup may find an element, find the path without an element for the requested method (which an HTTP server
+ * would answer with 405, Method Not Allowed), or not find the path at all (404, Not Found).
+ *
+ * @param <E> type of element
+ * @see PathTrie#getByMethod(HttpMethod, String)
+ */
+public final class MethodMatch<E> {
+
+    /**
+     * Status of a {@link MethodMatch}.
+     */
+    public enum Status {
+        FOUND, METHOD_NOT_ALLOWED, NOT_FOUND
+    }
+
+    private static final MethodMatch<?> NOT_FOUND = new MethodMatch<>(Status.NOT_FOUND, null, null);
+
+    private final Status status;
+    private final ParameterizedElement<E> element;
+    private final Set<HttpMethod> allowedMethods;
+
+    private MethodMatch(Status status, ParameterizedElement<E> element, Set<HttpMethod> allowedMethods) {
+        this.status = status;
+        this.element = element;
+        this.allowedMethods = allowedMethods;
+    }
+
+    static <E> MethodMatch<E> found(ParameterizedElement<E> element) {
+        return new MethodMatch<>(Status.FOUND, element, null);
+    }
+
+    static <E> MethodMatch<E> methodNotAllowed(Set<HttpMethod> allowedMethods) {
+        return new MethodMatch<>(Status.METHOD_NOT_ALLOWED, null, allowedMethods);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E> MethodMatch<E> notFound() {
+        return (MethodMatch<E>) NOT_FOUND;
+    }
+
+    /**
+     * @return the status of this match
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the element, if found, or empty if the status is not {@link Status#FOUND}
+     */
+    public Optional<ParameterizedElement<E>> getElement() {
+        return Optional.ofNullable(element);
+    }
+
+    /**
+     * @return the methods for which the path would be found if the status is {@link Status#METHOD_NOT_ALLOWED},
+     * or the empty set otherwise
+     */
+    public Set<HttpMethod> getAllowedMethods() {
+        if (allowedMethods == null) {
+            return Collections.emptySet();
+        }
+        return EnumSet.copyOf(allowedMethods);
+    }
+
+    @Override
+    public String toString() {
+        return "MethodMatch{" + status + "}";
+    }
+
+}
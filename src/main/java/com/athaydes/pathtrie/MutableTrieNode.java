@@ -1,5 +1,6 @@
 package com.athaydes.pathtrie;
 
+import java.util.EnumMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -7,31 +8,72 @@ import java.util.Map;
 class MutableTrieNode<E> {
 
     final Map<String, MutableTrieNode<E>> childrenByPath = new LinkedHashMap<>(2);
+    final Map<ParameterType, ParameterizedTrieNode<E>> typedChildren = new EnumMap<>(ParameterType.class);
     ParameterizedTrieNode<E> parameterizedChild;
+    CatchAllTrieNode<E> catchAllChild;
     Box<E> element;
 
-    public void put(String pathPart, Iterator<String> nextPaths, String parameterPrefix, Box<E> element) {
-        MutableTrieNode<E> node = child(pathPart, parameterPrefix);
+    // elements for each HttpMethod, indexed by ordinal, or null if no element was put for any method
+    Box<E>[] methodElements;
+
+    /**
+     * Put an element under the given path.
+     *
+     * @param method the method to put the element for, or null to put the element regardless of method
+     */
+    public void put(String pathPart, Iterator<String> nextPaths, PathSplitter pathSplitter,
+                    HttpMethod method, Box<E> element) {
+        MutableTrieNode<E> node = child(pathPart, pathSplitter);
         if (nextPaths.hasNext()) {
+            if (node instanceof CatchAllTrieNode) {
+                throw new IllegalArgumentException("Catch-all parameter must be the last part of a path: '" +
+                        pathPart + "'");
+            }
             String childPath = nextPaths.next();
-            node.put(childPath, nextPaths, parameterPrefix, element);
-        } else {
+            node.put(childPath, nextPaths, pathSplitter, method, element);
+        } else if (method == null) {
             node.element = element;
+        } else {
+            if (node.methodElements == null) {
+                node.methodElements = newMethodElements();
+            }
+            node.methodElements[method.ordinal()] = element;
         }
     }
 
-    private MutableTrieNode<E> child(String pathPart, String parameterPrefix) {
+    MutableTrieNode<E> child(String pathPart, PathSplitter pathSplitter) {
         MutableTrieNode<E> child = childrenByPath.get(pathPart);
         if (child == null) {
-            if (pathPart.startsWith(parameterPrefix)) {
-                String parameterName = pathPart.substring(parameterPrefix.length());
-                if (parameterizedChild == null) {
-                    parameterizedChild = new ParameterizedTrieNode<>(parameterName);
-                } else if (!parameterizedChild.parameterName.equals(parameterName)) {
-                    throw new IllegalArgumentException("Parameters with different names clash at the same level: '" +
-                            parameterName + "' " + "and '" + parameterizedChild.parameterName + "'");
+            String parameterPrefix = pathSplitter.parameterizedParameterPrefix();
+            if (isCatchAll(pathPart, pathSplitter)) {
+                String parameterName = pathPart.substring(pathSplitter.catchAllParameterPrefix().length());
+                if (catchAllChild == null) {
+                    catchAllChild = new CatchAllTrieNode<>(parameterName);
+                } else {
+                    verifySameName(parameterName, catchAllChild);
+                }
+                child = catchAllChild;
+            } else if (pathPart.startsWith(parameterPrefix)) {
+                String parameter = pathPart.substring(parameterPrefix.length());
+                String parameterName = parameterName(parameter);
+                ParameterType type = parameterType(parameter);
+                if (type != null) {
+                    ParameterizedTrieNode<E> typedChild = typedChildren.get(type);
+                    if (typedChild == null) {
+                        typedChild = new ParameterizedTrieNode<>(parameterName, type);
+                        typedChildren.put(type, typedChild);
+                    } else {
+                        verifySameName(parameterName, typedChild);
+                    }
+                    child = typedChild;
+                } else {
+                    if (parameterizedChild == null) {
+                        parameterizedChild = new ParameterizedTrieNode<>(parameterName, null);
+                    } else {
+                        verifySameName(parameterName, parameterizedChild);
+                    }
+                    child = parameterizedChild;
                 }
-                child = parameterizedChild;
             } else {
                 MutableTrieNode<E> newChild = new MutableTrieNode<>();
                 childrenByPath.put(pathPart, newChild);
@@ -41,12 +83,85 @@ class MutableTrieNode<E> {
         return child;
     }
 
-}
+    /**
+     * @return the child under the given path part, created if necessary, taking the part as a literal part even if it
+     * starts with a parameter prefix
+     */
+    MutableTrieNode<E> literalChild(String pathPart) {
+        return childrenByPath.computeIfAbsent(pathPart, ignored -> new MutableTrieNode<>());
+    }
+
+    /**
+     * @return the child put under the given path part, or null if there is none
+     */
+    MutableTrieNode<E> existingChild(String pathPart, PathSplitter pathSplitter) {
+        MutableTrieNode<E> child = childrenByPath.get(pathPart);
+        if (child == null) {
+            String parameterPrefix = pathSplitter.parameterizedParameterPrefix();
+            ParameterizedTrieNode<E> parameterChild = null;
+            String parameterName = null;
+            if (isCatchAll(pathPart, pathSplitter)) {
+                parameterChild = catchAllChild;
+                parameterName = pathPart.substring(pathSplitter.catchAllParameterPrefix().length());
+            } else if (pathPart.startsWith(parameterPrefix)) {
+                String parameter = pathPart.substring(parameterPrefix.length());
+                ParameterType type = parameterType(parameter);
+                parameterChild = type == null ? parameterizedChild : typedChildren.get(type);
+                parameterName = parameterName(parameter);
+            }
+            if (parameterChild != null && parameterChild.parameterName.equals(parameterName)) {
+                child = parameterChild;
+            }
+        }
+        return child;
+    }
+
+    /**
+     * @return whether this node has neither elements nor children
+     */
+    boolean isEmpty() {
+        return element == null && methodElements == null && childrenByPath.isEmpty() && typedChildren.isEmpty() &&
+                parameterizedChild == null && catchAllChild == null;
+    }
+
+    /**
+     * @return whether the given path part is a catch-all parameter, which it never is if the path splitter has no
+     * catch-all prefix
+     */
+    static boolean isCatchAll(String pathPart, PathSplitter pathSplitter) {
+        String catchAllPrefix = pathSplitter.catchAllParameterPrefix();
+        return catchAllPrefix != null && pathPart.startsWith(catchAllPrefix);
+    }
+
+    /**
+     * @param parameter a parameter, without its prefix, possibly followed by its type, as in {@code id<int>}
+     * @return the name of the parameter, which includes any suffix that is not a known type, as in {@code x<y>}
+     */
+    static String parameterName(String parameter) {
+        return parameterType(parameter) == null ? parameter : parameter.substring(0, parameter.lastIndexOf('<'));
+    }
 
-final class ParameterizedTrieNode<E> extends MutableTrieNode<E> {
-    final String parameterName;
+    /**
+     * @param parameter a parameter, without its prefix, possibly followed by its type, as in {@code id<int>}
+     * @return the type of the parameter, or null if it is untyped
+     */
+    static ParameterType parameterType(String parameter) {
+        int typeIndex = parameter.lastIndexOf('<');
+        return typeIndex >= 0 && parameter.endsWith(">")
+                ? ParameterType.of(parameter.substring(typeIndex + 1, parameter.length() - 1))
+                : null;
+    }
 
-    ParameterizedTrieNode(String parameterName) {
-        this.parameterName = parameterName;
+    static void verifySameName(String parameterName, ParameterizedTrieNode<?> existing) {
+        if (!existing.parameterName.equals(parameterName)) {
+            throw new IllegalArgumentException("Parameters with different names clash at the same level: '" +
+                    parameterName + "' " + "and '" + existing.parameterName + "'");
+        }
     }
-}
\ No newline at end of file
+
+    @SuppressWarnings("unchecked")
+    static <E> Box<E>[] newMethodElements() {
+        return (Box<E>[]) new Box<?>[HttpMethod.values().length];
+    }
+
+}
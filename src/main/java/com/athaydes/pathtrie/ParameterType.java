@@ -0,0 +1,136 @@
+package com.athaydes.pathtrie;
+
+/**
+ * Type of a typed path parameter, declared as in {@code :id<long>}.
+ * <p>
+ * Typed parameters only match path parts that can be parsed as the declared type. Parsing works directly on the
+ * characters of the path, storing the parsed value in primitive slots (two {@code long}s per parameter) so that no
+ * String has to be created for the parameter.
+ */
+enum ParameterType {
+
+    INT("int") {
+        @Override
+        boolean parse(CharSequence path, int start, int end, long[] slots, int slot) {
+            return parseLong(path, start, end, Integer.MIN_VALUE, Integer.MAX_VALUE, slots, slot);
+        }
+    },
+
+    LONG("long") {
+        @Override
+        boolean parse(CharSequence path, int start, int end, long[] slots, int slot) {
+            return parseLong(path, start, end, Long.MIN_VALUE, Long.MAX_VALUE, slots, slot);
+        }
+    },
+
+    /**
+     * UUID in its canonical form, {@code 8-4-4-4-12} hexadecimal digits.
+     */
+    UUID("uuid") {
+        @Override
+        boolean parse(CharSequence path, int start, int end, long[] slots, int slot) {
+            if (end - start != 36) {
+                return false;
+            }
+            if (path.charAt(start + 8) != '-' || path.charAt(start + 13) != '-' ||
+                    path.charAt(start + 18) != '-' || path.charAt(start + 23) != '-') {
+                return false;
+            }
+            long a = parseHex(path, start, start + 8);
+            long b = parseHex(path, start + 9, start + 13);
+            long c = parseHex(path, start + 14, start + 18);
+            long d = parseHex(path, start + 19, start + 23);
+            long e = parseHex(path, start + 24, start + 36);
+            if ((a | b | c | d | e) < 0) {
+                return false;
+            }
+            slots[slot] = (a << 32) | (b << 16) | c;
+            slots[slot + 1] = (d << 48) | e;
+            return true;
+        }
+    };
+
+    final String typeName;
+
+    ParameterType(String typeName) {
+        this.typeName = typeName;
+    }
+
+    /**
+     * Parse the given range of the path.
+     *
+     * @param path  containing the value
+     * @param start offset of the value in the path
+     * @param end   offset after the last character of the value
+     * @param slots to store the parsed value in
+     * @param slot  index of the first slot to use, two slots may be used
+     * @return true if the value could be parsed, false otherwise
+     */
+    abstract boolean parse(CharSequence path, int start, int end, long[] slots, int slot);
+
+    /**
+     * @param typeName name of a type, as in {@code int}
+     * @return the type with the given name, or null if there is none
+     */
+    static ParameterType of(String typeName) {
+        for (ParameterType type : values()) {
+            if (type.typeName.equals(typeName)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    private static boolean parseLong(CharSequence path, int start, int end,
+                                     long min, long max, long[] slots, int slot) {
+        if (start >= end) {
+            return false;
+        }
+        char first = path.charAt(start);
+        boolean negative = first == '-';
+        int index = negative || first == '+' ? start + 1 : start;
+        if (index == end) {
+            return false;
+        }
+        // accumulate negatively, as Long.parseLong does, so that the minimum value does not overflow
+        long limit = negative ? min : -max;
+        long multiplyLimit = limit / 10;
+        long result = 0;
+        for (; index < end; index++) {
+            int digit = path.charAt(index) - '0';
+            if (digit < 0 || digit > 9 || result < multiplyLimit) {
+                return false;
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                return false;
+            }
+            result -= digit;
+        }
+        slots[slot] = negative ? result : -result;
+        return true;
+    }
+
+    /**
+     * @return the parsed value, or a negative number if the range contains a non-hexadecimal character
+     */
+    private static long parseHex(CharSequence path, int start, int end) {
+        long result = 0;
+        for (int i = start; i < end; i++) {
+            char c = path.charAt(i);
+            int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (c >= 'a' && c <= 'f') {
+                digit = c - 'a' + 10;
+            } else if (c >= 'A' && c <= 'F') {
+                digit = c - 'A' + 10;
+            } else {
+                return -1;
+            }
+            result = (result << 4) | digit;
+        }
+        return result;
+    }
+
+}
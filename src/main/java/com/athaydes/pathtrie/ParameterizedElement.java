@@ -1,6 +1,9 @@
 package com.athaydes.pathtrie;
 
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.UUID;
 
 /**
  * A container for an element which is located under a parameterized path.
@@ -26,4 +29,70 @@ public interface ParameterizedElement<E> {
      * @throws java.util.NoSuchElementException if the parameter is not found
      */
     String param(String parameterName);
+
+    /**
+     * @return the number of available parameters
+     */
+    default int getParameterCount() {
+        return getParameterNames().size();
+    }
+
+    /**
+     * Resolve the value of the parameter at the given position in the path.
+     *
+     * @param index of the parameter, starting from 0 for the first parameter in the path
+     * @return value of the parameter
+     * @throws java.util.NoSuchElementException if the parameter is not found
+     */
+    default String param(int index) {
+        if (index < 0) {
+            throw new NoSuchElementException();
+        }
+        Iterator<String> parameterNames = getParameterNames().iterator();
+        for (int i = 0; i < index; i++) {
+            parameterNames.next();
+        }
+        return param(parameterNames.next());
+    }
+
+    /**
+     * Resolve the value of the parameter at the given position in the path as a {@code long}.
+     * <p>
+     * Parameters declared with the {@code long} or {@code int} types, as in {@code :id<long>}, are parsed while
+     * the path is matched, so reading them does not require parsing or creating a String.
+     *
+     * @param index of the parameter, starting from 0 for the first parameter in the path
+     * @return value of the parameter
+     * @throws java.util.NoSuchElementException if the parameter is not found
+     * @throws NumberFormatException            if the parameter value is not a valid {@code long}
+     */
+    default long paramLong(int index) {
+        return Long.parseLong(param(index));
+    }
+
+    /**
+     * Resolve the value of the parameter at the given position in the path as an {@code int}.
+     *
+     * @param index of the parameter, starting from 0 for the first parameter in the path
+     * @return value of the parameter
+     * @throws java.util.NoSuchElementException if the parameter is not found
+     * @throws NumberFormatException            if the parameter value is not a valid {@code int}
+     * @see #paramLong(int)
+     */
+    default int paramInt(int index) {
+        return Integer.parseInt(param(index));
+    }
+
+    /**
+     * Resolve the value of the parameter at the given position in the path as a {@link UUID}.
+     *
+     * @param index of the parameter, starting from 0 for the first parameter in the path
+     * @return value of the parameter
+     * @throws java.util.NoSuchElementException if the parameter is not found
+     * @throws IllegalArgumentException         if the parameter value is not a valid {@link UUID}
+     * @see #paramLong(int)
+     */
+    default UUID paramUuid(int index) {
+        return UUID.fromString(param(index));
+    }
 }
@@ -0,0 +1,11 @@
+package com.athaydes.pathtrie;
+
+class ParameterizedTrieNode<E> extends MutableTrieNode<E> {
+    final String parameterName;
+    final ParameterType type;
+
+    ParameterizedTrieNode(String parameterName, ParameterType type) {
+        this.parameterName = parameterName;
+        this.type = type;
+    }
+}
@@ -0,0 +1,262 @@
+package com.athaydes.pathtrie;
+
+import com.athaydes.pathtrie.ImmutablePathTrie.CatchAllImmutableTrieNode;
+import com.athaydes.pathtrie.ImmutablePathTrie.ImmutableTrieNode;
+import com.athaydes.pathtrie.ImmutablePathTrie.Parameters;
+import com.athaydes.pathtrie.ImmutablePathTrie.ParameterizedImmutableTrieNode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Cursor that descends into a {@link PathTrie} one path part at a time.
+ * <p>
+ * A cursor is useful when the parts of a path become available one by one, as when walking a directory tree: after
+ * each call to {@link #descend(CharSequence)}, the cursor tells whether any path starting with the parts seen so
+ * far may still match, so that a whole subtree can be skipped when it cannot, and {@link #backtrack()} goes back to
+ * the previous part without starting again from the root.
+ * <p>
+ * The element found by a cursor is always the same as would be found by {@link PathTrie#getParameterized(String)}
+ * for the path made up of the parts seen by the cursor, except that a cursor does not ignore trailing empty parts.
+ * <p>
+ * Cursors are not thread-safe, but can be re-used with {@link #reset()}, and a re-used cursor allocates no memory
+ * when descending into paths no longer than those it has already seen.
+ *
+ * @param <E> type of elements
+ */
+public final class PathCursor<E> {
+
+    private final ImmutableTrieNode<E> root;
+    private final String separator;
+    private final StringBuilder path = new StringBuilder();
+
+    // frames are re-used after backtracking
+    private final List<Frame<E>> frames = new ArrayList<>();
+    private int depth;
+
+    private PathCursor(ImmutablePathTrie<E> trie) {
+        this.root = trie == null ? null : trie.getRoot();
+        PathSplitter pathSplitter = trie == null ? null : trie.getPathSplitter();
+        this.separator = pathSplitter instanceof SeparatorPathSplitter
+                ? ((SeparatorPathSplitter) pathSplitter).separator
+                : "/";
+        frames.add(new Frame<>());
+        reset();
+    }
+
+    /**
+     * Create a cursor positioned at the root of the given trie.
+     * <p>
+     * Only tries created by a {@link PathTrieBuilder}, including profiled tries, can be descended into;
+     * a cursor over any other trie never finds any element.
+     *
+     * @param trie to descend into
+     * @param <E>  type of elements
+     * @return new cursor
+     */
+    public static <E> PathCursor<E> of(PathTrie<E> trie) {
+        return new PathCursor<>(ImmutablePathTrie.unwrap(trie));
+    }
+
+    /**
+     * Go back to the root of the trie.
+     */
+    public void reset() {
+        depth = 0;
+        path.setLength(0);
+        Frame<E> rootFrame = frames.get(0);
+        rootFrame.size = 0;
+        if (root != null) {
+            rootFrame.add(root, -1);
+        }
+    }
+
+    /**
+     * @return the number of path parts the cursor has descended into
+     */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * Descend into the next part of the path.
+     * <p>
+     * The cursor descends even if no path starting with the parts seen so far can match, so that each call to this
+     * method can always be undone by a call to {@link #backtrack()}.
+     *
+     * @param part the next part of the path
+     * @return true if the trie contains paths starting with all of the parts seen so far, false if it does not, in
+     * which case descending any further is pointless
+     */
+    public boolean descend(CharSequence part) {
+        Frame<E> current = frames.get(depth);
+        depth++;
+        if (frames.size() == depth) {
+            frames.add(new Frame<>());
+        }
+        Frame<E> next = frames.get(depth);
+        next.size = 0;
+        next.pathLength = path.length();
+        if (depth > 1) {
+            path.append(separator);
+        }
+        next.start = path.length();
+        path.append(part);
+        next.end = path.length();
+
+        // candidates are kept in the order in which they are tried by the matcher of the trie
+        for (int i = 0; i < current.size; i++) {
+            ImmutableTrieNode<E> node = current.nodes[i];
+            if (node instanceof CatchAllImmutableTrieNode) {
+                // keep capturing the remainder of the path
+                next.add(node, i);
+                continue;
+            }
+            ImmutableTrieNode<E> child = node.getLiteral(path, next.start, next.end);
+            if (child != null) {
+                next.add(child, i);
+            }
+            for (ParameterizedImmutableTrieNode<E> typedChild : node.getTyped()) {
+                next.ensureCapacity();
+                if (typedChild.type.parse(path, next.start, next.end, next.values, next.size * 2)) {
+                    next.add(typedChild, i);
+                }
+            }
+            child = node.getParameterized();
+            if (child != null) {
+                next.add(child, i);
+            }
+            child = node.getCatchAll();
+            if (child != null) {
+                next.add(child, i);
+            }
+        }
+        return next.size > 0;
+    }
+
+    /**
+     * Go back to the previous part of the path, undoing the last call to {@link #descend(CharSequence)}.
+     *
+     * @throws IllegalStateException if the cursor is at the root of the trie
+     */
+    public void backtrack() {
+        if (depth == 0) {
+            throw new IllegalStateException("Cannot backtrack from the root of the trie");
+        }
+        path.setLength(frames.get(depth).pathLength);
+        depth--;
+    }
+
+    /**
+     * @return true if there is an element under the path made up of the parts seen so far
+     */
+    public boolean hasElement() {
+        return elementIndex() >= 0;
+    }
+
+    /**
+     * @return the element under the path made up of the parts seen so far
+     * @throws NoSuchElementException if there is no such element
+     */
+    public ParameterizedElement<E> element() {
+        int index = elementIndex();
+        if (index < 0) {
+            throw new NoSuchElementException();
+        }
+        Frame<E> frame = frames.get(depth);
+        Box<E> element = frame.nodes[index].element;
+
+        // walk back to the root collecting the parameters, in reverse order
+        ParameterizedImmutableTrieNode<?>[] parameterNodes = new ParameterizedImmutableTrieNode<?>[depth];
+        int[] bounds = new int[depth * 2];
+        long[] values = new long[depth * 2];
+        int count = 0;
+        for (int d = depth; d > 0; d--) {
+            frame = frames.get(d);
+            ImmutableTrieNode<E> node = frame.nodes[index];
+            int parent = frame.parents[index];
+            boolean continuation = node instanceof CatchAllImmutableTrieNode &&
+                    frames.get(d - 1).nodes[parent] == node;
+            if (node instanceof ParameterizedImmutableTrieNode && !continuation) {
+                parameterNodes[count] = (ParameterizedImmutableTrieNode<?>) node;
+                bounds[count * 2] = frame.start;
+                bounds[count * 2 + 1] = node instanceof CatchAllImmutableTrieNode ? path.length() : frame.end;
+                values[count * 2] = frame.values[index * 2];
+                values[count * 2 + 1] = frame.values[index * 2 + 1];
+                count++;
+            }
+            index = parent;
+        }
+        Parameters parameters = count == 0 ? Parameters.NONE : reversed(parameterNodes, bounds, values, count);
+        return new DefaultParameterizedElement<>(element, path.toString(), parameters, count);
+    }
+
+    private int elementIndex() {
+        Frame<E> frame = frames.get(depth);
+        if (depth == 0) {
+            return -1;
+        }
+        for (int i = 0; i < frame.size; i++) {
+            if (frame.nodes[i].element != null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Parameters reversed(ParameterizedImmutableTrieNode<?>[] nodes, int[] bounds, long[] values,
+                                       int count) {
+        ParameterizedImmutableTrieNode<?>[] resultNodes = new ParameterizedImmutableTrieNode<?>[count];
+        int[] resultBounds = new int[count * 2];
+        long[] resultValues = new long[count * 2];
+        for (int i = 0; i < count; i++) {
+            int from = count - 1 - i;
+            resultNodes[i] = nodes[from];
+            System.arraycopy(bounds, from * 2, resultBounds, i * 2, 2);
+            System.arraycopy(values, from * 2, resultValues, i * 2, 2);
+        }
+        return new Parameters(resultNodes, resultBounds, resultValues);
+    }
+
+    /**
+     * The candidate nodes after descending into a path part, each with the index of its parent candidate in the
+     * previous frame and, for typed parameters, its parsed value.
+     */
+    private static final class Frame<E> {
+        ImmutableTrieNode<E>[] nodes = newNodes(4);
+        int[] parents = new int[4];
+        long[] values = new long[8];
+        int size;
+
+        // range of the path part, and length of the path before it was added
+        int start;
+        int end;
+        int pathLength;
+
+        void add(ImmutableTrieNode<E> node, int parent) {
+            ensureCapacity();
+            nodes[size] = node;
+            parents[size] = parent;
+            size++;
+        }
+
+        void ensureCapacity() {
+            if (size == nodes.length) {
+                ImmutableTrieNode<E>[] newNodes = newNodes(size * 2);
+                System.arraycopy(nodes, 0, newNodes, 0, size);
+                nodes = newNodes;
+                int[] newParents = new int[size * 2];
+                System.arraycopy(parents, 0, newParents, 0, size);
+                parents = newParents;
+                long[] newValues = new long[size * 4];
+                System.arraycopy(values, 0, newValues, 0, size * 2);
+                values = newValues;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <E> ImmutableTrieNode<E>[] newNodes(int size) {
+            return (ImmutableTrieNode<E>[]) new ImmutableTrieNode<?>[size];
+        }
+    }
+}
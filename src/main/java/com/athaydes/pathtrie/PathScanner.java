@@ -0,0 +1,396 @@
+package com.athaydes.pathtrie;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the parts of a path lazily, as offset ranges of the path, without creating Strings for them.
+ * <p>
+ * Positions within the path are given by opaque cursors: {@link #first()} returns the cursor of the first part,
+ * and {@link #next(int, int)} the cursor of the part following another. A negative cursor means there are no more
+ * parts in the path.
+ */
+abstract class PathScanner {
+
+    final CharSequence path;
+
+    PathScanner(CharSequence path) {
+        this.path = path;
+    }
+
+    /**
+     * @return cursor of the first part of the path, or -1 if the path has no parts
+     */
+    abstract int first();
+
+    /**
+     * @param cursor of a path part
+     * @return offset of the first character of the part
+     */
+    abstract int start(int cursor);
+
+    /**
+     * @param cursor of a path part
+     * @return offset after the last character of the part
+     */
+    abstract int end(int cursor);
+
+    /**
+     * @param cursor of a path part
+     * @param end    the value of {@link #end(int)} for the cursor
+     * @return cursor of the next part of the path, or -1 if there is none
+     */
+    abstract int next(int cursor, int end);
+
+    /**
+     * @return offset after the last character of the last part of the path
+     */
+    abstract int limit();
+
+    static PathScanner of(PathSplitter pathSplitter, CharSequence path) {
+        if (pathSplitter instanceof SeparatorPathSplitter) {
+            String separator = ((SeparatorPathSplitter) pathSplitter).separator;
+            if (!separator.isEmpty()) {
+                return new SeparatorScanner(path, path instanceof ByteSequence
+                        ? ByteSequence.byteForm(separator)
+                        : separator);
+            }
+        }
+        String pathString = path.toString();
+        return PartsScanner.of(pathString, pathSplitter.apply(pathString));
+    }
+
+    /**
+     * Create a scanner of the path of a raw HTTP request target, see {@link RequestTarget}.
+     */
+    static PathScanner ofRequestTarget(PathSplitter pathSplitter, String target) {
+        if (pathSplitter instanceof SeparatorPathSplitter) {
+            String separator = ((SeparatorPathSplitter) pathSplitter).separator;
+            if (!separator.isEmpty()) {
+                RequestTarget path = RequestTarget.of(target, separator);
+                // plain targets are scanned directly, so that parameters are slices of the target, and other targets
+                // are viewed as bytes
+                return path.isRaw()
+                        ? new SeparatorScanner(target, separator, path.length())
+                        : new SeparatorScanner(path, ByteSequence.byteForm(separator));
+            }
+        }
+        return of(pathSplitter, RequestTarget.of(target, null).toString());
+    }
+
+    /**
+     * Create a scanner of the name elements of a file system path, excluding its root.
+     * <p>
+     * The String representation of the path, which most file systems cache, is scanned directly when the trie's
+     * separator is the same as the file system's.
+     */
+    static PathScanner of(PathSplitter pathSplitter, Path path) {
+        String pathString = path.toString();
+        int nameCount = path.getNameCount();
+        if (nameCount > 0 && pathSplitter instanceof SeparatorPathSplitter) {
+            String separator = ((SeparatorPathSplitter) pathSplitter).separator;
+            if (separator.equals(path.getFileSystem().getSeparator())) {
+                Path root = path.getRoot();
+                return new SeparatorScanner(root == null
+                        ? pathString
+                        : pathString.substring(root.toString().length()), separator);
+            }
+        }
+        List<String> names = new ArrayList<>(nameCount);
+        for (Path name : path) {
+            names.add(name.toString());
+        }
+        return PartsScanner.of(pathString, names);
+    }
+
+    /**
+     * Scanner with the same semantics as {@link String#split(String)} with a literal separator: trailing empty parts
+     * are ignored and a path that does not contain the separator has a single part, even if it is empty.
+     */
+    static final class SeparatorScanner extends PathScanner {
+
+        private final String separator;
+        private final int limit;
+        private final boolean noParts;
+
+        SeparatorScanner(CharSequence path, String separator) {
+            this(path, separator, path.length());
+        }
+
+        /**
+         * @param length of the prefix of the path to scan
+         */
+        SeparatorScanner(CharSequence path, String separator, int length) {
+            super(path);
+            this.separator = separator;
+            int limit = length;
+            while (limit >= separator.length() && separatorAt(path, limit - separator.length(), separator)) {
+                limit -= separator.length();
+            }
+            this.limit = limit;
+            this.noParts = limit == 0 && length > 0;
+        }
+
+        @Override
+        int first() {
+            return noParts ? -1 : 0;
+        }
+
+        @Override
+        int start(int cursor) {
+            return cursor;
+        }
+
+        @Override
+        int end(int cursor) {
+            int index = indexOf(path, separator, cursor, limit);
+            return index < 0 ? limit : index;
+        }
+
+        @Override
+        int next(int cursor, int end) {
+            return end >= limit ? -1 : end + separator.length();
+        }
+
+        @Override
+        int limit() {
+            return limit;
+        }
+
+        private static int indexOf(CharSequence path, String separator, int from, int to) {
+            if (path instanceof String) {
+                int index = ((String) path).indexOf(separator, from);
+                return index + separator.length() > to ? -1 : index;
+            }
+            if (path instanceof ByteSequence && separator.length() == 1) {
+                return ((ByteSequence) path).indexOf((byte) separator.charAt(0), from, to);
+            }
+            for (int i = from; i + separator.length() <= to; i++) {
+                if (separatorAt(path, i, separator)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static boolean separatorAt(CharSequence path, int offset, String separator) {
+            if (path instanceof RequestTarget) {
+                // percent-encoded separators do not separate parts
+                return ((RequestTarget) path).separatorAt(offset, separator);
+            }
+            return regionMatches(path, offset, separator);
+        }
+
+        private static boolean regionMatches(CharSequence path, int offset, String other) {
+            for (int i = 0; i < other.length(); i++) {
+                if (path.charAt(offset + i) != other.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Scanner over the parts returned by a custom {@link PathSplitter}.
+     * <p>
+     * Parts are located in the original path whenever possible, so that ranges spanning several parts are still
+     * slices of the original path. If a splitter returns parts that cannot be found in the path, a path made by
+     * joining the parts with {@code '/'} is scanned instead.
+     */
+    static final class PartsScanner extends PathScanner {
+
+        private final int[] bounds;
+
+        private PartsScanner(CharSequence path, int[] bounds) {
+            super(path);
+            this.bounds = bounds;
+        }
+
+        static PartsScanner of(String path, Iterable<String> parts) {
+            int count = 0;
+            for (String ignored : parts) {
+                count++;
+            }
+            int[] bounds = new int[count * 2];
+            if (locate(path, parts, bounds)) {
+                return new PartsScanner(path, bounds);
+            }
+            String joinedPath = String.join("/", parts);
+            locate(joinedPath, parts, bounds);
+            return new PartsScanner(joinedPath, bounds);
+        }
+
+        private static boolean locate(String path, Iterable<String> parts, int[] bounds) {
+            int index = 0;
+            int from = 0;
+            for (String part : parts) {
+                int start = path.indexOf(part, from);
+                if (start < 0) {
+                    return false;
+                }
+                from = start + part.length();
+                bounds[index++] = start;
+                bounds[index++] = from;
+            }
+            return true;
+        }
+
+        @Override
+        int first() {
+            return bounds.length == 0 ? -1 : 0;
+        }
+
+        @Override
+        int start(int cursor) {
+            return bounds[cursor * 2];
+        }
+
+        @Override
+        int end(int cursor) {
+            return bounds[cursor * 2 + 1];
+        }
+
+        @Override
+        int next(int cursor, int end) {
+            return (cursor + 1) * 2 < bounds.length ? cursor + 1 : -1;
+        }
+
+        @Override
+        int limit() {
+            return bounds.length == 0 ? 0 : bounds[bounds.length - 1];
+        }
+    }
+
+    /**
+     * Scanner over a host, whose labels are given in reverse order, followed by the parts of a path.
+     * <p>
+     * The scanned path is a view over the host followed by the path, so no String is created by concatenating them.
+     * Cursors below the number of host labels refer to host labels, and the others to parts of the path.
+     */
+    static final class HostPathScanner extends PathScanner {
+
+        private final PathScanner pathScanner;
+        private final int pathOffset;
+        private final int[] labelBounds;
+
+        HostPathScanner(String host, PathScanner pathScanner) {
+            super(new HostAndPath(host, pathScanner.path));
+            this.pathScanner = pathScanner;
+            this.pathOffset = host.length();
+            this.labelBounds = reverseLabelBounds(host);
+        }
+
+        private static int[] reverseLabelBounds(String host) {
+            if (host.isEmpty()) {
+                return new int[0];
+            }
+            int labelCount = 1;
+            for (int i = 0; i < host.length(); i++) {
+                if (host.charAt(i) == '.') {
+                    labelCount++;
+                }
+            }
+            int[] bounds = new int[labelCount * 2];
+            int end = host.length();
+            int index = 0;
+            for (int i = host.length() - 1; i >= -1; i--) {
+                if (i < 0 || host.charAt(i) == '.') {
+                    bounds[index++] = i + 1;
+                    bounds[index++] = end;
+                    end = i;
+                }
+            }
+            return bounds;
+        }
+
+        int labelCount() {
+            return labelBounds.length / 2;
+        }
+
+        @Override
+        int first() {
+            return labelBounds.length > 0 ? 0 : fromPathCursor(pathScanner.first());
+        }
+
+        @Override
+        int start(int cursor) {
+            return cursor < labelCount()
+                    ? labelBounds[cursor * 2]
+                    : pathOffset + pathScanner.start(cursor - labelCount());
+        }
+
+        @Override
+        int end(int cursor) {
+            return cursor < labelCount()
+                    ? labelBounds[cursor * 2 + 1]
+                    : pathOffset + pathScanner.end(cursor - labelCount());
+        }
+
+        @Override
+        int next(int cursor, int end) {
+            int labelCount = labelCount();
+            if (cursor < labelCount - 1) {
+                return cursor + 1;
+            }
+            if (cursor == labelCount - 1) {
+                return fromPathCursor(pathScanner.first());
+            }
+            return fromPathCursor(pathScanner.next(cursor - labelCount, end - pathOffset));
+        }
+
+        @Override
+        int limit() {
+            return pathOffset + pathScanner.limit();
+        }
+
+        private int fromPathCursor(int pathCursor) {
+            return pathCursor < 0 ? -1 : pathCursor + labelCount();
+        }
+    }
+
+    /**
+     * View of a host followed by a path.
+     */
+    private static final class HostAndPath implements CharSequence {
+
+        private final CharSequence host;
+        private final CharSequence path;
+
+        HostAndPath(CharSequence host, CharSequence path) {
+            this.host = host;
+            this.path = path;
+        }
+
+        @Override
+        public int length() {
+            return host.length() + path.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return index < host.length() ? host.charAt(index) : path.charAt(index - host.length());
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            int hostLength = host.length();
+            if (end <= hostLength) {
+                return host.subSequence(start, end);
+            }
+            if (start >= hostLength) {
+                return path.subSequence(start - hostLength, end - hostLength);
+            }
+            return new StringBuilder(end - start)
+                    .append(host, start, hostLength)
+                    .append(path, 0, end - hostLength);
+        }
+
+        @Override
+        public String toString() {
+            return host.toString() + path;
+        }
+    }
+
+}
@@ -1,13 +1,12 @@
 package com.athaydes.pathtrie;
 
-import java.util.Arrays;
 import java.util.function.Function;
-import java.util.regex.Pattern;
 
 /**
  * Function that splits paths given as Strings into the path constituents.
  * <p>
- * It also provides a parameter prefix that is used to determine which parts of a path are parameters.
+ * It also provides a parameter prefix that is used to determine which parts of a path are parameters and, optionally,
+ * a catch-all prefix that is used to determine which part of a path captures all of the remaining path.
  */
 @FunctionalInterface
 public interface PathSplitter extends Function<String, Iterable<String>> {
@@ -19,6 +18,19 @@ public interface PathSplitter extends Function<String, Iterable<String>> {
         return ":";
     }
 
+    /**
+     * A path part starting with this prefix matches the rest of the path being looked up, including any separators,
+     * so it must be the last part of a path.
+     * <p>
+     * There are no catch-all parameters by default, so that path parts starting with any character are literal parts.
+     *
+     * @return the prefix of catch-all parameters, or null if paths have no catch-all parameters. Must not be the
+     * empty String or the same as {@link #parameterizedParameterPrefix()}.
+     */
+    default String catchAllParameterPrefix() {
+        return null;
+    }
+
     /**
      * @return a builder of {@link PathSplitter}
      */
@@ -33,6 +45,7 @@ public interface PathSplitter extends Function<String, Iterable<String>> {
 
         private String splitter = "/";
         private String parameterPrefix = ":";
+        private String catchAllPrefix;
 
         PathSplitterBuilder splitOn(String splitter) {
             this.splitter = splitter;
@@ -44,21 +57,19 @@ public interface PathSplitter extends Function<String, Iterable<String>> {
             return this;
         }
 
-        public PathSplitter build() {
-            return new PathSplitter() {
-                final String prefix = parameterPrefix;
-                final Pattern splitPattern = Pattern.compile(Pattern.quote(splitter));
-
-                @Override
-                public Iterable<String> apply(String s) {
-                    return Arrays.asList(splitPattern.split(s));
-                }
+        /**
+         * Enable catch-all parameters, which are disabled by default.
+         *
+         * @param catchAllPrefix prefix of catch-all parameters, usually {@code "*"}
+         * @return this builder
+         */
+        public PathSplitterBuilder withCatchAllPrefix(String catchAllPrefix) {
+            this.catchAllPrefix = catchAllPrefix;
+            return this;
+        }
 
-                @Override
-                public String parameterizedParameterPrefix() {
-                    return prefix;
-                }
-            };
+        public PathSplitter build() {
+            return new SeparatorPathSplitter(splitter, parameterPrefix, catchAllPrefix);
         }
     }
 
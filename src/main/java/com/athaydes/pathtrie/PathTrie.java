@@ -1,6 +1,14 @@
 package com.athaydes.pathtrie;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * PathTrie is an immutable data structure to store information under paths.
@@ -42,6 +50,26 @@ public interface PathTrie<E> {
         return new PathTrieBuilder<>(pathSplitter);
     }
 
+    /**
+     * Merge the routes of two tries into a new trie.
+     * <p>
+     * Only the parts of the tries found under the same templates in both are copied, so the cost of merging depends
+     * on how much the tries overlap, not on their size. The rest of each trie is shared with the result.
+     * <p>
+     * Both tries must have been created by a {@link PathTrieBuilder}, possibly profiled, using the same path splitter
+     * and case sensitivity. The result is not profiled, even if the tries were.
+     *
+     * @param first  trie to merge
+     * @param second trie to merge
+     * @param <T>    type of elements
+     * @return trie containing the routes of both tries
+     * @throws IllegalArgumentException if the tries cannot be merged, if both have an element under the same route,
+     *                                  or if parameters with different names clash at the same level
+     */
+    static <T> PathTrie<T> merge(PathTrie<T> first, PathTrie<T> second) {
+        return TrieGraft.merge(first, second);
+    }
+
     /**
      * Get an element from this PathTrie.
      *
@@ -58,6 +86,172 @@ public interface PathTrie<E> {
      */
     Optional<ParameterizedElement<E>> getParameterized(String path);
 
+    /**
+     * Get the element under the given file system path.
+     * <p>
+     * The name elements of the path are matched as the parts of a path would be, ignoring the root of the path.
+     *
+     * @param path file system path
+     * @return the element under the path, if any
+     */
+    default Optional<E> get(Path path) {
+        return getParameterized(path).map(ParameterizedElement::getElement);
+    }
+
+    /**
+     * Get the element under the given file system path, and the parameters resolved by the path.
+     * <p>
+     * The name elements of the path are matched as the parts of a path would be, ignoring the root of the path.
+     *
+     * @param path file system path
+     * @return the element under the path, if any
+     */
+    default Optional<ParameterizedElement<E>> getParameterized(Path path) {
+        List<String> names = new ArrayList<>(path.getNameCount());
+        for (Path name : path) {
+            names.add(name.toString());
+        }
+        return getParameterized(String.join("/", names));
+    }
+
+    /**
+     * Get the element under the path given by the remaining bytes of the buffer, encoded as UTF-8.
+     * <p>
+     * The position of the buffer is not changed.
+     *
+     * @param path buffer containing the path
+     * @return the element under the path, if any
+     * @see #getParameterized(ByteBuffer)
+     */
+    default Optional<E> get(ByteBuffer path) {
+        return getParameterized(path).map(ParameterizedElement::getElement);
+    }
+
+    /**
+     * Get the element under the path given by the remaining bytes of the buffer, encoded as UTF-8, and the
+     * parameters resolved by the path.
+     * <p>
+     * The position of the buffer is not changed. Tries created by a {@link PathTrieBuilder} match the bytes without
+     * decoding them, and parameters are only decoded from the buffer when they are read, so the contents of the
+     * buffer must not be changed until then.
+     * <p>
+     * As a consequence, bytes which are not valid UTF-8 never match the literal parts of such tries, even if they
+     * would be decoded to the same replacement characters, but are decoded as such in parameter values.
+     *
+     * @param path buffer containing the path
+     * @return the element under the path, if any
+     */
+    default Optional<ParameterizedElement<E>> getParameterized(ByteBuffer path) {
+        return getParameterized(StandardCharsets.UTF_8.decode(path.duplicate()).toString());
+    }
+
+    /**
+     * Get the element under the path given by a range of an array of bytes, encoded as UTF-8.
+     *
+     * @param path   array containing the path
+     * @param offset offset of the path in the array
+     * @param length length of the path, in bytes
+     * @return the element under the path, if any
+     * @see #getParameterized(ByteBuffer)
+     */
+    default Optional<E> get(byte[] path, int offset, int length) {
+        return getParameterized(path, offset, length).map(ParameterizedElement::getElement);
+    }
+
+    /**
+     * Get the element under the path given by a range of an array of bytes, encoded as UTF-8, and the parameters
+     * resolved by the path.
+     *
+     * @param path   array containing the path
+     * @param offset offset of the path in the array
+     * @param length length of the path, in bytes
+     * @return the element under the path, if any
+     * @see #getParameterized(ByteBuffer)
+     */
+    default Optional<ParameterizedElement<E>> getParameterized(byte[] path, int offset, int length) {
+        return getParameterized(ByteBuffer.wrap(path, offset, length));
+    }
+
+    /**
+     * Get the element under the path of the given raw HTTP request target, and the parameters resolved by the path.
+     * <p>
+     * The target is matched as if it had been normalized first: the query and fragment are ignored, {@code %XX}
+     * escapes are decoded as UTF-8 and repeated separators are treated as a single separator. Tries created by a
+     * {@link PathTrieBuilder} match the target without normalizing it, and parameters are only decoded when they are
+     * read. In these tries, a percent-encoded separator, such as {@code %2F}, never separates path parts.
+     *
+     * @param target raw request target, e.g. {@code /users/jo%C3%A3o?page=2}
+     * @return the element under the path of the target, if any
+     */
+    default Optional<ParameterizedElement<E>> getByRequestTarget(String target) {
+        return getParameterized(RequestTarget.of(target, "/").toString());
+    }
+
+    /**
+     * Get an element put under the given host and path with {@link PathTrieBuilder#put(String, String, Object)}.
+     * <p>
+     * The host and path are matched together, in a single traversal.
+     *
+     * @param host under which the element should be located, without a port
+     * @param path under which the element should be located
+     * @return the element, if found, or empty if not found
+     */
+    default Optional<E> get(String host, String path) {
+        return getParameterized(host, path).map(ParameterizedElement::getElement);
+    }
+
+    /**
+     * Get an element put under the given host and path with {@link PathTrieBuilder#put(String, String, Object)}.
+     * <p>
+     * The default implementation finds no elements, as only tries created by a {@link PathTrieBuilder} have
+     * elements under a host.
+     *
+     * @param host parameterized host under which the element should be located, without a port
+     * @param path parameterized path under which the element should be located
+     * @return the element as well as the resolved host and path parameters, if found, or empty if not found
+     */
+    default Optional<ParameterizedElement<E>> getParameterized(String host, String path) {
+        return Optional.empty();
+    }
+
+    /**
+     * Get an element put under the given path for the given method with
+     * {@link PathTrieBuilder#put(HttpMethod, String, Object)}, or put under the path without a method.
+     * <p>
+     * The path and method are resolved in a single lookup. If the path exists but it has no element for the
+     * method, the result tells so, and reports every method for which the path would be found, even through
+     * different routes, as in {@code users/me} and {@code users/:id}.
+     * <p>
+     * The default implementation only finds elements put under the path without a method, using
+     * {@link #getParameterized(String)}.
+     *
+     * @param method of the element
+     * @param path   parameterized path under which the element should be located
+     * @return the result of the lookup
+     */
+    default MethodMatch<E> getByMethod(HttpMethod method, String path) {
+        return getParameterized(path).map(MethodMatch::found).orElseGet(MethodMatch::notFound);
+    }
+
+    /**
+     * Get an element put under the given path for the given method.
+     *
+     * @param method of the element
+     * @param path   under which the element should be located
+     * @return the element, if found, or empty if not found
+     * @see #getByMethod(HttpMethod, String)
+     */
+    default Optional<E> get(HttpMethod method, String path) {
+        return getByMethod(method, path).getElement().map(ParameterizedElement::getElement);
+    }
+
+    /**
+     * @return the splitter of the paths given to this trie, by default the one used by {@link #newBuilder()}
+     */
+    default PathSplitter getPathSplitter() {
+        return PathSplitter.newBuilder().build();
+    }
+
     /**
      * Get the sub-PathTrie located under the given path.
      *
@@ -66,28 +260,223 @@ public interface PathTrie<E> {
      */
     Optional<PathTrie<E>> getChild(String path);
 
-}
+    /**
+     * Visit all elements located along the given path.
+     * <p>
+     * Elements are visited in root-to-leaf order, starting with the element under the first part of the path and
+     * ending with the element under the full path, if any. Each element is given together with the parameters
+     * resolved up to its own location in the path. The path does not need to fully match for elements found on the
+     * way to be visited: if there is no element under the full path, the elements on the way to the element under
+     * the longest prefix of the path that has one are visited.
+     * <p>
+     * Tries created by a {@link PathTrieBuilder} visit the elements on the same route a lookup of the full path, or
+     * of that prefix, would follow, in a single traversal. The default implementation instead looks up each prefix of
+     * the path ending at one of the parts given by {@link #getPathSplitter()}, so it takes one lookup per part, and
+     * the elements it visits may be found on different routes.
+     *
+     * @param path   along which elements should be visited
+     * @param action to run on each element found
+     */
+    default void forEachOnPath(String path, Consumer<? super ParameterizedElement<E>> action) {
+        int end = 0;
+        for (String part : getPathSplitter().apply(path)) {
+            int start = path.indexOf(part, end);
+            if (start < 0) {
+                // the splitter changed the part, so the prefixes of the path are unknown from here on
+                return;
+            }
+            end = start + part.length();
+            if (!part.isEmpty()) {
+                getParameterized(path.substring(0, end)).ifPresent(action);
+            }
+        }
+    }
 
-final class EmptyTrie implements PathTrie<Object> {
+    /**
+     * Collect all elements located along the given path.
+     * <p>
+     * This method behaves like {@link #forEachOnPath(String, Consumer)}, adding each element found to the given
+     * collection, which may be re-used between calls.
+     *
+     * @param path   along which elements should be collected
+     * @param result collection to add the elements to
+     * @return the number of elements added to the collection
+     */
+    default int collectOnPath(String path, Collection<? super ParameterizedElement<E>> result) {
+        int sizeBefore = result.size();
+        forEachOnPath(path, result::add);
+        return result.size() - sizeBefore;
+    }
 
-    static final EmptyTrie INSTANCE = new EmptyTrie();
+    /**
+     * Look up all of the given paths, reporting the result for each one of them to the given sink.
+     * <p>
+     * This method gives the same results as calling {@link #getParameterized(String)} for each path, in the order
+     * of the batch, but the work of matching the parts a path shares with the previous path in the batch may be
+     * re-used. For that reason, the batch must be sorted in the natural order of the paths, as given by
+     * {@link String#compareTo(String)}. Sorting a batch only to look it up costs more than it saves, so batches
+     * which are not sorted already should be looked up one path at a time.
+     * <p>
+     * Parameter values may be read from the paths lazily, so paths which are mutable must not be modified while the
+     * elements given to the sink are in use.
+     *
+     * @param paths to look up
+     * @param sink  to report results to
+     * @throws IllegalArgumentException if the paths are not sorted, in which case no results are reported
+     */
+    default void getAll(List<? extends CharSequence> paths, ResultSink<E> sink) {
+        ImmutablePathTrie.requireSorted(paths);
+        for (int i = 0; i < paths.size(); i++) {
+            Optional<ParameterizedElement<E>> element = getParameterized(paths.get(i).toString());
+            if (element.isPresent()) {
+                sink.found(i, element.get());
+            } else {
+                sink.notFound(i);
+            }
+        }
+    }
 
-    private EmptyTrie() {
+    /**
+     * Create a trie containing the routes of this trie and the routes of the given trie under the given prefix.
+     * <p>
+     * The prefix is a template, as given to a {@link PathTrieBuilder}, and may contain parameters, but not a
+     * catch-all parameter. Its parameters become the first parameters of the mounted routes, so a trie containing
+     * functions, whose number of parameters is checked when the trie is built, can only be mounted under a prefix
+     * without parameters. Routes of the mounted trie are not re-split: its nodes are grafted onto this trie, see
+     * {@link #merge(PathTrie, PathTrie)}.
+     *
+     * @param prefix  under which to mount the given trie
+     * @param subTrie trie to mount, which cannot contain routes with a host
+     * @return trie containing the routes of both tries
+     * @throws IllegalArgumentException if the trie cannot be mounted, if a route is defined in both tries, or if the
+     *                                  parameters of the prefix clash with the parameters of the tries
+     */
+    default PathTrie<E> mount(String prefix, PathTrie<E> subTrie) {
+        return TrieGraft.mount(this, prefix, subTrie);
     }
 
-    @Override
-    public Optional<Object> get(String path) {
-        return Optional.empty();
+    /**
+     * Find the routes of this trie whose templates match the given glob pattern.
+     * <p>
+     * The pattern is split into parts as paths are. The part {@code **} matches any number of parts, including none.
+     * Other parts match a single part of a template, where {@code *} matches any characters, {@code ?} matches a
+     * single character, {@code [abc]} matches any of the characters in the brackets and {@code [!abc]} any character
+     * not in the brackets. A backslash escapes the character following it. Parameters are matched as written in the
+     * template, e.g. the pattern {@code users/:id<int>} or {@code users/:*} matches the route {@code users/:id<int>}.
+     * <p>
+     * Routes are found lazily, in depth-first order. Branches of the trie that cannot match are not visited, and
+     * parts of the pattern without wildcards are looked up directly. Only routes without a host are found.
+     *
+     * @param pattern glob pattern
+     * @return the routes matching the pattern
+     * @throws IllegalArgumentException if this trie was not created by a {@link PathTrieBuilder}
+     */
+    default Stream<PathTrieEntry<E>> glob(String pattern) {
+        return glob(pattern, false);
     }
 
-    @Override
-    public Optional<ParameterizedElement<Object>> getParameterized(String path) {
-        return Optional.empty();
+    /**
+     * Find the routes of this trie whose templates match the given glob pattern, as {@link #glob(String)} does.
+     *
+     * @param pattern  glob pattern
+     * @param parallel whether to return a parallel stream, which splits the walk of the trie into branches
+     * @return the routes matching the pattern
+     * @throws IllegalArgumentException if this trie was not created by a {@link PathTrieBuilder}
+     */
+    default Stream<PathTrieEntry<E>> glob(String pattern, boolean parallel) {
+        return GlobQuery.of(this, pattern, parallel);
     }
 
-    @Override
-    public Optional<PathTrie<Object>> getChild(String path) {
-        return Optional.empty();
+    /**
+     * Compare the routes of this trie with the routes of the given trie.
+     * <p>
+     * The result lazily reports, in depth-first order, the routes that were added, removed or changed in the given
+     * trie compared to this one. Elements are considered changed if they are not equal, and functions if they are
+     * not the same instance. Parts of the tries that are the same instance in both, as when a trie is derived from
+     * another, are skipped without being visited.
+     * <p>
+     * Only tries created by a {@link PathTrieBuilder}, including profiled and held tries, and the
+     * {@link #empty() empty} trie can be diffed.
+     *
+     * @param other trie to compare this trie with
+     * @return the routes that differ between the tries
+     * @throws IllegalArgumentException if either trie cannot be diffed
+     */
+    default Stream<RouteChange<E>> diff(PathTrie<E> other) {
+        return TrieDiff.of(this, other);
+    }
+
+    /**
+     * Count the routes of this trie without a host, each method of a path counting as a route.
+     * <p>
+     * The count is kept by the nodes of the trie, so it is found in constant time.
+     *
+     * @return the number of routes of this trie without a host
+     * @throws IllegalArgumentException if this trie was not created by a {@link PathTrieBuilder}
+     */
+    default long size() {
+        return TrieNavigator.size(this);
+    }
+
+    /**
+     * Get the routes of this trie without a host, in order.
+     * <p>
+     * Routes are ordered by their templates, part by part. Literal parts are compared as Strings, and come before
+     * parameters: typed parameters, ordered by type, then the untyped parameter, then the catch-all parameter. The
+     * routes of a template come before the routes of longer templates starting with it, the route without a method
+     * first, then one route per method in the order of {@link HttpMethod}.
+     * <p>
+     * Only tries built by a {@link PathTrieBuilder#sorted() sorted} builder, and tries derived from them, can be
+     * navigated in order.
+     *
+     * @return the routes of this trie, in order
+     * @throws IllegalStateException if this trie is not sorted
+     */
+    default Stream<PathTrieEntry<E>> entries() {
+        return TrieNavigator.entries(this);
+    }
+
+    /**
+     * Get the routes of this trie ordered from the {@link #rank(String) position} of the first path, inclusive, to
+     * the position of the second path, exclusive.
+     * <p>
+     * The first route is found without visiting the routes before it, see {@link #entries()}.
+     *
+     * @param fromPath path of the first route in the range, or a path ordered before it
+     * @param toPath   path of the first route after the range, or a path ordered before it
+     * @return the routes in the range, in order
+     * @throws IllegalStateException if this trie is not sorted
+     */
+    default Stream<PathTrieEntry<E>> range(String fromPath, String toPath) {
+        return TrieNavigator.range(this, fromPath, toPath);
+    }
+
+    /**
+     * Find the position of the given path among the routes of this trie, as given by {@link #entries()}.
+     * <p>
+     * The parts of the path are all taken as literal parts, so a path is ordered before the parameters of any of
+     * the nodes it leads to. The position is found in {@code O(depth * log(fanout))} time.
+     *
+     * @param path a path
+     * @return the number of routes ordered before the given path
+     * @throws IllegalStateException if this trie is not sorted
+     */
+    default long rank(String path) {
+        return TrieNavigator.rank(this, path);
+    }
+
+    /**
+     * Get the route at the given position among the routes of this trie, as given by {@link #entries()}.
+     * <p>
+     * The route is found in {@code O(depth * log(fanout))} time.
+     *
+     * @param index position of the route, from zero
+     * @return the route at the given position
+     * @throws IndexOutOfBoundsException if there is no route at the given position
+     * @throws IllegalStateException     if this trie is not sorted
+     */
+    default PathTrieEntry<E> select(long index) {
+        return TrieNavigator.select(this, index);
     }
 
 }
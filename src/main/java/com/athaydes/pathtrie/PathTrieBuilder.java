@@ -5,6 +5,11 @@ import com.athaydes.pathtrie.functions.Fun1;
 import com.athaydes.pathtrie.functions.Fun2;
 import com.athaydes.pathtrie.functions.Fun3;
 import com.athaydes.pathtrie.functions.Fun4;
+import com.athaydes.pathtrie.functions.LongFun1;
+import com.athaydes.pathtrie.functions.LongFun2;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -12,6 +17,8 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
 
 /**
  * Builder of {@link PathTrie} instances.
@@ -23,9 +30,18 @@ import java.util.Set;
 public class PathTrieBuilder<E> {
 
     private final MutableTrieNode<E> root = new MutableTrieNode<>();
+    // routes including a host are kept under separate roots, one per number of host labels
+    private final List<MutableTrieNode<E>> hostRoots = new ArrayList<>(4);
     private final PathSplitter pathSplitter;
+    private boolean prefilter;
+    private boolean ignoreCase;
+    private boolean sorted;
 
     PathTrieBuilder(PathSplitter pathSplitter) {
+        if (pathSplitter.parameterizedParameterPrefix().equals(pathSplitter.catchAllParameterPrefix())) {
+            throw new IllegalArgumentException("Catch-all parameter prefix must be different from the " +
+                    "parameter prefix: '" + pathSplitter.catchAllParameterPrefix() + "'");
+        }
         this.pathSplitter = pathSplitter;
     }
 
@@ -40,6 +56,52 @@ public class PathTrieBuilder<E> {
         return putBox(path, new Box.SimpleBox<>(element));
     }
 
+    /**
+     * Put an element under the given file system path.
+     * <p>
+     * The name elements of the path are used as the parts of the path, ignoring the root of the path. Names are
+     * always literal parts, even if they start with a parameter prefix, as they are names of files.
+     *
+     * @param path    to place the element on
+     * @param element the element to put
+     * @return this builder
+     */
+    public PathTrieBuilder<E> put(Path path, E element) {
+        if (path.getNameCount() == 0) {
+            throw new IllegalArgumentException("Path has no name elements: '" + path + "'");
+        }
+        MutableTrieNode<E> node = root;
+        for (Path name : path) {
+            node = node.literalChild(name.toString());
+        }
+        node.element = new Box.SimpleBox<>(element);
+        return this;
+    }
+
+    /**
+     * Put an element for each regular file in the given directory tree, under its path relative to the directory.
+     * <p>
+     * As with {@link #put(Path, Object)}, the names of files and directories are literal parts. Other entries, such
+     * as symbolic links, are skipped, and so are directories without any regular file under them.
+     * <p>
+     * Sub-directories are loaded in parallel, in the common {@link ForkJoinPool}, so the given function may be called
+     * concurrently by several Threads.
+     *
+     * @param directory      root of the directory tree
+     * @param elementForFile function to create the element for each file, given its path
+     * @return this builder
+     * @throws IOException if the directory tree cannot be read
+     */
+    public PathTrieBuilder<E> putDirectory(Path directory, Function<? super Path, ? extends E> elementForFile)
+            throws IOException {
+        try {
+            ForkJoinPool.commonPool().invoke(new DirectoryLoader<>(directory, root, elementForFile));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return this;
+    }
+
     public PathTrieBuilder<E> putFun(String path, Fun0<E> fun) {
         return putBox(path, new Box.FunBox<>(fun));
     }
@@ -60,12 +122,209 @@ public class PathTrieBuilder<E> {
         return putBox(path, new Box.FunBox<>(fun));
     }
 
+    /**
+     * Put a function taking a single {@code long} parameter under the given path.
+     * <p>
+     * The parameter is best declared with the {@code long} type, as in {@code /users/:id<long>}, so that the path
+     * only matches numbers, which are parsed without creating a String.
+     *
+     * @param path to place the function on
+     * @param fun  the function
+     * @return this builder
+     */
+    public PathTrieBuilder<E> putLongFun(String path, LongFun1<E> fun) {
+        return putBox(path, new Box.FunBox<>(fun));
+    }
+
+    /**
+     * Put a function taking two {@code long} parameters under the given path.
+     *
+     * @param path to place the function on
+     * @param fun  the function
+     * @return this builder
+     * @see #putLongFun(String, LongFun1)
+     */
+    public PathTrieBuilder<E> putLongFun(String path, LongFun2<E> fun) {
+        return putBox(path, new Box.FunBox<>(fun));
+    }
+
+    /**
+     * Put an element under the given host and path.
+     * <p>
+     * Host labels (the parts of the host separated by {@code '.'}) may be parameters, as path parts can, so that
+     * wildcard hosts such as {@code :tenant.example.com} can be routed together with the path in a single lookup
+     * with {@link PathTrie#get(String, String)}. Catch-all parameters are not allowed in hosts, and hosts should not
+     * include a port.
+     *
+     * @param host    to place the element on
+     * @param path    to place the element on
+     * @param element the element to put
+     * @return this builder
+     */
+    public PathTrieBuilder<E> put(String host, String path, E element) {
+        return putBox(host, path, new Box.SimpleBox<>(element));
+    }
+
+    public PathTrieBuilder<E> putFun(String host, String path, Fun0<E> fun) {
+        return putBox(host, path, new Box.FunBox<>(fun));
+    }
+
+    public PathTrieBuilder<E> putFun(String host, String path, Fun1<E> fun) {
+        return putBox(host, path, new Box.FunBox<>(fun));
+    }
+
+    public PathTrieBuilder<E> putFun(String host, String path, Fun2<E> fun) {
+        return putBox(host, path, new Box.FunBox<>(fun));
+    }
+
+    public PathTrieBuilder<E> putFun(String host, String path, Fun3<E> fun) {
+        return putBox(host, path, new Box.FunBox<>(fun));
+    }
+
+    public PathTrieBuilder<E> putFun(String host, String path, Fun4<E> fun) {
+        return putBox(host, path, new Box.FunBox<>(fun));
+    }
+
+    private PathTrieBuilder<E> putBox(String host, String path, Box<E> box) {
+        String[] labels = host.split("\\.", -1);
+        List<String> parts = new ArrayList<>();
+        for (int i = labels.length - 1; i >= 0; i--) {
+            String label = labels[i];
+            if (label.isEmpty()) {
+                throw new IllegalArgumentException("Host contains an empty label: '" + host + "'");
+            }
+            if (MutableTrieNode.isCatchAll(label, pathSplitter)) {
+                throw new IllegalArgumentException("Host cannot contain catch-all parameters: '" + host + "'");
+            }
+            parts.add(label);
+        }
+        pathSplitter.apply(path).forEach(parts::add);
+        while (hostRoots.size() <= labels.length) {
+            hostRoots.add(null);
+        }
+        MutableTrieNode<E> hostRoot = hostRoots.get(labels.length);
+        if (hostRoot == null) {
+            hostRoot = new MutableTrieNode<>();
+            hostRoots.set(labels.length, hostRoot);
+        }
+        Iterator<String> partsIterator = parts.iterator();
+        hostRoot.put(partsIterator.next(), partsIterator, pathSplitter, null, box);
+        return this;
+    }
+
+    /**
+     * Put an element under the given path, to be found only when looking up the given method with
+     * {@link PathTrie#getByMethod(HttpMethod, String)}.
+     * <p>
+     * Elements for all methods are stored together in the node of the path, so path and method are resolved in a
+     * single lookup. Elements put without a method are used for methods without an element of their own.
+     *
+     * @param method  to place the element on
+     * @param path    to place the element on
+     * @param element the element to put
+     * @return this builder
+     */
+    public PathTrieBuilder<E> put(HttpMethod method, String path, E element) {
+        return putBox(method, path, new Box.SimpleBox<>(element));
+    }
+
+    public PathTrieBuilder<E> putFun(HttpMethod method, String path, Fun0<E> fun) {
+        return putBox(method, path, new Box.FunBox<>(fun));
+    }
+
+    public PathTrieBuilder<E> putFun(HttpMethod method, String path, Fun1<E> fun) {
+        return putBox(method, path, new Box.FunBox<>(fun));
+    }
+
+    public PathTrieBuilder<E> putFun(HttpMethod method, String path, Fun2<E> fun) {
+        return putBox(method, path, new Box.FunBox<>(fun));
+    }
+
+    public PathTrieBuilder<E> putFun(HttpMethod method, String path, Fun3<E> fun) {
+        return putBox(method, path, new Box.FunBox<>(fun));
+    }
+
+    public PathTrieBuilder<E> putFun(HttpMethod method, String path, Fun4<E> fun) {
+        return putBox(method, path, new Box.FunBox<>(fun));
+    }
+
     private PathTrieBuilder<E> putBox(String path, Box<E> box) {
+        return putBox((HttpMethod) null, path, box);
+    }
+
+    private PathTrieBuilder<E> putBox(HttpMethod method, String path, Box<E> box) {
         Iterator<String> pathIterator = pathSplitter.apply(path).iterator();
         if (!pathIterator.hasNext()) {
             throw new IllegalArgumentException("Path cannot be split into one or more parts: '" + path + "'");
         }
-        root.put(pathIterator.next(), pathIterator, pathSplitter.parameterizedParameterPrefix(), box);
+        root.put(pathIterator.next(), pathIterator, pathSplitter, method, box);
+        return this;
+    }
+
+    /**
+     * Get a handle of a route put in this builder, to write the paths matching the route given the values of its
+     * parameters, e.g. {@code builder.route("users/:id/orders/:order").path(123, 9)} gives {@code users/123/orders/9}.
+     * <p>
+     * Routes put for any method, without a host, can be found.
+     *
+     * @param path the path the route was put on, as given to this builder
+     * @return the route handle
+     * @throws IllegalArgumentException if no element was put on the given path
+     */
+    public ReverseRoute route(String path) {
+        Iterable<String> parts = pathSplitter.apply(path);
+        MutableTrieNode<E> node = root;
+        for (String part : parts) {
+            node = node.existingChild(part, pathSplitter);
+            if (node == null) {
+                break;
+            }
+        }
+        if (node == null || node == root || node.element == null && node.methodElements == null) {
+            throw new IllegalArgumentException("No route was put on path: '" + path + "'");
+        }
+        return ReverseRoute.of(path, parts, pathSplitter);
+    }
+
+    /**
+     * Make the {@link PathTrie} being built reject most paths that cannot match any of its elements before walking
+     * the trie, at the cost of a small amount of memory.
+     * <p>
+     * This only benefits lookups of paths without a host, and is most useful when most lookups are misses.
+     *
+     * @return this builder
+     */
+    public PathTrieBuilder<E> withPrefilter() {
+        this.prefilter = true;
+        return this;
+    }
+
+    /**
+     * Make the {@link PathTrie} being built match literal path parts and host labels ignoring case, as
+     * {@link String#equalsIgnoreCase(String)} does.
+     * <p>
+     * Literal parts are stored in a folded form, so parts put with different cases are the same part. Parameter
+     * values keep the case of the path they were found in.
+     *
+     * @return this builder
+     */
+    public PathTrieBuilder<E> ignoringCase() {
+        this.ignoreCase = true;
+        return this;
+    }
+
+    /**
+     * Make the {@link PathTrie} being built keep the literal children of each node sorted, so that its routes can be
+     * navigated in order with {@link PathTrie#entries()}, {@link PathTrie#range(String, String)},
+     * {@link PathTrie#rank(String)} and {@link PathTrie#select(long)}.
+     * <p>
+     * Literal children are then found by binary search instead of hashing, which makes lookups in nodes with many
+     * children slower.
+     *
+     * @return this builder
+     */
+    public PathTrieBuilder<E> sorted() {
+        this.sorted = true;
         return this;
     }
 
@@ -73,8 +332,83 @@ public class PathTrieBuilder<E> {
      * @return an instance of {@link PathTrie} containing the elements added to this builder.
      */
     public PathTrie<E> build() {
+        MutableTrieNode<E> root = ignoreCase ? folded(this.root) : this.root;
         verifyParameterNamesAndCount(root, new LinkedHashSet<>(4), new ArrayList<>(6));
-        return new ImmutablePathTrie<>(pathSplitter, asImmutable(root));
+        List<ImmutablePathTrie.ImmutableTrieNode<E>> immutableHostRoots = new ArrayList<>(hostRoots.size());
+        for (MutableTrieNode<E> hostRoot : hostRoots) {
+            if (hostRoot == null) {
+                immutableHostRoots.add(null);
+            } else {
+                if (ignoreCase) {
+                    hostRoot = folded(hostRoot);
+                }
+                verifyParameterNamesAndCount(hostRoot, new LinkedHashSet<>(4), new ArrayList<>(6));
+                immutableHostRoots.add(asImmutable(hostRoot, ignoreCase, sorted));
+            }
+        }
+        ImmutablePathTrie.ImmutableTrieNode<E> immutableRoot = asImmutable(root, ignoreCase, sorted);
+        return new ImmutablePathTrie<>(pathSplitter, immutableRoot, immutableHostRoots,
+                prefilter ? Prefilter.of(immutableRoot, ignoreCase) : null, ignoreCase, sorted);
+    }
+
+    /**
+     * @return copy of the given node where literal parts are folded, merging parts which only differ in case
+     */
+    private static <E> MutableTrieNode<E> folded(MutableTrieNode<E> node) {
+        MutableTrieNode<E> result = new MutableTrieNode<>();
+        mergeFolded(node, result, "");
+        return result;
+    }
+
+    private static <E> void mergeFolded(MutableTrieNode<E> from, MutableTrieNode<E> into, String path) {
+        into.element = mergedElement(into.element, from.element, path);
+        if (from.methodElements != null) {
+            if (into.methodElements == null) {
+                into.methodElements = MutableTrieNode.newMethodElements();
+            }
+            for (int i = 0; i < from.methodElements.length; i++) {
+                into.methodElements[i] = mergedElement(into.methodElements[i], from.methodElements[i], path);
+            }
+        }
+        from.childrenByPath.forEach((pathPart, child) -> {
+            String folded = LiteralChildren.fold(pathPart);
+            mergeFolded(child, into.childrenByPath.computeIfAbsent(folded, p -> new MutableTrieNode<>()),
+                    path + "/" + folded);
+        });
+        from.typedChildren.forEach((type, child) -> {
+            ParameterizedTrieNode<E> target = into.typedChildren.get(type);
+            if (target == null) {
+                target = new ParameterizedTrieNode<>(child.parameterName, type);
+                into.typedChildren.put(type, target);
+            } else {
+                MutableTrieNode.verifySameName(child.parameterName, target);
+            }
+            mergeFolded(child, target, path + "/:" + child.parameterName);
+        });
+        if (from.parameterizedChild != null) {
+            if (into.parameterizedChild == null) {
+                into.parameterizedChild = new ParameterizedTrieNode<>(from.parameterizedChild.parameterName, null);
+            } else {
+                MutableTrieNode.verifySameName(from.parameterizedChild.parameterName, into.parameterizedChild);
+            }
+            mergeFolded(from.parameterizedChild, into.parameterizedChild,
+                    path + "/:" + from.parameterizedChild.parameterName);
+        }
+        if (from.catchAllChild != null) {
+            if (into.catchAllChild == null) {
+                into.catchAllChild = new CatchAllTrieNode<>(from.catchAllChild.parameterName);
+            } else {
+                MutableTrieNode.verifySameName(from.catchAllChild.parameterName, into.catchAllChild);
+            }
+            mergeFolded(from.catchAllChild, into.catchAllChild, path + "/*" + from.catchAllChild.parameterName);
+        }
+    }
+
+    private static <E> Box<E> mergedElement(Box<E> existing, Box<E> element, String path) {
+        if (existing != null && element != null) {
+            throw new IllegalArgumentException("Paths clash when ignoring case: '" + path.substring(1) + "'");
+        }
+        return existing == null ? element : existing;
     }
 
     private static void verifyParameterNamesAndCount(MutableTrieNode<?> node,
@@ -87,9 +421,12 @@ public class PathTrieBuilder<E> {
             if (seenBefore) {
                 throw new IllegalArgumentException("Parameter name appears more than once on same hierarchy: " + name);
             }
-            verifyParameterCount(visitedParameters, pathParts, parameterizedTrieNode);
-        } else if (node.element != null) {
-            verifyParameterCount(visitedParameters, pathParts, node);
+        }
+        verifyParameterCount(visitedParameters, pathParts, node.element);
+        if (node.methodElements != null) {
+            for (Box<?> methodElement : node.methodElements) {
+                verifyParameterCount(visitedParameters, pathParts, methodElement);
+            }
         }
         node.childrenByPath.forEach((path, mutableTrieNode) -> {
             Set<String> visitedInBranch = new LinkedHashSet<>(visitedParameters);
@@ -97,21 +434,35 @@ public class PathTrieBuilder<E> {
             pathPartsInBranch.add(path);
             verifyParameterNamesAndCount(mutableTrieNode, visitedInBranch, pathPartsInBranch);
         });
+        node.typedChildren.forEach((type, typedChild) -> verifyParameterNamesAndCount(typedChild,
+                new LinkedHashSet<>(visitedParameters),
+                withPart(pathParts, ":" + typedChild.parameterName + "<" + type.typeName + ">")));
         if (node.parameterizedChild != null) {
-            Set<String> visitedInBranch = new LinkedHashSet<>(visitedParameters);
-            List<String> pathPartsInBranch = new ArrayList<>(pathParts);
-            pathPartsInBranch.add(":" + node.parameterizedChild.parameterName);
-            verifyParameterNamesAndCount(node.parameterizedChild, visitedInBranch, pathPartsInBranch);
+            verifyParameterNamesAndCount(node.parameterizedChild,
+                    new LinkedHashSet<>(visitedParameters),
+                    withPart(pathParts, ":" + node.parameterizedChild.parameterName));
         }
+        if (node.catchAllChild != null) {
+            verifyParameterNamesAndCount(node.catchAllChild,
+                    new LinkedHashSet<>(visitedParameters),
+                    withPart(pathParts, "*" + node.catchAllChild.parameterName));
+        }
+    }
+
+    private static List<String> withPart(List<String> pathParts, String pathPart) {
+        List<String> result = new ArrayList<>(pathParts.size() + 1);
+        result.addAll(pathParts);
+        result.add(pathPart);
+        return result;
     }
 
-    private static void verifyParameterCount(Set<String> visitedParameters,
-                                             List<String> pathParts,
-                                             MutableTrieNode<?> node) {
+    static void verifyParameterCount(Set<String> visitedParameters,
+                                     List<String> pathParts,
+                                     Box<?> element) {
         int pathParameterCount = visitedParameters.size();
-        int nodeParameterCount = node.element == null
+        int nodeParameterCount = element == null
                 ? pathParameterCount
-                : node.element.use(
+                : element.use(
                 b -> pathParameterCount, f -> f.fun.parameterCount());
         if (nodeParameterCount != pathParameterCount) {
             String path = String.join("/", pathParts);
@@ -126,33 +477,57 @@ public class PathTrieBuilder<E> {
         }
     }
 
-    private static <E> ImmutablePathTrie.ImmutableTrieNode<E> asImmutable(MutableTrieNode<E> node) {
+    private static <E> ImmutablePathTrie.ImmutableTrieNode<E> asImmutable(MutableTrieNode<E> node,
+                                                                            boolean ignoreCase,
+                                                                            boolean sorted) {
         if (node instanceof ParameterizedTrieNode) {
-            return asImmutableParameterized((ParameterizedTrieNode<E>) node);
+            return asImmutableParameterized((ParameterizedTrieNode<E>) node, ignoreCase, sorted);
         }
         return new ImmutablePathTrie.ImmutableTrieNodeImpl<>(
                 node.element,
-                asImmutable(node.childrenByPath),
-                asImmutableParameterized(node.parameterizedChild));
+                node.methodElements,
+                asImmutable(node.childrenByPath, ignoreCase, sorted),
+                asImmutableTyped(node.typedChildren, ignoreCase, sorted),
+                asImmutableParameterized(node.parameterizedChild, ignoreCase, sorted),
+                asImmutableCatchAll(node.catchAllChild));
     }
 
-    private static <E> Map<String, ImmutablePathTrie.ImmutableTrieNode<E>> asImmutable(
-            Map<String, MutableTrieNode<E>> childrenByPath) {
+    private static <E> LiteralChildren<ImmutablePathTrie.ImmutableTrieNode<E>> asImmutable(
+            Map<String, MutableTrieNode<E>> childrenByPath, boolean ignoreCase, boolean sorted) {
         Map<String, ImmutablePathTrie.ImmutableTrieNode<E>> result = new LinkedHashMap<>(childrenByPath.size());
-        childrenByPath.forEach((path, child) -> result.put(path, asImmutable(child)));
-        return result;
+        childrenByPath.forEach((path, child) -> result.put(path, asImmutable(child, ignoreCase, sorted)));
+        return sorted ? LiteralChildren.sorted(result, ignoreCase) : LiteralChildren.of(result, 0, ignoreCase);
     }
 
     private static <E> ImmutablePathTrie.ParameterizedImmutableTrieNode<E> asImmutableParameterized(
-            ParameterizedTrieNode<E> node) {
+            ParameterizedTrieNode<E> node, boolean ignoreCase, boolean sorted) {
         if (node == null) {
             return null;
         }
         return new ImmutablePathTrie.ParameterizedImmutableTrieNode<>(
                 node.element,
-                asImmutable(node.childrenByPath),
-                asImmutableParameterized(node.parameterizedChild),
-                node.parameterName);
+                node.methodElements,
+                asImmutable(node.childrenByPath, ignoreCase, sorted),
+                asImmutableTyped(node.typedChildren, ignoreCase, sorted),
+                asImmutableParameterized(node.parameterizedChild, ignoreCase, sorted),
+                asImmutableCatchAll(node.catchAllChild),
+                node.parameterName,
+                node.type);
+    }
+
+    private static <E> List<ImmutablePathTrie.ParameterizedImmutableTrieNode<E>> asImmutableTyped(
+            Map<ParameterType, ParameterizedTrieNode<E>> typedChildren, boolean ignoreCase, boolean sorted) {
+        List<ImmutablePathTrie.ParameterizedImmutableTrieNode<E>> result = new ArrayList<>(typedChildren.size());
+        typedChildren.values().forEach(child -> result.add(asImmutableParameterized(child, ignoreCase, sorted)));
+        return result;
+    }
+
+    private static <E> ImmutablePathTrie.CatchAllImmutableTrieNode<E> asImmutableCatchAll(CatchAllTrieNode<E> node) {
+        if (node == null) {
+            return null;
+        }
+        return new ImmutablePathTrie.CatchAllImmutableTrieNode<>(
+                node.element, node.methodElements, node.parameterName);
     }
 
 }
@@ -0,0 +1,118 @@
+package com.athaydes.pathtrie;
+
+import com.athaydes.pathtrie.ImmutablePathTrie.BatchCursor;
+import com.athaydes.pathtrie.ImmutablePathTrie.ImmutableTrieNode;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collector;
+
+/**
+ * {@link Collector} implementations that match streams of paths against a {@link PathTrie}.
+ */
+public final class PathTrieCollectors {
+
+    private PathTrieCollectors() {
+    }
+
+    /**
+     * Create a collector that counts how many paths match each template of the given trie.
+     * <p>
+     * Templates are given as they would be given to a {@link PathTrieBuilder}, e.g. {@code "users/:id<int>"}, in the
+     * order they appear in the trie. Templates without matches and paths which do not match any template are not
+     * included in the result.
+     * <p>
+     * The collector is designed for parallel streams: each Thread matches paths with its own state and counts, which
+     * are only merged when the stream is done.
+     * <p>
+     * Paths are counted under the template of the route they match, whether its element was added for all methods or
+     * for a single {@link HttpMethod}, regardless of the method of the request the path came from.
+     *
+     * @param trie to match paths against, which must be empty or have been created by a {@link PathTrieBuilder},
+     *             possibly wrapped by a {@link PathTrieProfiler} or a {@link PathTrieHolder}
+     * @param <E>  type of elements
+     * @return the collector
+     * @throws IllegalArgumentException if the trie is of any other kind
+     */
+    public static <E> Collector<CharSequence, ?, Map<String, Long>> countingByTemplate(PathTrie<E> trie) {
+        ImmutablePathTrie<E> immutableTrie = countable(trie);
+        return Collector.of(
+                () -> new TemplateCounter<>(immutableTrie),
+                TemplateCounter::accept,
+                TemplateCounter::merge,
+                TemplateCounter::finish,
+                Collector.Characteristics.UNORDERED);
+    }
+
+    /**
+     * @return the trie to match paths against, or null if the given trie is empty
+     */
+    private static <E> ImmutablePathTrie<E> countable(PathTrie<E> trie) {
+        if (trie instanceof EmptyTrie) {
+            return null;
+        }
+        ImmutablePathTrie<E> result = ImmutablePathTrie.unwrap(trie);
+        if (result == null) {
+            throw new IllegalArgumentException("Only tries created by a PathTrieBuilder can be counted by template: " +
+                    trie.getClass().getName());
+        }
+        return result;
+    }
+
+    /**
+     * Mutable result container of {@link #countingByTemplate(PathTrie)}, holding the match state and counts of a
+     * single Thread.
+     */
+    private static final class TemplateCounter<E> {
+        private final ImmutablePathTrie<E> trie;
+        private final BatchCursor<E> cursor;
+        private final Map<ImmutableTrieNode<E>, long[]> counts = new IdentityHashMap<>();
+
+        TemplateCounter(ImmutablePathTrie<E> trie) {
+            this.trie = trie;
+            this.cursor = trie == null ? null : trie.newCursor();
+        }
+
+        void accept(CharSequence path) {
+            if (trie == null) {
+                return;
+            }
+            ImmutableTrieNode<E> node = trie.matchedNode(path, cursor);
+            if (node != null) {
+                long[] count = counts.get(node);
+                if (count == null) {
+                    counts.put(node, new long[]{1L});
+                } else {
+                    count[0]++;
+                }
+            }
+        }
+
+        TemplateCounter<E> merge(TemplateCounter<E> other) {
+            other.counts.forEach((node, count) -> {
+                long[] existing = counts.get(node);
+                if (existing == null) {
+                    counts.put(node, count);
+                } else {
+                    existing[0] += count[0];
+                }
+            });
+            return this;
+        }
+
+        Map<String, Long> finish() {
+            if (counts.isEmpty()) {
+                return Collections.emptyMap();
+            }
+            Map<String, Long> result = new LinkedHashMap<>(counts.size() * 2);
+            trie.forEachTemplate((template, node) -> {
+                long[] count = counts.get(node);
+                if (count != null) {
+                    result.put(template, count[0]);
+                }
+            });
+            return result;
+        }
+    }
+}
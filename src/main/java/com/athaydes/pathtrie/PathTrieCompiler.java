@@ -0,0 +1,34 @@
+package com.athaydes.pathtrie;
+
+/**
+ * Compiler of {@link PathTrie} instances into tries with matchers generated for their routes.
+ * <p>
+ * Compiling a trie is useful when the set of routes is fixed after startup: the compiled trie gives the same results
+ * as the original one, but the literal children of each node are looked up by a matcher built from
+ * {@link java.lang.invoke.MethodHandle} combinators, which switches on the length and characters of each path part
+ * instead of hashing or scanning it. Compiling takes longer than building a trie and uses more memory.
+ */
+public final class PathTrieCompiler {
+
+    private PathTrieCompiler() {
+    }
+
+    /**
+     * Compile the given trie.
+     *
+     * @param trie to compile, which must be empty or have been created by a {@link PathTrieBuilder}
+     * @param <E>  type of elements
+     * @return compiled trie, or the given trie if it is empty
+     * @throws IllegalArgumentException if the trie was not created by a {@link PathTrieBuilder}
+     */
+    public static <E> PathTrie<E> compile(PathTrie<E> trie) {
+        if (trie instanceof EmptyTrie) {
+            return trie;
+        }
+        if (!(trie instanceof ImmutablePathTrie)) {
+            throw new IllegalArgumentException("Only tries created by a PathTrieBuilder can be compiled: " +
+                    trie.getClass().getName());
+        }
+        return ((ImmutablePathTrie<E>) trie).compiled();
+    }
+}
@@ -0,0 +1,50 @@
+package com.athaydes.pathtrie;
+
+import java.util.Optional;
+
+/**
+ * A route stored in a {@link PathTrie}, identified by its template, as it would be given to a
+ * {@link PathTrieBuilder}, and its {@link HttpMethod}, if any.
+ *
+ * @param <E> type of elements
+ */
+public final class PathTrieEntry<E> {
+
+    private final String template;
+    private final HttpMethod method;
+    private final Box<E> element;
+
+    PathTrieEntry(String template, HttpMethod method, Box<E> element) {
+        this.template = template;
+        this.method = method;
+        this.element = element;
+    }
+
+    /**
+     * @return the path template of the route
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return the method of the route, or empty if the route is not specific to a method
+     */
+    public Optional<HttpMethod> getMethod() {
+        return Optional.ofNullable(method);
+    }
+
+    /**
+     * @return the element of the route, or empty if the element is computed by a function
+     */
+    public Optional<E> getElement() {
+        return element instanceof Box.SimpleBox
+                ? Optional.ofNullable(((Box.SimpleBox<E>) element).element)
+                : Optional.empty();
+    }
+
+    @Override
+    public String toString() {
+        return method == null ? template : method + " " + template;
+    }
+}
@@ -0,0 +1,414 @@
+package com.athaydes.pathtrie;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * {@link PathTrie} whose contents can be replaced atomically, e.g. when routes are reloaded.
+ * <p>
+ * Each lookup reads the current trie once and completes against it, so lookups in flight during a swap finish
+ * consistently against the trie they started with, while later lookups see the new trie. Each swap increments the
+ * {@link #version() version} of the holder.
+ * <p>
+ * A holder created with a sample size keeps a sample of the recent String paths looked up in it. Before a new trie is
+ * published, the sample is replayed against it, so that the first requests to the new trie do not pay for cold
+ * caches and code that is not yet compiled. Replaying only matches paths, so functions put in the trie are never
+ * called by the warm-up.
+ * <p>
+ * The latency of the first lookups after each swap is recorded, so that their p99 can be checked in
+ * {@link #lastSwap()}.
+ *
+ * @param <E> type of elements
+ */
+public final class PathTrieHolder<E> implements PathTrie<E> {
+
+    /**
+     * Number of lookups replayed by {@link #swap(PathTrie)} when there is a sample.
+     */
+    public static final int DEFAULT_WARM_UP_LOOKUPS = 10_000;
+
+    // only one in this many lookups is sampled, to keep sampling cheap
+    private static final int SAMPLE_INTERVAL = 16;
+    private static final int LATENCY_WINDOW_SIZE = 1000;
+
+    private final AtomicReference<Version<E>> current;
+
+    private final AtomicReferenceArray<String> samples;
+    private final AtomicLong sampleCount = new AtomicLong();
+
+    // updated without synchronization, as lost updates only change which lookups are sampled
+    private int lookupCount;
+
+    private PathTrieHolder(PathTrie<E> trie, int sampleSize) {
+        this.current = new AtomicReference<>(new Version<>(1L, trie, null));
+        this.samples = sampleSize > 0 ? new AtomicReferenceArray<>(sampleSize) : null;
+    }
+
+    /**
+     * Create a holder of the given trie, which does not warm up the tries swapped into it.
+     *
+     * @param trie initial trie
+     * @param <E>  type of elements
+     * @return holder at version 1
+     */
+    public static <E> PathTrieHolder<E> of(PathTrie<E> trie) {
+        return new PathTrieHolder<>(trie, 0);
+    }
+
+    /**
+     * Create a holder of the given trie, which warms up the tries swapped into it with a sample of the paths looked
+     * up in it.
+     *
+     * @param trie       initial trie
+     * @param sampleSize maximum number of recent paths to keep for warming up new tries
+     * @param <E>        type of elements
+     * @return holder at version 1
+     */
+    public static <E> PathTrieHolder<E> of(PathTrie<E> trie, int sampleSize) {
+        if (sampleSize < 1) {
+            throw new IllegalArgumentException("Sample size must be at least 1: " + sampleSize);
+        }
+        return new PathTrieHolder<>(trie, sampleSize);
+    }
+
+    /**
+     * @return the current trie
+     */
+    public PathTrie<E> get() {
+        return current.get().trie;
+    }
+
+    /**
+     * @return the current version, starting at 1 and incremented by each swap
+     */
+    public long version() {
+        return current.get().number;
+    }
+
+    /**
+     * Replace the current trie with the given one, after warming it up with {@link #DEFAULT_WARM_UP_LOOKUPS} lookups
+     * if this holder keeps a sample of paths.
+     *
+     * @param trie the new trie
+     * @return the version of the new trie
+     */
+    public long swap(PathTrie<E> trie) {
+        return swap(trie, DEFAULT_WARM_UP_LOOKUPS);
+    }
+
+    /**
+     * Replace the current trie with the given one, after warming it up with the given number of lookups.
+     *
+     * @param trie           the new trie
+     * @param warmUpLookups  number of sampled paths to look up in the new trie before publishing it, cycling through
+     *                       the sample as many times as necessary
+     * @return the version of the new trie
+     */
+    public long swap(PathTrie<E> trie, int warmUpLookups) {
+        long start = System.nanoTime();
+        int replayed = warmUp(trie, warmUpLookups);
+        long swapNanos = System.nanoTime() - start;
+        // the record of the swap is published together with the trie, so that both always agree
+        Version<E> version = current.updateAndGet(previous -> new Version<>(previous.number + 1, trie,
+                new SwapRecord(previous.number + 1, replayed, swapNanos)));
+        return version.number;
+    }
+
+    /**
+     * Replace the current trie with the given one only if the current version is the expected one, after warming
+     * up the new trie with {@link #DEFAULT_WARM_UP_LOOKUPS} lookups if this holder keeps a sample of paths.
+     *
+     * @param expectedVersion the version the new trie replaces
+     * @param trie            the new trie
+     * @return true if the trie was replaced, false if the current version was not the expected one
+     */
+    public boolean compareAndSwap(long expectedVersion, PathTrie<E> trie) {
+        long start = System.nanoTime();
+        Version<E> expected = current.get();
+        if (expected.number != expectedVersion) {
+            return false;
+        }
+        int replayed = warmUp(trie, DEFAULT_WARM_UP_LOOKUPS);
+        Version<E> version = new Version<>(expectedVersion + 1, trie,
+                new SwapRecord(expectedVersion + 1, replayed, System.nanoTime() - start));
+        return current.compareAndSet(expected, version);
+    }
+
+    /**
+     * @return metrics of the last swap, or empty if there was no swap
+     */
+    public Optional<SwapMetrics> lastSwap() {
+        SwapRecord swap = current.get().swap;
+        return swap == null ? Optional.empty() : Optional.of(swap.metrics());
+    }
+
+    private int warmUp(PathTrie<E> trie, int lookups) {
+        if (samples == null) {
+            return 0;
+        }
+        int available = (int) Math.min(sampleCount.get(), samples.length());
+        if (available == 0) {
+            return 0;
+        }
+        for (int i = 0; i < lookups; i++) {
+            String path = samples.get(i % available);
+            if (path != null) {
+                trie.getParameterized(path);
+            }
+        }
+        return lookups;
+    }
+
+    private void sample(String path) {
+        if (samples == null) {
+            return;
+        }
+        int count = ++lookupCount;
+        if (count % SAMPLE_INTERVAL == 0) {
+            samples.lazySet((int) (sampleCount.getAndIncrement() % samples.length()), path);
+        }
+    }
+
+    @Override
+    public Optional<E> get(String path) {
+        return getParameterized(path).map(ParameterizedElement::getElement);
+    }
+
+    @Override
+    public Optional<ParameterizedElement<E>> getParameterized(String path) {
+        sample(path);
+        Version<E> version = current.get();
+        SwapRecord swap = version.swap;
+        if (swap == null || swap.latencies.isFull()) {
+            return version.trie.getParameterized(path);
+        }
+        long start = System.nanoTime();
+        Optional<ParameterizedElement<E>> result = version.trie.getParameterized(path);
+        swap.latencies.record(System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public MethodMatch<E> getByMethod(HttpMethod method, String path) {
+        sample(path);
+        Version<E> version = current.get();
+        SwapRecord swap = version.swap;
+        if (swap == null || swap.latencies.isFull()) {
+            return version.trie.getByMethod(method, path);
+        }
+        long start = System.nanoTime();
+        MethodMatch<E> result = version.trie.getByMethod(method, path);
+        swap.latencies.record(System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public Optional<ParameterizedElement<E>> getParameterized(Path path) {
+        return get().getParameterized(path);
+    }
+
+    @Override
+    public Optional<ParameterizedElement<E>> getParameterized(ByteBuffer path) {
+        return get().getParameterized(path);
+    }
+
+    @Override
+    public Optional<ParameterizedElement<E>> getParameterized(byte[] path, int offset, int length) {
+        return get().getParameterized(path, offset, length);
+    }
+
+    @Override
+    public Optional<ParameterizedElement<E>> getByRequestTarget(String target) {
+        return get().getByRequestTarget(target);
+    }
+
+    @Override
+    public Optional<E> get(String host, String path) {
+        return get().get(host, path);
+    }
+
+    @Override
+    public Optional<ParameterizedElement<E>> getParameterized(String host, String path) {
+        return get().getParameterized(host, path);
+    }
+
+    @Override
+    public PathSplitter getPathSplitter() {
+        return get().getPathSplitter();
+    }
+
+    @Override
+    public Optional<PathTrie<E>> getChild(String path) {
+        return get().getChild(path);
+    }
+
+    @Override
+    public void forEachOnPath(String path, Consumer<? super ParameterizedElement<E>> action) {
+        get().forEachOnPath(path, action);
+    }
+
+    /**
+     * All paths of the batch are looked up in the same trie, even if it is swapped in the meantime.
+     */
+    @Override
+    public void getAll(List<? extends CharSequence> paths, ResultSink<E> sink) {
+        get().getAll(paths, sink);
+    }
+
+    @Override
+    public String toString() {
+        Version<E> version = current.get();
+        return "PathTrieHolder [version " + version.number + "] " + version.trie;
+    }
+
+    /**
+     * Metrics of a swap.
+     */
+    public static final class SwapMetrics {
+        private final long version;
+        private final int warmUpLookups;
+        private final long swapNanos;
+        private final int postSwapLookups;
+        private final long postSwapP99Nanos;
+
+        SwapMetrics(long version, int warmUpLookups, long swapNanos, int postSwapLookups, long postSwapP99Nanos) {
+            this.version = version;
+            this.warmUpLookups = warmUpLookups;
+            this.swapNanos = swapNanos;
+            this.postSwapLookups = postSwapLookups;
+            this.postSwapP99Nanos = postSwapP99Nanos;
+        }
+
+        /**
+         * @return version published by the swap
+         */
+        public long version() {
+            return version;
+        }
+
+        /**
+         * @return number of lookups made to warm up the new trie
+         */
+        public int warmUpLookups() {
+            return warmUpLookups;
+        }
+
+        /**
+         * @return time taken by the swap, including the warm-up, in nanoseconds
+         */
+        public long swapNanos() {
+            return swapNanos;
+        }
+
+        /**
+         * @return number of lookups recorded after the swap, up to a fixed window of lookups
+         */
+        public int postSwapLookups() {
+            return postSwapLookups;
+        }
+
+        /**
+         * @return the 99th percentile latency of the lookups recorded after the swap, in nanoseconds, or -1 if
+         * there were no such lookups yet
+         */
+        public long postSwapP99Nanos() {
+            return postSwapP99Nanos;
+        }
+
+        @Override
+        public String toString() {
+            return "SwapMetrics{version=" + version +
+                    ", warmUpLookups=" + warmUpLookups +
+                    ", swapNanos=" + swapNanos +
+                    ", postSwapLookups=" + postSwapLookups +
+                    ", postSwapP99Nanos=" + postSwapP99Nanos +
+                    '}';
+        }
+    }
+
+    private static final class Version<E> {
+        final long number;
+        final PathTrie<E> trie;
+
+        // record of the swap that published this version, or null for the initial version
+        final SwapRecord swap;
+
+        Version(long number, PathTrie<E> trie, SwapRecord swap) {
+            this.number = number;
+            this.trie = trie;
+            this.swap = swap;
+        }
+    }
+
+    private static final class SwapRecord {
+        final long version;
+        final int warmUpLookups;
+        final long swapNanos;
+        final LatencyWindow latencies = new LatencyWindow(LATENCY_WINDOW_SIZE);
+
+        SwapRecord(long version, int warmUpLookups, long swapNanos) {
+            this.version = version;
+            this.warmUpLookups = warmUpLookups;
+            this.swapNanos = swapNanos;
+        }
+
+        SwapMetrics metrics() {
+            long[] nanos = latencies.snapshot();
+            long p99 = -1L;
+            if (nanos.length > 0) {
+                Arrays.sort(nanos);
+                p99 = nanos[(int) Math.ceil(nanos.length * 0.99) - 1];
+            }
+            return new SwapMetrics(version, warmUpLookups, swapNanos, nanos.length, p99);
+        }
+    }
+
+    /**
+     * Latencies of a fixed number of lookups, recorded concurrently.
+     */
+    private static final class LatencyWindow {
+        // slots hold a latency plus one, so that zero means a slot reserved but not written yet
+        private final AtomicLongArray nanos;
+        private final AtomicInteger reserved = new AtomicInteger();
+
+        LatencyWindow(int size) {
+            this.nanos = new AtomicLongArray(size);
+        }
+
+        boolean isFull() {
+            return reserved.get() >= nanos.length();
+        }
+
+        void record(long latency) {
+            int index = reserved.getAndIncrement();
+            if (index < nanos.length()) {
+                nanos.set(index, Math.max(latency, 0L) + 1L);
+            }
+        }
+
+        /**
+         * @return the latencies recorded so far, missing any which are being recorded
+         */
+        long[] snapshot() {
+            int reservedCount = Math.min(reserved.get(), nanos.length());
+            long[] result = new long[reservedCount];
+            int count = 0;
+            for (int i = 0; i < reservedCount; i++) {
+                long value = nanos.get(i);
+                if (value != 0L) {
+                    result[count++] = value - 1L;
+                }
+            }
+            return count == result.length ? result : Arrays.copyOf(result, count);
+        }
+    }
+}
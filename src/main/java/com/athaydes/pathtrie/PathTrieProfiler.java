@@ -0,0 +1,161 @@
+package com.athaydes.pathtrie;
+
+import com.athaydes.pathtrie.ImmutablePathTrie.ImmutableTrieNode;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * {@link PathTrie} that records how many times each of its nodes is matched, so that an optimized copy of it can be
+ * created for the observed traffic with {@link #optimize()}.
+ * <p>
+ * Lookups of String paths without a host, with or without a HTTP method, are recorded while the path is matched, so
+ * that each lookup still walks the trie only once. All other calls are simply delegated to the profiled trie.
+ * <p>
+ * Recording hits makes lookups slower, so a profiler should only be used during a warm-up or sampling window.
+ * It is safe to use a profiler from several Threads.
+ *
+ * @param <E> type of elements
+ */
+public final class PathTrieProfiler<E> implements PathTrie<E> {
+
+    private final PathTrie<E> trie;
+
+    // the profiled trie if its nodes can be recorded, or null otherwise
+    private final ImmutablePathTrie<E> immutableTrie;
+
+    private final Map<ImmutableTrieNode<?>, LongAdder> hits = new ConcurrentHashMap<>();
+    private final Consumer<ImmutableTrieNode<E>> hitRecorder = this::recordHit;
+
+    private PathTrieProfiler(PathTrie<E> trie) {
+        this.trie = trie;
+        this.immutableTrie = trie instanceof ImmutablePathTrie ? (ImmutablePathTrie<E>) trie : null;
+    }
+
+    /**
+     * Start profiling the given trie.
+     *
+     * @param trie to profile
+     * @param <E>  type of elements
+     * @return profiler
+     */
+    public static <E> PathTrieProfiler<E> profile(PathTrie<E> trie) {
+        return new PathTrieProfiler<>(trie);
+    }
+
+    PathTrie<E> getTrie() {
+        return trie;
+    }
+
+    /**
+     * Record a hit for the given path without looking it up.
+     *
+     * @param path that was hit
+     */
+    public void record(String path) {
+        if (immutableTrie != null) {
+            immutableTrie.forEachMatchedNode(path, hitRecorder);
+        }
+    }
+
+    private void recordHit(ImmutableTrieNode<E> node) {
+        // nodes are only added to the map on their first hit, so most hits do not need to lock
+        LongAdder count = hits.get(node);
+        if (count == null) {
+            count = hits.computeIfAbsent(node, n -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    /**
+     * Create a copy of the profiled trie which gives the same results as it, but where the literal children of each
+     * node are ordered so that the most frequently matched ones are found first, while the literal children which
+     * were never matched are moved to a separate table that is only searched when no other child matches.
+     *
+     * @return the optimized copy, or the profiled trie itself if it cannot be optimized
+     */
+    public PathTrie<E> optimize() {
+        if (immutableTrie != null) {
+            return immutableTrie.orderedByHits(node -> {
+                LongAdder count = hits.get(node);
+                return count == null ? 0L : count.sum();
+            });
+        }
+        return trie;
+    }
+
+    @Override
+    public Optional<E> get(String path) {
+        return getParameterized(path).map(ParameterizedElement::getElement);
+    }
+
+    @Override
+    public Optional<ParameterizedElement<E>> getParameterized(String path) {
+        if (immutableTrie != null) {
+            return immutableTrie.getParameterized(path, hitRecorder);
+        }
+        return trie.getParameterized(path);
+    }
+
+    @Override
+    public Optional<ParameterizedElement<E>> getParameterized(Path path) {
+        return trie.getParameterized(path);
+    }
+
+    @Override
+    public Optional<ParameterizedElement<E>> getParameterized(ByteBuffer path) {
+        return trie.getParameterized(path);
+    }
+
+    @Override
+    public Optional<ParameterizedElement<E>> getParameterized(byte[] path, int offset, int length) {
+        return trie.getParameterized(path, offset, length);
+    }
+
+    @Override
+    public Optional<ParameterizedElement<E>> getByRequestTarget(String target) {
+        return trie.getByRequestTarget(target);
+    }
+
+    @Override
+    public Optional<E> get(String host, String path) {
+        return trie.get(host, path);
+    }
+
+    @Override
+    public Optional<ParameterizedElement<E>> getParameterized(String host, String path) {
+        return trie.getParameterized(host, path);
+    }
+
+    @Override
+    public MethodMatch<E> getByMethod(HttpMethod method, String path) {
+        if (immutableTrie != null) {
+            return immutableTrie.getByMethod(method, path, hitRecorder);
+        }
+        return trie.getByMethod(method, path);
+    }
+
+    @Override
+    public PathSplitter getPathSplitter() {
+        return trie.getPathSplitter();
+    }
+
+    @Override
+    public Optional<PathTrie<E>> getChild(String path) {
+        return trie.getChild(path);
+    }
+
+    @Override
+    public void forEachOnPath(String path, Consumer<? super ParameterizedElement<E>> action) {
+        trie.forEachOnPath(path, action);
+    }
+
+    @Override
+    public String toString() {
+        return trie.toString();
+    }
+}
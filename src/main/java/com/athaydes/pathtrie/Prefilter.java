@@ -0,0 +1,140 @@
+package com.athaydes.pathtrie;
+
+import com.athaydes.pathtrie.ImmutablePathTrie.ImmutableTrieNode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compact filter that rejects most paths which cannot match a trie before walking it.
+ * <p>
+ * Two checks are made: the number of parts of the path must be within the depths at which elements exist, and,
+ * unless the root of the trie has parameterized children, the first part of the path must be in a Bloom filter of
+ * the literal children of the root.
+ * <p>
+ * The filter has no false negatives: any path that could match an element of the trie passes it.
+ */
+final class Prefilter {
+
+    private static final int BITS_PER_KEY = 10;
+    private static final int HASH_COUNT = 3;
+
+    /**
+     * Bloom filter of the literal first parts of paths, or null if any first part may match.
+     */
+    private final long[] bits;
+    private final int keyCount;
+    private final int minDepth;
+    private final int maxDepth;
+
+    // whether the keys are folded, as are the parts of paths when hashing them
+    private final boolean ignoreCase;
+
+    private Prefilter(long[] bits, int keyCount, int minDepth, int maxDepth, boolean ignoreCase) {
+        this.bits = bits;
+        this.keyCount = keyCount;
+        this.minDepth = minDepth;
+        this.maxDepth = maxDepth;
+        this.ignoreCase = ignoreCase;
+    }
+
+    /**
+     * @param root       of the trie
+     * @param ignoreCase whether the literal keys of the trie are folded
+     * @return filter of the trie, only visiting the children of its root, as the depths at which elements exist are
+     * kept by the root
+     */
+    static Prefilter of(ImmutableTrieNode<?> root, boolean ignoreCase) {
+        long[] bits = null;
+        List<String> keys = new ArrayList<>();
+        boolean anyFirstPart = root.getTyped().length > 0 || root.getParameterized() != null ||
+                root.getCatchAll() != null;
+        if (!anyFirstPart) {
+            root.forEachLiteral((key, child) -> {
+                keys.add(key);
+                // paths given as bytes are hashed in byte form
+                String byteForm = ByteSequence.byteForm(key);
+                if (!byteForm.equals(key)) {
+                    keys.add(byteForm);
+                }
+            });
+            // a power of two number of bits, in 64-bit words
+            int words = Math.max(1, Integer.highestOneBit(Math.max(1, keys.size() * BITS_PER_KEY - 1)) >>> 5);
+            bits = new long[words];
+            for (String key : keys) {
+                int hash = LiteralChildren.hash(key, 0, key.length());
+                for (int i = 0; i < HASH_COUNT; i++) {
+                    int bit = bitIndex(hash, i, bits.length);
+                    bits[bit >>> 6] |= 1L << bit;
+                }
+            }
+        }
+        return new Prefilter(bits, keys.size(), root.minElementDepth, root.maxElementDepth, ignoreCase);
+    }
+
+    private static int bitIndex(int hash, int i, int words) {
+        // double hashing: the i-th index is h1 + i * h2
+        int h2 = (hash >>> 16) | (hash << 16) | 1;
+        return (hash + i * h2) & (words * 64 - 1);
+    }
+
+    /**
+     * @param scanner of the path
+     * @return false if the path cannot match any element of the trie, true if it might
+     */
+    boolean mightMatch(PathScanner scanner) {
+        int cursor = scanner.first();
+        if (cursor < 0) {
+            return false;
+        }
+        int start = scanner.start(cursor);
+        int end = scanner.end(cursor);
+        boolean byteView = LiteralChildren.isByteView(scanner.path);
+        // parts given as bytes with chars which are not ASCII may only match ignoring case once decoded
+        if (bits != null && !(ignoreCase && byteView && !LiteralChildren.isAscii(scanner.path, start, end))) {
+            int hash = ignoreCase
+                    // byte forms of keys are folded before conversion, so only ASCII bytes are folded
+                    ? LiteralChildren.foldedHash(scanner.path, start, end, byteView)
+                    : LiteralChildren.hash(scanner.path, start, end);
+            for (int i = 0; i < HASH_COUNT; i++) {
+                int bit = bitIndex(hash, i, bits.length);
+                if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+        }
+        int depth = 0;
+        while (cursor >= 0) {
+            if (++depth > maxDepth) {
+                return false;
+            }
+            cursor = scanner.next(cursor, scanner.end(cursor));
+        }
+        return depth >= minDepth;
+    }
+
+    /**
+     * @return the expected rate of false positives of the first-part filter, or 1 if there is no such filter
+     */
+    double falsePositiveRate() {
+        if (bits == null) {
+            return 1.0;
+        }
+        double bitCount = bits.length * 64.0;
+        return Math.pow(1 - Math.exp(-HASH_COUNT * keyCount / bitCount), HASH_COUNT);
+    }
+
+    /**
+     * @return approximate memory used by the filter, in bytes
+     */
+    int memoryBytes() {
+        return bits == null ? 0 : bits.length * 8;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "prefilter: %d keys in %d bytes, %.2f%% false positives, depth %d..%s",
+                keyCount, memoryBytes(), falsePositiveRate() * 100, minDepth,
+                maxDepth == Integer.MAX_VALUE ? "*" : Integer.toString(maxDepth));
+    }
+}
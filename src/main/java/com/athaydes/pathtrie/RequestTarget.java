@@ -0,0 +1,242 @@
+package com.athaydes.pathtrie;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * View of the path of a raw HTTP request target, as the path would be after being normalized.
+ * <p>
+ * The path ends before the query ({@code ?}) or fragment ({@code #}), repeated separators count as one and each
+ * valid {@code %XX} escape is seen as the single byte it encodes. Percent-encoded bytes are never considered
+ * separators, see {@link #separatorAt(int, String)}.
+ * <p>
+ * Targets that need neither decoding nor collapsing are viewed directly. Otherwise, the view is of the bytes of the
+ * UTF-8 encoded path: escapes are the bytes they encode and any other char is seen as its UTF-8 bytes, so that
+ * targets mixing escapes with chars which are not ASCII, which RFC 3986 does not allow but browsers send, are
+ * decoded consistently. The index in the raw target of the char each byte comes from is kept, so that the target is
+ * still never copied. Only {@link #toString()} decodes the target, so parameters are only decoded when they are read.
+ * <p>
+ * Chars of a byte view are compared with literal keys in their {@link ByteSequence#byteForm(String) byte form}, as
+ * are the chars of targets viewed directly if they are all ASCII.
+ */
+final class RequestTarget implements CharSequence {
+
+    private final String raw;
+
+    // index in the raw target of the char each byte of the view comes from, shifted left by 2 bits to hold the
+    // index of the byte in the UTF-8 encoding of the char, or null if the view is the raw target itself
+    private final int[] rawIndex;
+    private final int offset;
+    private final int length;
+    private final boolean byteView;
+
+    private RequestTarget(String raw, int[] rawIndex, int offset, int length, boolean byteView) {
+        this.raw = raw;
+        this.rawIndex = rawIndex;
+        this.offset = offset;
+        this.length = length;
+        this.byteView = byteView;
+    }
+
+    /**
+     * @param raw       the raw request target
+     * @param separator the separator of path parts, or null if repeated separators should not be collapsed
+     * @return view of the path of the target
+     */
+    static RequestTarget of(String raw, String separator) {
+        int end = raw.length();
+        boolean plain = true;
+        boolean ascii = true;
+        boolean collapse = separator != null && !separator.isEmpty();
+        for (int i = 0; i < end; i++) {
+            char c = raw.charAt(i);
+            if (c == '?' || c == '#') {
+                end = i;
+            } else if (c == '%' && isEscape(raw, i)) {
+                plain = false;
+            } else if (c >= 0x80) {
+                ascii = false;
+            } else if (collapse && plain && i > 0 && raw.startsWith(separator, i) &&
+                    raw.startsWith(separator, i - separator.length())) {
+                plain = false;
+            }
+        }
+        if (plain) {
+            return new RequestTarget(raw, null, 0, end, ascii);
+        }
+        // no char takes more than 3 bytes in UTF-8, and surrogate pairs take 4 bytes for 2 chars
+        int[] rawIndex = new int[ascii ? end : end * 3];
+        int length = 0;
+        int i = 0;
+        while (i < end) {
+            if (collapse && raw.startsWith(separator, i) && i + separator.length() <= end) {
+                int separatorEnd = i + separator.length();
+                while (i < separatorEnd) {
+                    length = addBytes(raw, i, rawIndex, length);
+                    i += Character.charCount(raw.codePointAt(i));
+                }
+                while (raw.startsWith(separator, i) && i + separator.length() <= end) {
+                    i += separator.length();
+                }
+            } else if (isEscape(raw, i)) {
+                rawIndex[length++] = i << 2;
+                i += 3;
+            } else {
+                length = addBytes(raw, i, rawIndex, length);
+                i += isSurrogatePair(raw, i) ? 2 : 1;
+            }
+        }
+        return new RequestTarget(raw, rawIndex, 0, length, true);
+    }
+
+    /**
+     * Add the bytes of the UTF-8 encoding of the char at the given index of the raw target to the view.
+     *
+     * @return the new length of the view
+     */
+    private static int addBytes(String raw, int index, int[] rawIndex, int length) {
+        int byteCount = byteCount(raw, index);
+        for (int i = 0; i < byteCount; i++) {
+            rawIndex[length++] = (index << 2) | i;
+        }
+        return length;
+    }
+
+    /**
+     * @return true if the chars of this view are the bytes of the UTF-8 encoded path
+     */
+    boolean isByteView() {
+        return byteView;
+    }
+
+    /**
+     * @return true if this is a view of a prefix of the raw target, with no decoding or collapsing
+     */
+    boolean isRaw() {
+        return rawIndex == null;
+    }
+
+    String getRaw() {
+        return raw;
+    }
+
+    /**
+     * @param index     in this view
+     * @param separator separator of path parts, in the same form as the chars of this view
+     * @return true if the separator occurs, not percent-encoded, at the given index
+     */
+    boolean separatorAt(int index, String separator) {
+        if (index + separator.length() > length) {
+            return false;
+        }
+        for (int i = 0; i < separator.length(); i++) {
+            if (charAt(index + i) != separator.charAt(i) ||
+                    rawIndex != null && isEscape(raw, rawIndex[offset + index + i] >>> 2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index: " + index + ", length: " + length);
+        }
+        if (rawIndex == null) {
+            return raw.charAt(offset + index);
+        }
+        int entry = rawIndex[offset + index];
+        int i = entry >>> 2;
+        char c = raw.charAt(i);
+        if (c < 0x80) {
+            return isEscape(raw, i)
+                    ? (char) ((hexValue(raw.charAt(i + 1)) << 4) | hexValue(raw.charAt(i + 2)))
+                    : c;
+        }
+        return (char) utf8Byte(raw, i, entry & 3);
+    }
+
+    @Override
+    public RequestTarget subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + length);
+        }
+        return new RequestTarget(raw, rawIndex, offset + start, end - start, byteView);
+    }
+
+    @Override
+    public String toString() {
+        if (rawIndex == null) {
+            return raw.substring(offset, offset + length);
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) charAt(i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the number of bytes of the UTF-8 encoding of the char, or surrogate pair, at the given index
+     */
+    private static int byteCount(String raw, int index) {
+        char c = raw.charAt(index);
+        if (c < 0x80) {
+            return 1;
+        }
+        if (c < 0x800) {
+            return 2;
+        }
+        if (isSurrogatePair(raw, index)) {
+            return 4;
+        }
+        // lone surrogates are encoded as '?', as String.getBytes does
+        return Character.isSurrogate(c) ? 1 : 3;
+    }
+
+    /**
+     * @return the byte at the given index of the UTF-8 encoding of the char, or surrogate pair, at the given index
+     */
+    private static int utf8Byte(String raw, int index, int byteIndex) {
+        char c = raw.charAt(index);
+        if (c < 0x800) {
+            return byteIndex == 0 ? 0xC0 | (c >> 6) : 0x80 | (c & 0x3F);
+        }
+        if (isSurrogatePair(raw, index)) {
+            int codePoint = Character.toCodePoint(c, raw.charAt(index + 1));
+            return byteIndex == 0 ? 0xF0 | (codePoint >> 18) : 0x80 | ((codePoint >> (6 * (3 - byteIndex))) & 0x3F);
+        }
+        if (Character.isSurrogate(c)) {
+            return '?';
+        }
+        return byteIndex == 0 ? 0xE0 | (c >> 12) : 0x80 | ((c >> (6 * (2 - byteIndex))) & 0x3F);
+    }
+
+    private static boolean isSurrogatePair(String raw, int index) {
+        return Character.isHighSurrogate(raw.charAt(index)) && index + 1 < raw.length() &&
+                Character.isLowSurrogate(raw.charAt(index + 1));
+    }
+
+    private static boolean isEscape(String raw, int index) {
+        return index + 2 < raw.length() && raw.charAt(index) == '%' &&
+                hexValue(raw.charAt(index + 1)) >= 0 && hexValue(raw.charAt(index + 2)) >= 0;
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+}
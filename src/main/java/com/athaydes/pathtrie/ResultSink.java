@@ -0,0 +1,30 @@
+package com.athaydes.pathtrie;
+
+/**
+ * Receiver of the results of a batch lookup, see {@link PathTrie#getAll(java.util.List, ResultSink)}.
+ * <p>
+ * Results are reported by the index of the path in the batch.
+ *
+ * @param <E> type of elements
+ */
+@FunctionalInterface
+public interface ResultSink<E> {
+
+    /**
+     * Called when the path at the given index matches an element.
+     *
+     * @param index   of the path in the batch
+     * @param element found under the path
+     */
+    void found(int index, ParameterizedElement<E> element);
+
+    /**
+     * Called when the path at the given index does not match any element.
+     * <p>
+     * Does nothing by default.
+     *
+     * @param index of the path in the batch
+     */
+    default void notFound(int index) {
+    }
+}
@@ -0,0 +1,235 @@
+package com.athaydes.pathtrie;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Handle of a route put in a {@link PathTrieBuilder}, used to write the paths matching the route given the values of
+ * its parameters.
+ * <p>
+ * The literal parts of the template are joined into fragments when the handle is created, so writing a path only
+ * appends the fragments and the values of the parameters, in order. Values are written as given: they are neither
+ * encoded nor checked against the type of their parameter.
+ * <p>
+ * Instances are immutable and can be shared between Threads.
+ *
+ * @see PathTrieBuilder#route(String)
+ */
+public final class ReverseRoute {
+
+    // estimate of the length of a parameter value
+    private static final int PARAMETER_SIZE_HINT = 8;
+
+    private final String template;
+
+    // literal fragments of the template around each parameter, one more than there are parameters
+    private final String[] fragments;
+
+    private final String[] parameterNames;
+    private final int sizeHint;
+
+    private ReverseRoute(String template, String[] fragments, String[] parameterNames) {
+        this.template = template;
+        this.fragments = fragments;
+        this.parameterNames = parameterNames;
+        int size = parameterNames.length * PARAMETER_SIZE_HINT;
+        for (String fragment : fragments) {
+            size += fragment.length();
+        }
+        this.sizeHint = size;
+    }
+
+    static ReverseRoute of(String template, Iterable<String> parts, PathSplitter pathSplitter) {
+        String separator = ImmutablePathTrie.templateSeparator(pathSplitter);
+        List<String> fragments = new ArrayList<>(4);
+        List<String> parameterNames = new ArrayList<>(4);
+        StringBuilder fragment = new StringBuilder(template.length());
+        boolean first = true;
+        for (String part : parts) {
+            if (!first) {
+                fragment.append(separator);
+            }
+            first = false;
+            if (MutableTrieNode.isCatchAll(part, pathSplitter)) {
+                parameterNames.add(part.substring(pathSplitter.catchAllParameterPrefix().length()));
+            } else if (part.startsWith(pathSplitter.parameterizedParameterPrefix())) {
+                parameterNames.add(MutableTrieNode.parameterName(
+                        part.substring(pathSplitter.parameterizedParameterPrefix().length())));
+            } else {
+                fragment.append(part);
+                continue;
+            }
+            fragments.add(fragment.toString());
+            fragment.setLength(0);
+        }
+        fragments.add(fragment.toString());
+        return new ReverseRoute(template, fragments.toArray(new String[0]), parameterNames.toArray(new String[0]));
+    }
+
+    /**
+     * @return the template of the route, as given to the {@link PathTrieBuilder}
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return the names of the parameters of the route, in the order their values are given
+     */
+    public List<String> getParameterNames() {
+        List<String> result = new ArrayList<>(parameterNames.length);
+        for (String name : parameterNames) {
+            result.add(name);
+        }
+        return result;
+    }
+
+    /**
+     * @return the expected length of a path of this route, assuming short parameter values
+     */
+    public int sizeHint() {
+        return sizeHint;
+    }
+
+    /**
+     * Write the path of this route with the given parameter values.
+     *
+     * @param parameters the values of the parameters, in order
+     * @return the path
+     * @throws IllegalArgumentException if the number of values is not the number of parameters, or a value is null
+     */
+    public String path(Object... parameters) {
+        return appendTo(new StringBuilder(sizeHint), parameters).toString();
+    }
+
+    /**
+     * Append the path of this route with the given parameter values to the given builder.
+     * <p>
+     * Values which are a {@link CharSequence} or an integral {@link Number} are appended without creating a String.
+     *
+     * @param builder    to append the path to
+     * @param parameters the values of the parameters, in order
+     * @return the given builder
+     * @throws IllegalArgumentException if the number of values is not the number of parameters, or a value is null
+     */
+    public StringBuilder appendTo(StringBuilder builder, Object... parameters) {
+        verifyParameterCount(parameters.length);
+        builder.ensureCapacity(builder.length() + sizeHint);
+        for (int i = 0; i < parameters.length; i++) {
+            builder.append(fragments[i]);
+            Object value = parameterValue(parameters, i);
+            if (value instanceof CharSequence) {
+                builder.append((CharSequence) value);
+            } else if (isIntegral(value)) {
+                builder.append(((Number) value).longValue());
+            } else {
+                builder.append(value);
+            }
+        }
+        return builder.append(fragments[parameters.length]);
+    }
+
+    /**
+     * Append the path of this route, which must have a single parameter, to the given builder.
+     *
+     * @param builder   to append the path to
+     * @param parameter the value of the parameter
+     * @return the given builder
+     * @throws IllegalArgumentException if this route does not have a single parameter
+     */
+    public StringBuilder appendTo(StringBuilder builder, long parameter) {
+        verifyParameterCount(1);
+        builder.ensureCapacity(builder.length() + sizeHint);
+        return builder.append(fragments[0]).append(parameter).append(fragments[1]);
+    }
+
+    /**
+     * Append the path of this route, which must have two parameters, to the given builder.
+     *
+     * @param builder the builder to append the path to
+     * @param first   the value of the first parameter
+     * @param second  the value of the second parameter
+     * @return the given builder
+     * @throws IllegalArgumentException if this route does not have two parameters
+     */
+    public StringBuilder appendTo(StringBuilder builder, long first, long second) {
+        verifyParameterCount(2);
+        builder.ensureCapacity(builder.length() + sizeHint);
+        return builder.append(fragments[0]).append(first)
+                .append(fragments[1]).append(second)
+                .append(fragments[2]);
+    }
+
+    /**
+     * Write the path of this route with the given parameter values to the given {@link Appendable}.
+     * <p>
+     * Values which are a {@link CharSequence} or an integral {@link Number} are written without creating a String.
+     *
+     * @param out        to write the path to
+     * @param parameters the values of the parameters, in order
+     * @throws IOException              if the {@link Appendable} throws it
+     * @throws IllegalArgumentException if the number of values is not the number of parameters, or a value is null
+     */
+    public void writeTo(Appendable out, Object... parameters) throws IOException {
+        verifyParameterCount(parameters.length);
+        for (int i = 0; i < parameters.length; i++) {
+            out.append(fragments[i]);
+            Object value = parameterValue(parameters, i);
+            if (value instanceof CharSequence) {
+                out.append((CharSequence) value);
+            } else if (isIntegral(value)) {
+                writeDigits(out, ((Number) value).longValue());
+            } else {
+                out.append(value.toString());
+            }
+        }
+        out.append(fragments[parameters.length]);
+    }
+
+    private void verifyParameterCount(int count) {
+        if (count != parameterNames.length) {
+            throw new IllegalArgumentException("Route '" + template + "' has " + parameterNames.length +
+                    " parameter" + (parameterNames.length == 1 ? "" : "s") + " but " + count +
+                    (count == 1 ? " value was" : " values were") + " given");
+        }
+    }
+
+    private Object parameterValue(Object[] parameters, int index) {
+        Object value = parameters[index];
+        if (value == null) {
+            throw new IllegalArgumentException("Value of parameter '" + parameterNames[index] + "' is null");
+        }
+        return value;
+    }
+
+    private static boolean isIntegral(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+
+    /**
+     * Write the decimal digits of the given value one by one, working with negative values so that
+     * {@link Long#MIN_VALUE} needs no special case.
+     */
+    private static void writeDigits(Appendable out, long value) throws IOException {
+        long negative = value;
+        if (value < 0) {
+            out.append('-');
+        } else {
+            negative = -value;
+        }
+        long divisor = 1;
+        while (negative / divisor <= -10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.append((char) ('0' - negative / divisor));
+            negative %= divisor;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+}
@@ -0,0 +1,97 @@
+package com.athaydes.pathtrie;
+
+import java.util.Optional;
+
+/**
+ * A route added, removed or changed between two versions of a {@link PathTrie}.
+ * <p>
+ * Routes are identified by their template, as it would be given to a {@link PathTrieBuilder}, together with their
+ * host and {@link HttpMethod}, if any.
+ *
+ * @param <E> type of elements
+ * @see PathTrie#diff(PathTrie)
+ */
+public final class RouteChange<E> {
+
+    /**
+     * Kind of a {@link RouteChange}.
+     */
+    public enum Kind {
+        ADDED, REMOVED, CHANGED
+    }
+
+    private final Kind kind;
+    private final String host;
+    private final String template;
+    private final HttpMethod method;
+    private final Box<E> before;
+    private final Box<E> after;
+
+    RouteChange(String host, String template, HttpMethod method, Box<E> before, Box<E> after) {
+        this.kind = before == null ? Kind.ADDED : after == null ? Kind.REMOVED : Kind.CHANGED;
+        this.host = host;
+        this.template = template;
+        this.method = method;
+        this.before = before;
+        this.after = after;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the host template of the route, or empty if the route has no host
+     */
+    public Optional<String> getHost() {
+        return Optional.ofNullable(host);
+    }
+
+    /**
+     * @return the path template of the route
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return the method of the route, or empty if the route is not specific to a method
+     */
+    public Optional<HttpMethod> getMethod() {
+        return Optional.ofNullable(method);
+    }
+
+    /**
+     * @return the element of the route in the first trie, or empty if the route was added or its element is
+     * computed by a function
+     */
+    public Optional<E> getBefore() {
+        return elementOf(before);
+    }
+
+    /**
+     * @return the element of the route in the second trie, or empty if the route was removed or its element is
+     * computed by a function
+     */
+    public Optional<E> getAfter() {
+        return elementOf(after);
+    }
+
+    private static <E> Optional<E> elementOf(Box<E> box) {
+        return box instanceof Box.SimpleBox
+                ? Optional.ofNullable(((Box.SimpleBox<E>) box).element)
+                : Optional.empty();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(kind.name()).append(' ');
+        if (method != null) {
+            builder.append(method).append(' ');
+        }
+        if (host != null) {
+            builder.append(host).append(' ');
+        }
+        return builder.append(template).toString();
+    }
+}
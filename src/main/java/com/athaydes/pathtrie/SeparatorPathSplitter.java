@@ -0,0 +1,40 @@
+package com.athaydes.pathtrie;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * The {@link PathSplitter} created by {@link PathSplitter.PathSplitterBuilder}.
+ * <p>
+ * Knowing the separator allows {@link PathTrie} lookups to find path parts lazily with a {@link PathScanner}.
+ */
+final class SeparatorPathSplitter implements PathSplitter {
+
+    final String separator;
+    private final String parameterPrefix;
+    private final String catchAllPrefix;
+    private final Pattern splitPattern;
+
+    SeparatorPathSplitter(String separator, String parameterPrefix, String catchAllPrefix) {
+        this.separator = separator;
+        this.parameterPrefix = parameterPrefix;
+        this.catchAllPrefix = catchAllPrefix;
+        this.splitPattern = Pattern.compile(Pattern.quote(separator));
+    }
+
+    @Override
+    public Iterable<String> apply(String s) {
+        return Arrays.asList(splitPattern.split(s));
+    }
+
+    @Override
+    public String parameterizedParameterPrefix() {
+        return parameterPrefix;
+    }
+
+    @Override
+    public String catchAllParameterPrefix() {
+        return catchAllPrefix;
+    }
+
+}
@@ -0,0 +1,264 @@
+package com.athaydes.pathtrie;
+
+import com.athaydes.pathtrie.ImmutablePathTrie.CatchAllImmutableTrieNode;
+import com.athaydes.pathtrie.ImmutablePathTrie.ImmutableTrieNode;
+import com.athaydes.pathtrie.ImmutablePathTrie.ParameterizedImmutableTrieNode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazy depth-first walk of the nodes of two tries together, reporting the routes that differ between them.
+ * <p>
+ * Subtrees that are the same instance in both tries are skipped without being visited, so diffing tries that share
+ * most of their nodes only visits the nodes on the way to the differences.
+ */
+final class TrieDiff<E> implements Iterator<RouteChange<E>> {
+
+    private final ImmutablePathTrie<E> before;
+    private final ImmutablePathTrie<E> after;
+    private final boolean sameCaseSensitivity;
+
+    // pairs of nodes still to be compared, the next one on top
+    private final Deque<Pair<E>> pending = new ArrayDeque<>();
+
+    // changes found in the last pair compared, not yet returned
+    private final Deque<RouteChange<E>> found = new ArrayDeque<>(4);
+
+    private TrieDiff(ImmutablePathTrie<E> before, ImmutablePathTrie<E> after) {
+        this.before = before;
+        this.after = after;
+        this.sameCaseSensitivity = before == null || after == null || before.isIgnoringCase() == after.isIgnoringCase();
+    }
+
+    static <E> Stream<RouteChange<E>> of(PathTrie<E> before, PathTrie<E> after) {
+        ImmutablePathTrie<E> beforeTrie = diffable(before);
+        ImmutablePathTrie<E> afterTrie = diffable(after);
+        TrieDiff<E> diff = new TrieDiff<>(beforeTrie, afterTrie);
+        ImmutableTrieNode<E>[] beforeHosts = hostRoots(beforeTrie);
+        ImmutableTrieNode<E>[] afterHosts = hostRoots(afterTrie);
+        for (int labels = Math.max(beforeHosts.length, afterHosts.length) - 1; labels > 0; labels--) {
+            diff.pending.push(new Pair<>(null, null, labels,
+                    labels < beforeHosts.length ? beforeHosts[labels] : null,
+                    labels < afterHosts.length ? afterHosts[labels] : null));
+        }
+        diff.pending.push(new Pair<>(null, null, 0,
+                beforeTrie == null ? null : beforeTrie.getRoot(),
+                afterTrie == null ? null : afterTrie.getRoot()));
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(diff,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * @return the trie the given one is based on, or null if the given trie is empty
+     */
+    private static <E> ImmutablePathTrie<E> diffable(PathTrie<E> trie) {
+        if (trie instanceof EmptyTrie) {
+            return null;
+        }
+        ImmutablePathTrie<E> result = ImmutablePathTrie.unwrap(trie);
+        if (result == null) {
+            throw new IllegalArgumentException("Only tries created by a PathTrieBuilder can be diffed: " +
+                    trie.getClass().getName());
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> ImmutableTrieNode<E>[] hostRoots(ImmutablePathTrie<E> trie) {
+        return trie == null ? (ImmutableTrieNode<E>[]) new ImmutableTrieNode<?>[0] : trie.getHostRoots();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (found.isEmpty() && !pending.isEmpty()) {
+            compare(pending.pop());
+        }
+        return !found.isEmpty();
+    }
+
+    @Override
+    public RouteChange<E> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return found.poll();
+    }
+
+    private void compare(Pair<E> pair) {
+        ImmutableTrieNode<E> a = pair.before;
+        ImmutableTrieNode<E> b = pair.after;
+        if (a == b) {
+            return;
+        }
+        if (pair.parent != null) {
+            compareElements(pair, a, b);
+        }
+        List<Pair<E>> children = new ArrayList<>();
+        if (sameCaseSensitivity) {
+            if (a != null) {
+                a.forEachLiteral((key, child) -> children.add(pair.child(key, child,
+                        b == null ? null : b.getLiteral(key, 0, key.length()))));
+            }
+            if (b != null) {
+                b.forEachLiteral((key, child) -> {
+                    if (a == null || a.getLiteral(key, 0, key.length()) == null) {
+                        children.add(pair.child(key, null, child));
+                    }
+                });
+            }
+        } else {
+            // looking up the keys of one trie in the other would pair keys differing in case only one way, so keys
+            // are paired if they are the same, as are the templates of the routes under them
+            Map<String, ImmutableTrieNode<E>> afterLiterals = new LinkedHashMap<>();
+            if (b != null) {
+                b.forEachLiteral(afterLiterals::put);
+            }
+            if (a != null) {
+                a.forEachLiteral((key, child) -> children.add(pair.child(key, child, afterLiterals.remove(key))));
+            }
+            afterLiterals.forEach((key, child) -> children.add(pair.child(key, null, child)));
+        }
+        List<ParameterizedImmutableTrieNode<E>> beforeParameters = parameterChildren(a);
+        List<ParameterizedImmutableTrieNode<E>> afterParameters = parameterChildren(b);
+        for (ParameterizedImmutableTrieNode<E> child : beforeParameters) {
+            ParameterizedImmutableTrieNode<E> other = sameParameter(child, afterParameters);
+            children.add(pair.child(child.parameterName, child, other));
+        }
+        for (ParameterizedImmutableTrieNode<E> child : afterParameters) {
+            if (sameParameter(child, beforeParameters) == null) {
+                children.add(pair.child(child.parameterName, null, child));
+            }
+        }
+        // push in reverse, so that children are compared in order
+        for (int i = children.size() - 1; i >= 0; i--) {
+            pending.push(children.get(i));
+        }
+    }
+
+    private void compareElements(Pair<E> pair, ImmutableTrieNode<E> a, ImmutableTrieNode<E> b) {
+        Box<E> elementBefore = a == null ? null : a.element;
+        Box<E> elementAfter = b == null ? null : b.element;
+        if (!sameElement(elementBefore, elementAfter)) {
+            found.add(change(pair, null, elementBefore, elementAfter));
+        }
+        Box<E>[] methodsBefore = a == null ? null : a.methodElements;
+        Box<E>[] methodsAfter = b == null ? null : b.methodElements;
+        if (methodsBefore != null || methodsAfter != null) {
+            for (HttpMethod method : HttpMethod.values()) {
+                Box<E> methodBefore = methodsBefore == null ? null : methodsBefore[method.ordinal()];
+                Box<E> methodAfter = methodsAfter == null ? null : methodsAfter[method.ordinal()];
+                if (!sameElement(methodBefore, methodAfter)) {
+                    found.add(change(pair, method, methodBefore, methodAfter));
+                }
+            }
+        }
+    }
+
+    /**
+     * Elements are the same if they are equal, functions only if they are the same instance.
+     */
+    private static boolean sameElement(Box<?> a, Box<?> b) {
+        if (a == b) {
+            return true;
+        }
+        if (a instanceof Box.SimpleBox && b instanceof Box.SimpleBox) {
+            return Objects.equals(((Box.SimpleBox<?>) a).element, ((Box.SimpleBox<?>) b).element);
+        }
+        if (a instanceof Box.FunBox && b instanceof Box.FunBox) {
+            return ((Box.FunBox<?>) a).fun == ((Box.FunBox<?>) b).fun;
+        }
+        return false;
+    }
+
+    private static <E> List<ParameterizedImmutableTrieNode<E>> parameterChildren(ImmutableTrieNode<E> node) {
+        if (node == null) {
+            return new ArrayList<>(0);
+        }
+        ParameterizedImmutableTrieNode<E>[] typed = node.getTyped();
+        List<ParameterizedImmutableTrieNode<E>> result = new ArrayList<>(typed.length + 2);
+        for (ParameterizedImmutableTrieNode<E> child : typed) {
+            result.add(child);
+        }
+        if (node.getParameterized() != null) {
+            result.add(node.getParameterized());
+        }
+        if (node.getCatchAll() != null) {
+            result.add(node.getCatchAll());
+        }
+        return result;
+    }
+
+    /**
+     * @return the parameter among the given ones that appears in the same templates as the given parameter, or null
+     */
+    private static <E> ParameterizedImmutableTrieNode<E> sameParameter(ParameterizedImmutableTrieNode<E> parameter,
+                                                                       List<ParameterizedImmutableTrieNode<E>> others) {
+        boolean catchAll = parameter instanceof CatchAllImmutableTrieNode;
+        for (ParameterizedImmutableTrieNode<E> other : others) {
+            if (other.parameterName.equals(parameter.parameterName) && other.type == parameter.type &&
+                    (other instanceof CatchAllImmutableTrieNode) == catchAll) {
+                return other;
+            }
+        }
+        return null;
+    }
+
+    private RouteChange<E> change(Pair<E> pair, HttpMethod method, Box<E> elementBefore, Box<E> elementAfter) {
+        // parts from the node up to the root, so host labels, which are kept in reverse order, come last
+        List<String> parts = new ArrayList<>();
+        for (Pair<E> p = pair; p.parent != null; p = p.parent) {
+            parts.add(p.before == null
+                    ? after.templatePart(p.key, p.after)
+                    : before.templatePart(p.key, p.before));
+        }
+        int labels = Math.min(pair.hostLabels, parts.size());
+        String host = labels == 0 ? null : String.join(".", parts.subList(parts.size() - labels, parts.size()));
+        String separator = before == null ? after.templateSeparator() : before.templateSeparator();
+        StringBuilder template = new StringBuilder();
+        for (int i = parts.size() - labels - 1; i >= 0; i--) {
+            template.append(parts.get(i));
+            if (i > 0) {
+                template.append(separator);
+            }
+        }
+        return new RouteChange<>(host, template.toString(), method, elementBefore, elementAfter);
+    }
+
+    /**
+     * Nodes found under the same template in both tries, either of which may be null.
+     */
+    private static final class Pair<E> {
+        final Pair<E> parent;
+        // key of the nodes in their parents, only turned into a template part if a change is found under them
+        final String key;
+
+        // number of host labels at the start of the template
+        final int hostLabels;
+
+        final ImmutableTrieNode<E> before;
+        final ImmutableTrieNode<E> after;
+
+        Pair(Pair<E> parent, String key, int hostLabels, ImmutableTrieNode<E> before, ImmutableTrieNode<E> after) {
+            this.parent = parent;
+            this.key = key;
+            this.hostLabels = hostLabels;
+            this.before = before;
+            this.after = after;
+        }
+
+        Pair<E> child(String key, ImmutableTrieNode<E> before, ImmutableTrieNode<E> after) {
+            return new Pair<>(this, key, hostLabels, before, after);
+        }
+    }
+}
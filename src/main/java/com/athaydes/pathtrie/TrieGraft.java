@@ -0,0 +1,355 @@
+package com.athaydes.pathtrie;
+
+import com.athaydes.pathtrie.ImmutablePathTrie.CatchAllImmutableTrieNode;
+import com.athaydes.pathtrie.ImmutablePathTrie.ImmutableTrieNode;
+import com.athaydes.pathtrie.ImmutablePathTrie.ImmutableTrieNodeImpl;
+import com.athaydes.pathtrie.ImmutablePathTrie.ParameterizedImmutableTrieNode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Grafting of the nodes of tries onto other tries, as done by {@link PathTrie#mount(String, PathTrie)} and
+ * {@link PathTrie#merge(PathTrie, PathTrie)}.
+ * <p>
+ * Nodes are immutable, so only the nodes found under the same template in both tries are copied. Any other subtree
+ * is shared by the result with the trie it comes from. The depths at which elements exist and the parameters under
+ * each node are summarized by the node itself, so subtrees found in only one of the tries are not visited, unless a
+ * mounted sub-trie may contain a parameter clashing with those of its prefix.
+ */
+final class TrieGraft {
+
+    private TrieGraft() {
+    }
+
+    static <E> PathTrie<E> merge(PathTrie<E> first, PathTrie<E> second) {
+        if (first instanceof EmptyTrie) {
+            return second;
+        }
+        if (second instanceof EmptyTrie) {
+            return first;
+        }
+        ImmutablePathTrie<E> a = graftable(first);
+        ImmutablePathTrie<E> b = graftable(second);
+        verifyCompatible(a, b);
+        ImmutableTrieNode<E> root = merge(a, a.getRoot(), b.getRoot(), "");
+        ImmutableTrieNode<E>[] hostsA = a.getHostRoots();
+        ImmutableTrieNode<E>[] hostsB = b.getHostRoots();
+        List<ImmutableTrieNode<E>> hostRoots = new ArrayList<>(Math.max(hostsA.length, hostsB.length));
+        for (int i = 0; i < Math.max(hostsA.length, hostsB.length); i++) {
+            hostRoots.add(merge(a, i < hostsA.length ? hostsA[i] : null, i < hostsB.length ? hostsB[i] : null, ""));
+        }
+        Prefilter prefilter = a.getPrefilter() != null || b.getPrefilter() != null
+                ? Prefilter.of(root, a.isIgnoringCase())
+                : null;
+        return new ImmutablePathTrie<>(a.getPathSplitter(), root, hostRoots, prefilter, a.isIgnoringCase(),
+                a.isSorted());
+    }
+
+    static <E> PathTrie<E> mount(PathTrie<E> target, String prefix, PathTrie<E> subTrie) {
+        if (prefix.isEmpty()) {
+            throw new IllegalArgumentException("Cannot mount a trie under an empty prefix, merge the tries instead");
+        }
+        if (subTrie instanceof EmptyTrie) {
+            return target;
+        }
+        ImmutablePathTrie<E> sub = graftable(subTrie);
+        ImmutablePathTrie<E> a = target instanceof EmptyTrie ? null : graftable(target);
+        if (a != null) {
+            verifyCompatible(a, sub);
+        }
+        for (ImmutableTrieNode<E> hostRoot : sub.getHostRoots()) {
+            if (hostRoot != null) {
+                throw new IllegalArgumentException("Cannot mount a trie containing routes with a host");
+            }
+        }
+        PathSplitter splitter = sub.getPathSplitter();
+        List<MutableTrieNode<E>> parts = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        Set<String> parameterNames = new LinkedHashSet<>(4);
+        MutableTrieNode<E> parent = new MutableTrieNode<>();
+        for (String part : splitter.apply(prefix)) {
+            MutableTrieNode<E> node = parent.child(part, splitter);
+            if (node instanceof CatchAllTrieNode) {
+                throw new IllegalArgumentException("Cannot mount a trie under a catch-all parameter: '" + prefix + "'");
+            }
+            if (node instanceof ParameterizedTrieNode &&
+                    !parameterNames.add(((ParameterizedTrieNode<E>) node).parameterName)) {
+                throw new IllegalArgumentException("Parameter name appears more than once on same hierarchy: " +
+                        ((ParameterizedTrieNode<E>) node).parameterName);
+            }
+            parts.add(node);
+            keys.add(sub.isIgnoringCase() ? LiteralChildren.fold(part) : part);
+            parent = node;
+        }
+        if (!parameterNames.isEmpty() && mayClash(sub.getRoot(), parameterNames)) {
+            // the parameters of the prefix come before those of the sub-trie in all of its paths
+            verifyParameters(sub.getRoot(), parameterNames, new ArrayList<>(keys), sub.getPathSplitter());
+        }
+
+        // the chain of nodes of the prefix, from the last part, which takes the place of the root of the sub-trie
+        boolean ignoreCase = sub.isIgnoringCase();
+        boolean sorted = sub.isSorted();
+        ImmutableTrieNode<E> node = sub.getRoot();
+        Contents<E> contents = Contents.of(node);
+        for (int i = parts.size() - 1; i >= 0; i--) {
+            if (parts.get(i) instanceof ParameterizedTrieNode) {
+                ParameterizedTrieNode<E> parameter = (ParameterizedTrieNode<E>) parts.get(i);
+                node = contents.build(parameter.parameterName, parameter.type, false, ignoreCase, sorted);
+            } else if (i < parts.size() - 1) {
+                node = contents.build(null, null, false, ignoreCase, sorted);
+            }
+            contents = new Contents<>();
+            contents.add(keys.get(i), node);
+        }
+        node = contents.build(null, null, false, ignoreCase, sorted);
+
+        if (a == null) {
+            Prefilter prefilter = sub.getPrefilter() == null ? null : Prefilter.of(node, ignoreCase);
+            return new ImmutablePathTrie<>(splitter, node, Collections.emptyList(), prefilter, ignoreCase, sorted);
+        }
+        ImmutableTrieNode<E> root = merge(a, a.getRoot(), node, "");
+        Prefilter prefilter = a.getPrefilter() == null ? null : Prefilter.of(root, ignoreCase);
+        return new ImmutablePathTrie<>(a.getPathSplitter(), root, Arrays.asList(a.getHostRoots()), prefilter,
+                ignoreCase, sorted);
+    }
+
+    /**
+     * Merge the given nodes, found under the same template in both tries.
+     *
+     * @param trie whose path splitter is used to describe paths in errors
+     * @param path the template of the nodes, used in errors
+     */
+    private static <E> ImmutableTrieNode<E> merge(ImmutablePathTrie<E> trie,
+                                                  ImmutableTrieNode<E> a,
+                                                  ImmutableTrieNode<E> b,
+                                                  String path) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null || a == b) {
+            return a;
+        }
+        Contents<E> result = Contents.of(a);
+        result.element = mergedElement(a.element, b.element, path);
+        if (b.methodElements != null) {
+            result.methodElements = a.methodElements == null
+                    ? b.methodElements
+                    : a.methodElements.clone();
+            if (a.methodElements != null) {
+                for (HttpMethod method : HttpMethod.values()) {
+                    result.methodElements[method.ordinal()] = mergedElement(a.methodElements[method.ordinal()],
+                            b.methodElements[method.ordinal()], method + " " + path);
+                }
+            }
+        }
+        b.forEachLiteral((key, child) -> result.literals.merge(key, child,
+                (x, y) -> merge(trie, x, y, childPath(trie, path, key, x))));
+        for (ParameterizedImmutableTrieNode<E> child : b.getTyped()) {
+            int index = indexOfType(result.typed, child.type);
+            if (index < 0) {
+                result.typed.add(child);
+            } else {
+                ParameterizedImmutableTrieNode<E> existing = result.typed.get(index);
+                result.typed.set(index, (ParameterizedImmutableTrieNode<E>) mergeParameter(trie, existing, child, path));
+            }
+        }
+        result.parameterized = (ParameterizedImmutableTrieNode<E>) mergeParameter(trie,
+                a.getParameterized(), b.getParameterized(), path);
+        result.catchAll = (CatchAllImmutableTrieNode<E>) mergeParameter(trie, a.getCatchAll(), b.getCatchAll(), path);
+        return result.buildLike(a, trie.isIgnoringCase(), trie.isSorted());
+    }
+
+    private static <E> ImmutableTrieNode<E> mergeParameter(ImmutablePathTrie<E> trie,
+                                                           ParameterizedImmutableTrieNode<E> a,
+                                                           ParameterizedImmutableTrieNode<E> b,
+                                                           String path) {
+        if (a != null && b != null && !a.parameterName.equals(b.parameterName)) {
+            throw new IllegalArgumentException("Parameters with different names clash at the same level: '" +
+                    b.parameterName + "' " + "and '" + a.parameterName + "'");
+        }
+        return merge(trie, a, b, a == null ? path : childPath(trie, path, a.parameterName, a));
+    }
+
+    private static <E> int indexOfType(List<ParameterizedImmutableTrieNode<E>> typed, ParameterType type) {
+        for (int i = 0; i < typed.size(); i++) {
+            if (typed.get(i).type == type) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String childPath(ImmutablePathTrie<?> trie, String path, String key, ImmutableTrieNode<?> child) {
+        String part = trie.templatePart(key, child);
+        return path.isEmpty() ? part : path + trie.templateSeparator() + part;
+    }
+
+    private static <E> Box<E> mergedElement(Box<E> a, Box<E> b, String path) {
+        if (a != null && b != null && a != b) {
+            throw new IllegalArgumentException("Paths clash when merging tries: '" + path + "'");
+        }
+        return a == null ? b : a;
+    }
+
+    /**
+     * @return whether mounting the given node under a prefix with the given parameters may be invalid, either because
+     * a function element under it would get more arguments than it expects, or because it may have a parameter with
+     * the same name as one of the prefix, as known by the summary of its subtree kept by the node
+     */
+    private static boolean mayClash(ImmutableTrieNode<?> node, Set<String> parameterNames) {
+        if (node.hasFunElements) {
+            return true;
+        }
+        for (String parameterName : parameterNames) {
+            if ((node.parameterNameBits & ImmutableTrieNode.parameterNameBit(parameterName)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Verify the parameters of the paths of the given node, given the names of the parameters on the way to it.
+     */
+    private static void verifyParameters(ImmutableTrieNode<?> node,
+                                         Set<String> parameterNames,
+                                         List<String> pathParts,
+                                         PathSplitter splitter) {
+        PathTrieBuilder.verifyParameterCount(parameterNames, pathParts, node.element);
+        if (node.methodElements != null) {
+            for (Box<?> methodElement : node.methodElements) {
+                PathTrieBuilder.verifyParameterCount(parameterNames, pathParts, methodElement);
+            }
+        }
+        node.forEach((key, child) -> {
+            Set<String> namesInBranch = parameterNames;
+            String part = key;
+            if (child instanceof ParameterizedImmutableTrieNode) {
+                namesInBranch = new LinkedHashSet<>(parameterNames);
+                if (!namesInBranch.add(key)) {
+                    throw new IllegalArgumentException("Parameter name appears more than once on same hierarchy: " +
+                            key);
+                }
+                part = (child instanceof CatchAllImmutableTrieNode
+                        ? splitter.catchAllParameterPrefix()
+                        : splitter.parameterizedParameterPrefix()) + key;
+            }
+            List<String> partsInBranch = new ArrayList<>(pathParts.size() + 1);
+            partsInBranch.addAll(pathParts);
+            partsInBranch.add(part);
+            verifyParameters(child, namesInBranch, partsInBranch, splitter);
+        });
+    }
+
+    /**
+     * @return the trie the given one is based on
+     */
+    private static <E> ImmutablePathTrie<E> graftable(PathTrie<E> trie) {
+        ImmutablePathTrie<E> result = ImmutablePathTrie.unwrap(trie);
+        if (result == null) {
+            throw new IllegalArgumentException("Only tries created by a PathTrieBuilder can be merged: " +
+                    trie.getClass().getName());
+        }
+        return result;
+    }
+
+    private static void verifyCompatible(ImmutablePathTrie<?> a, ImmutablePathTrie<?> b) {
+        PathSplitter splitterA = a.getPathSplitter();
+        PathSplitter splitterB = b.getPathSplitter();
+        boolean sameSplitter = splitterA == splitterB ||
+                splitterA instanceof SeparatorPathSplitter && splitterB instanceof SeparatorPathSplitter &&
+                        a.templateSeparator().equals(b.templateSeparator()) &&
+                        splitterA.parameterizedParameterPrefix().equals(splitterB.parameterizedParameterPrefix()) &&
+                        Objects.equals(splitterA.catchAllParameterPrefix(), splitterB.catchAllParameterPrefix());
+        if (!sameSplitter) {
+            throw new IllegalArgumentException("Cannot merge tries using different path splitters");
+        }
+        if (a.isIgnoringCase() != b.isIgnoringCase()) {
+            throw new IllegalArgumentException("Cannot merge a trie ignoring case with a trie which does not");
+        }
+        if (a.isSorted() != b.isSorted()) {
+            throw new IllegalArgumentException("Cannot merge a sorted trie with a trie which is not");
+        }
+    }
+
+    /**
+     * The direct contents of a node, from which a new node is built.
+     */
+    private static final class Contents<E> {
+        Box<E> element;
+        Box<E>[] methodElements;
+        final Map<String, ImmutableTrieNode<E>> literals = new LinkedHashMap<>(4);
+        final List<ParameterizedImmutableTrieNode<E>> typed = new ArrayList<>(2);
+        ParameterizedImmutableTrieNode<E> parameterized;
+        CatchAllImmutableTrieNode<E> catchAll;
+
+        static <E> Contents<E> of(ImmutableTrieNode<E> node) {
+            Contents<E> contents = new Contents<>();
+            contents.element = node.element;
+            contents.methodElements = node.methodElements;
+            node.forEachLiteral(contents.literals::put);
+            contents.typed.addAll(Arrays.asList(node.getTyped()));
+            contents.parameterized = node.getParameterized();
+            contents.catchAll = node.getCatchAll();
+            return contents;
+        }
+
+        /**
+         * Add a child under the given key, or as a parameterized child if the child is a parameter.
+         */
+        void add(String key, ImmutableTrieNode<E> child) {
+            if (child instanceof CatchAllImmutableTrieNode) {
+                catchAll = (CatchAllImmutableTrieNode<E>) child;
+            } else if (child instanceof ParameterizedImmutableTrieNode) {
+                ParameterizedImmutableTrieNode<E> parameter = (ParameterizedImmutableTrieNode<E>) child;
+                if (parameter.type == null) {
+                    parameterized = parameter;
+                } else {
+                    typed.add(parameter);
+                }
+            } else {
+                literals.put(key, child);
+            }
+        }
+
+        ImmutableTrieNode<E> buildLike(ImmutableTrieNode<E> node, boolean ignoreCase, boolean sorted) {
+            if (node instanceof ParameterizedImmutableTrieNode) {
+                ParameterizedImmutableTrieNode<E> parameter = (ParameterizedImmutableTrieNode<E>) node;
+                return build(parameter.parameterName, parameter.type, node instanceof CatchAllImmutableTrieNode,
+                        ignoreCase, sorted);
+            }
+            return build(null, null, false, ignoreCase, sorted);
+        }
+
+        /**
+         * @param parameterName name of the parameter of the node, or null if the node is not a parameter
+         * @param sorted        whether to sort the children, as a {@link PathTrieBuilder#sorted() sorted} builder does
+         */
+        ImmutableTrieNode<E> build(String parameterName, ParameterType type, boolean catchAllNode,
+                                   boolean ignoreCase, boolean sorted) {
+            if (catchAllNode) {
+                return new CatchAllImmutableTrieNode<>(element, methodElements, parameterName);
+            }
+            LiteralChildren<ImmutableTrieNode<E>> children;
+            if (sorted) {
+                children = LiteralChildren.sorted(literals, ignoreCase);
+                typed.sort(Comparator.comparing(child -> child.type));
+            } else {
+                children = LiteralChildren.of(literals, 0, ignoreCase);
+            }
+            if (parameterName != null) {
+                return new ParameterizedImmutableTrieNode<>(element, methodElements, children, typed,
+                        parameterized, catchAll, parameterName, type);
+            }
+            return new ImmutableTrieNodeImpl<>(element, methodElements, children, typed, parameterized, catchAll);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.athaydes.pathtrie;
+
+import com.athaydes.pathtrie.ImmutablePathTrie.ImmutableTrieNode;
+import com.athaydes.pathtrie.ImmutablePathTrie.ParameterizedImmutableTrieNode;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Navigation in order of the routes of a {@link PathTrieBuilder#sorted() sorted} trie, as done by
+ * {@link PathTrie#entries()}, {@link PathTrie#range(String, String)}, {@link PathTrie#rank(String)} and
+ * {@link PathTrie#select(long)}.
+ * <p>
+ * Each node knows the number of routes under it, and the nodes of a sorted trie also know the number of routes under
+ * their literal children before each of them, so the position of a path and the route at a position are found by
+ * binary searches along a single branch of the trie.
+ */
+final class TrieNavigator<E> implements Iterator<PathTrieEntry<E>> {
+
+    private final ImmutablePathTrie<E> trie;
+    private final String separator;
+
+    // nodes on the way to the next route, the deepest one on top
+    private final Deque<Frame<E>> frames = new ArrayDeque<>();
+
+    // number of routes still to be returned
+    private long remaining;
+
+    private TrieNavigator(ImmutablePathTrie<E> trie, long start, long count) {
+        this.trie = trie;
+        this.separator = trie.templateSeparator();
+        this.remaining = count;
+        ImmutableTrieNode<E> root = trie.getRoot();
+        // routes of the root have no template, so they are not navigated, as they are not by other queries
+        frames.push(new Frame<>(null, null, root, root.elementCount()));
+        if (count > 0) {
+            seek(start);
+        }
+    }
+
+    static long size(PathTrie<?> trie) {
+        if (trie instanceof EmptyTrie) {
+            return 0L;
+        }
+        ImmutableTrieNode<?> root = navigable(trie, false).getRoot();
+        return root.size - root.elementCount();
+    }
+
+    static <E> Stream<PathTrieEntry<E>> entries(PathTrie<E> trie) {
+        return range(trie, null, null);
+    }
+
+    /**
+     * @param fromPath path of the first route, or null to start at the first route
+     * @param toPath   path of the route after the last route, or null to end at the last route
+     */
+    static <E> Stream<PathTrieEntry<E>> range(PathTrie<E> trie, String fromPath, String toPath) {
+        if (trie instanceof EmptyTrie) {
+            return Stream.empty();
+        }
+        ImmutablePathTrie<E> sortedTrie = navigable(trie, true);
+        long start = fromPath == null ? 0L : rank(sortedTrie, fromPath);
+        long end = toPath == null ? size(sortedTrie) : rank(sortedTrie, toPath);
+        return stream(new TrieNavigator<>(sortedTrie, start, Math.max(0L, end - start)));
+    }
+
+    static long rank(PathTrie<?> trie, String path) {
+        if (trie instanceof EmptyTrie) {
+            return 0L;
+        }
+        return rank(navigable(trie, true), path);
+    }
+
+    static <E> PathTrieEntry<E> select(PathTrie<E> trie, long index) {
+        long size = size(trie);
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return new TrieNavigator<>(navigable(trie, true), index, 1L).next();
+    }
+
+    /**
+     * @return the trie the given one is based on
+     */
+    private static <E> ImmutablePathTrie<E> navigable(PathTrie<E> trie, boolean requireSorted) {
+        ImmutablePathTrie<E> result = ImmutablePathTrie.unwrap(trie);
+        if (result == null) {
+            throw new IllegalArgumentException("Only tries created by a PathTrieBuilder can be navigated: " +
+                    trie.getClass().getName());
+        }
+        if (requireSorted && !result.isSorted()) {
+            throw new IllegalStateException("Only sorted tries can be navigated in order, " +
+                    "see PathTrieBuilder#sorted()");
+        }
+        return result;
+    }
+
+    private static <E> Stream<PathTrieEntry<E>> stream(TrieNavigator<E> navigator) {
+        return StreamSupport.stream(Spliterators.spliterator(navigator, navigator.remaining,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * @return the number of routes ordered before the given path, whose parts are all taken as literal parts
+     */
+    private static long rank(ImmutablePathTrie<?> trie, String path) {
+        ImmutableTrieNode<?> node = trie.getRoot();
+        long result = 0L;
+        for (String part : trie.getPathSplitter().apply(path)) {
+            if (node != trie.getRoot()) {
+                // routes of a node come before the routes under it
+                result += node.elementCount();
+            }
+            LiteralChildren<? extends ImmutableTrieNode<?>> literals = node.getLiterals();
+            int index = literals.search(trie.isIgnoringCase() ? LiteralChildren.fold(part) : part);
+            if (index < 0) {
+                // parameters come after literals, so only the literal children before the part are counted
+                return result + node.literalSizeBefore(-index - 1);
+            }
+            result += node.literalSizeBefore(index);
+            node = literals.child(index);
+        }
+        return result;
+    }
+
+    /**
+     * Move to the route at the given position, which must exist.
+     */
+    private void seek(long index) {
+        Frame<E> frame = frames.peek();
+        while (true) {
+            int count = frame.node.elementCount();
+            if (index < count - frame.entry) {
+                frame.entry += (int) index;
+                return;
+            }
+            index -= count - frame.entry;
+            frame.entry = count;
+            ImmutableTrieNode<E> node = frame.node;
+            int literalCount = node.getLiterals().size();
+            int child;
+            if (index < node.literalSizeBefore(literalCount)) {
+                // the last literal child with fewer routes before it than the index
+                int low = 0;
+                int high = literalCount - 1;
+                while (low < high) {
+                    int middle = (low + high + 1) >>> 1;
+                    if (node.literalSizeBefore(middle) <= index) {
+                        low = middle;
+                    } else {
+                        high = middle - 1;
+                    }
+                }
+                child = low;
+                index -= node.literalSizeBefore(child);
+            } else {
+                // there are at most a few parameter children
+                index -= node.literalSizeBefore(literalCount);
+                child = literalCount;
+                while (index >= childAt(node, child).size) {
+                    index -= childAt(node, child).size;
+                    child++;
+                }
+            }
+            frame.child = child + 1;
+            frame = childFrame(frame, child);
+            frames.push(frame);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return remaining > 0;
+    }
+
+    @Override
+    public PathTrieEntry<E> next() {
+        if (remaining <= 0) {
+            throw new NoSuchElementException();
+        }
+        while (true) {
+            Frame<E> frame = frames.peek();
+            if (frame.entry < frame.node.elementCount()) {
+                remaining--;
+                return entry(frame, frame.entry++);
+            }
+            if (frame.child < childCount(frame.node)) {
+                frames.push(childFrame(frame, frame.child++));
+            } else {
+                frames.pop();
+            }
+        }
+    }
+
+    private PathTrieEntry<E> entry(Frame<E> frame, int index) {
+        ImmutableTrieNode<E> node = frame.node;
+        if (node.element != null) {
+            if (index == 0) {
+                return new PathTrieEntry<>(template(frame), null, node.element);
+            }
+            index--;
+        }
+        for (HttpMethod method : HttpMethod.values()) {
+            Box<E> element = node.methodElements[method.ordinal()];
+            if (element != null && index-- == 0) {
+                return new PathTrieEntry<>(template(frame), method, element);
+            }
+        }
+        throw new NoSuchElementException();
+    }
+
+    private String template(Frame<E> frame) {
+        if (frame.template == null) {
+            String part = trie.templatePart(frame.key, frame.node);
+            frame.template = frame.parent.parent == null ? part : template(frame.parent) + separator + part;
+        }
+        return frame.template;
+    }
+
+    private static int childCount(ImmutableTrieNode<?> node) {
+        return node.getLiterals().size() + node.getTyped().length +
+                (node.getParameterized() == null ? 0 : 1) +
+                (node.getCatchAll() == null ? 0 : 1);
+    }
+
+    /**
+     * @return the child at the given index, counting literal children in order, then typed, untyped and catch-all
+     * parameters
+     */
+    private static <E> ImmutableTrieNode<E> childAt(ImmutableTrieNode<E> node, int index) {
+        LiteralChildren<ImmutableTrieNode<E>> literals = node.getLiterals();
+        if (index < literals.size()) {
+            return literals.child(index);
+        }
+        index -= literals.size();
+        ParameterizedImmutableTrieNode<E>[] typed = node.getTyped();
+        if (index < typed.length) {
+            return typed[index];
+        }
+        if (node.getParameterized() != null && index == typed.length) {
+            return node.getParameterized();
+        }
+        return node.getCatchAll();
+    }
+
+    private static <E> Frame<E> childFrame(Frame<E> parent, int index) {
+        ImmutableTrieNode<E> child = childAt(parent.node, index);
+        String key = index < parent.node.getLiterals().size()
+                ? parent.node.getLiterals().keys[index]
+                : ((ParameterizedImmutableTrieNode<E>) child).parameterName;
+        return new Frame<>(parent, key, child, 0);
+    }
+
+    /**
+     * A node on the way to the next route, with the position of the next route of the node and of the next child
+     * to visit.
+     */
+    private static final class Frame<E> {
+        final Frame<E> parent;
+        final String key;
+        final ImmutableTrieNode<E> node;
+        int entry;
+        int child;
+
+        // template of the node, computed once one of its routes is returned
+        String template;
+
+        Frame(Frame<E> parent, String key, ImmutableTrieNode<E> node, int entry) {
+            this.parent = parent;
+            this.key = key;
+            this.node = node;
+            this.entry = entry;
+        }
+    }
+}
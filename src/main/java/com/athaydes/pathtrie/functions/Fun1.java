@@ -1,7 +1,6 @@
 package com.athaydes.pathtrie.functions;
 
 import com.athaydes.pathtrie.ParameterizedElement;
-import java.util.Iterator;
 
 @FunctionalInterface
 public interface Fun1<T> extends Fun<T> {
@@ -15,9 +14,7 @@ public interface Fun1<T> extends Fun<T> {
 
     @Override
     default T applyParam(ParameterizedElement<T> parameterizedElement) {
-        Iterator<String> paramNames = parameterizedElement.getParameterNames().iterator();
-        String name1 = paramNames.next();
-        return apply(parameterizedElement.param(name1));
+        return apply(parameterizedElement.param(0));
     }
 
 }
\ No newline at end of file
@@ -1,7 +1,6 @@
 package com.athaydes.pathtrie.functions;
 
 import com.athaydes.pathtrie.ParameterizedElement;
-import java.util.Iterator;
 
 @FunctionalInterface
 public interface Fun2<T> extends Fun<T> {
@@ -15,9 +14,6 @@ public interface Fun2<T> extends Fun<T> {
 
     @Override
     default T applyParam(ParameterizedElement<T> parameterizedElement) {
-        Iterator<String> paramNames = parameterizedElement.getParameterNames().iterator();
-        String name1 = paramNames.next();
-        String name2 = paramNames.next();
-        return apply(parameterizedElement.param(name1), parameterizedElement.param(name2));
+        return apply(parameterizedElement.param(0), parameterizedElement.param(1));
     }
 }
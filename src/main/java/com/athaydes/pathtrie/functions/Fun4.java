@@ -1,7 +1,6 @@
 package com.athaydes.pathtrie.functions;
 
 import com.athaydes.pathtrie.ParameterizedElement;
-import java.util.Iterator;
 
 public interface Fun4<T> extends Fun<T> {
 
@@ -14,14 +13,9 @@ public interface Fun4<T> extends Fun<T> {
 
     @Override
     default T applyParam(ParameterizedElement<T> parameterizedElement) {
-        Iterator<String> paramNames = parameterizedElement.getParameterNames().iterator();
-        String name1 = paramNames.next();
-        String name2 = paramNames.next();
-        String name3 = paramNames.next();
-        String name4 = paramNames.next();
-        return apply(parameterizedElement.param(name1),
-                parameterizedElement.param(name2),
-                parameterizedElement.param(name3),
-                parameterizedElement.param(name4));
+        return apply(parameterizedElement.param(0),
+                parameterizedElement.param(1),
+                parameterizedElement.param(2),
+                parameterizedElement.param(3));
     }
 }
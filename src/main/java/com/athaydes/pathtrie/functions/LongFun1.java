@@ -0,0 +1,20 @@
+package com.athaydes.pathtrie.functions;
+
+import com.athaydes.pathtrie.ParameterizedElement;
+
+@FunctionalInterface
+public interface LongFun1<T> extends Fun<T> {
+
+    T apply(long parameter);
+
+    @Override
+    default int parameterCount() {
+        return 1;
+    }
+
+    @Override
+    default T applyParam(ParameterizedElement<T> parameterizedElement) {
+        return apply(parameterizedElement.paramLong(0));
+    }
+
+}
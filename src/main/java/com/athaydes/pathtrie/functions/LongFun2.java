@@ -0,0 +1,20 @@
+package com.athaydes.pathtrie.functions;
+
+import com.athaydes.pathtrie.ParameterizedElement;
+
+@FunctionalInterface
+public interface LongFun2<T> extends Fun<T> {
+
+    T apply(long param1, long param2);
+
+    @Override
+    default int parameterCount() {
+        return 2;
+    }
+
+    @Override
+    default T applyParam(ParameterizedElement<T> parameterizedElement) {
+        return apply(parameterizedElement.paramLong(0), parameterizedElement.paramLong(1));
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.athaydes.pathtrie.functions;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Bounded concurrent cache with CLOCK (second chance) eviction.
+ * <p>
+ * Hits only read the map and set the referenced bit of the entry. Misses compute the value in the calling Thread
+ * and only cache it if no other Thread is caching a value at the same time, so that no Thread ever waits for
+ * another.
+ */
+final class MemoCache<T> {
+
+    private final Map<Object, Entry<T>> map;
+    private final ReentrantLock insertLock = new ReentrantLock();
+
+    // entries in insertion slots, visited by the clock hand looking for an entry to evict
+    private final Entry<T>[] ring;
+    private int hand;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    MemoCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be at least 1: " + maxSize);
+        }
+        this.map = new ConcurrentHashMap<>(Math.min(maxSize, 1024) * 2);
+        this.ring = newEntries(maxSize);
+    }
+
+    T get(Object key, Supplier<T> compute) {
+        Entry<T> entry = map.get(key);
+        if (entry != null) {
+            if (!entry.referenced) {
+                entry.referenced = true;
+            }
+            hits.increment();
+            return entry.value;
+        }
+        misses.increment();
+        T value = compute.get();
+        if (insertLock.tryLock()) {
+            try {
+                insert(new Entry<>(key, value));
+            } finally {
+                insertLock.unlock();
+            }
+        }
+        return value;
+    }
+
+    private void insert(Entry<T> entry) {
+        if (map.putIfAbsent(entry.key, entry) != null) {
+            return;
+        }
+        // the hand clears the referenced bit of the entries it passes, so it stops within two turns
+        Entry<T> current;
+        while ((current = ring[hand]) != null) {
+            if (current.referenced) {
+                current.referenced = false;
+                hand = (hand + 1) % ring.length;
+            } else {
+                map.remove(current.key, current);
+                evictions.increment();
+                break;
+            }
+        }
+        ring[hand] = entry;
+        hand = (hand + 1) % ring.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Entry<T>[] newEntries(int size) {
+        return (Entry<T>[]) new Entry<?>[size];
+    }
+
+    Memoized.Stats stats() {
+        return new Memoized.Stats(hits.sum(), misses.sum(), evictions.sum(), map.size());
+    }
+
+    private static final class Entry<T> {
+        final Object key;
+        final T value;
+        volatile boolean referenced;
+
+        Entry(Object key, T value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
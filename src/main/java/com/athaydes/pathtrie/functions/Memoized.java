@@ -0,0 +1,308 @@
+package com.athaydes.pathtrie.functions;
+
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Functions whose results are cached, so that expensive functions put in a {@link com.athaydes.pathtrie.PathTrie}
+ * are only called again for parameter values they have not seen recently.
+ * <p>
+ * A {@link Fun0} is called once and its result kept forever. Functions taking parameters keep their results in a
+ * bounded cache keyed by the parameter values: when the cache is full, an entry which has not been used since the
+ * eviction policy last looked at it is evicted, approximating least-recently-used eviction.
+ * <p>
+ * Looking up a cached result never blocks. A function may be called more than once for the same parameters when
+ * several Threads call it concurrently before its first result is cached, or when a result cannot be cached at once
+ * because another result is being cached at the same time.
+ * <p>
+ * Memoization is opted into by wrapping a function, rather than by an option of the route it is put under: a wrapper
+ * can be shared by several routes and tries, its statistics are available to whoever created it, and functions which
+ * are not memoized are still called directly, without checking any cache.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * Memoized.Memoized1<Page> render = Memoized.of(name -> renderPage(name), 1000);
+ * PathTrie<Page> trie = PathTrie.<Page>newBuilder()
+ *         .putFun("pages/:name", render)
+ *         .build();
+ * }</pre>
+ *
+ * @param <T> type of result
+ */
+public abstract class Memoized<T> implements Fun<T> {
+
+    private Memoized() {
+        // only the nested classes can extend this class
+    }
+
+    /**
+     * @param fun function to call only once
+     * @param <T> type of result
+     * @return memoized function
+     */
+    public static <T> Memoized0<T> of(Fun0<T> fun) {
+        return new Memoized0<>(fun);
+    }
+
+    /**
+     * @param fun     function to memoize
+     * @param maxSize maximum number of results to cache
+     * @param <T>     type of result
+     * @return memoized function
+     */
+    public static <T> Memoized1<T> of(Fun1<T> fun, int maxSize) {
+        return new Memoized1<>(fun, maxSize);
+    }
+
+    /**
+     * @param fun     function to memoize
+     * @param maxSize maximum number of results to cache
+     * @param <T>     type of result
+     * @return memoized function
+     */
+    public static <T> Memoized2<T> of(Fun2<T> fun, int maxSize) {
+        return new Memoized2<>(fun, maxSize);
+    }
+
+    /**
+     * @param fun     function to memoize
+     * @param maxSize maximum number of results to cache
+     * @param <T>     type of result
+     * @return memoized function
+     */
+    public static <T> Memoized3<T> of(Fun3<T> fun, int maxSize) {
+        return new Memoized3<>(fun, maxSize);
+    }
+
+    /**
+     * @param fun     function to memoize
+     * @param maxSize maximum number of results to cache
+     * @param <T>     type of result
+     * @return memoized function
+     */
+    public static <T> Memoized4<T> of(Fun4<T> fun, int maxSize) {
+        return new Memoized4<>(fun, maxSize);
+    }
+
+    /**
+     * @return statistics of the cached results of this function
+     */
+    public abstract Stats stats();
+
+    public static final class Memoized0<T> extends Memoized<T> implements Fun0<T> {
+        private final Fun0<T> fun;
+        private volatile boolean computed;
+        private T result;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
+        private Memoized0(Fun0<T> fun) {
+            this.fun = fun;
+        }
+
+        @Override
+        public T apply() {
+            if (computed) {
+                hits.increment();
+                return result;
+            }
+            misses.increment();
+            T value = fun.apply();
+            // the volatile write publishes the result
+            result = value;
+            computed = true;
+            return value;
+        }
+
+        @Override
+        public Stats stats() {
+            return new Stats(hits.sum(), misses.sum(), 0, computed ? 1 : 0);
+        }
+    }
+
+    public static final class Memoized1<T> extends Memoized<T> implements Fun1<T> {
+        private final Fun1<T> fun;
+        private final MemoCache<T> cache;
+
+        private Memoized1(Fun1<T> fun, int maxSize) {
+            this.fun = fun;
+            this.cache = new MemoCache<>(maxSize);
+        }
+
+        @Override
+        public T apply(String param) {
+            return cache.get(param, () -> fun.apply(param));
+        }
+
+        @Override
+        public Stats stats() {
+            return cache.stats();
+        }
+    }
+
+    public static final class Memoized2<T> extends Memoized<T> implements Fun2<T> {
+        private final Fun2<T> fun;
+        private final MemoCache<T> cache;
+
+        private Memoized2(Fun2<T> fun, int maxSize) {
+            this.fun = fun;
+            this.cache = new MemoCache<>(maxSize);
+        }
+
+        @Override
+        public T apply(String param1, String param2) {
+            return cache.get(new Key(param1, param2, null, null), () -> fun.apply(param1, param2));
+        }
+
+        @Override
+        public Stats stats() {
+            return cache.stats();
+        }
+    }
+
+    public static final class Memoized3<T> extends Memoized<T> implements Fun3<T> {
+        private final Fun3<T> fun;
+        private final MemoCache<T> cache;
+
+        private Memoized3(Fun3<T> fun, int maxSize) {
+            this.fun = fun;
+            this.cache = new MemoCache<>(maxSize);
+        }
+
+        @Override
+        public T apply(String param1, String param2, String param3) {
+            return cache.get(new Key(param1, param2, param3, null), () -> fun.apply(param1, param2, param3));
+        }
+
+        @Override
+        public Stats stats() {
+            return cache.stats();
+        }
+    }
+
+    public static final class Memoized4<T> extends Memoized<T> implements Fun4<T> {
+        private final Fun4<T> fun;
+        private final MemoCache<T> cache;
+
+        private Memoized4(Fun4<T> fun, int maxSize) {
+            this.fun = fun;
+            this.cache = new MemoCache<>(maxSize);
+        }
+
+        @Override
+        public T apply(String param1, String param2, String param3, String param4) {
+            return cache.get(new Key(param1, param2, param3, param4),
+                    () -> fun.apply(param1, param2, param3, param4));
+        }
+
+        @Override
+        public Stats stats() {
+            return cache.stats();
+        }
+    }
+
+    /**
+     * Parameter values of a call, as the key of its cached result.
+     * <p>
+     * Each cache only has keys with the same number of parameters, the missing ones being null.
+     */
+    private static final class Key {
+        private final String param1;
+        private final String param2;
+        private final String param3;
+        private final String param4;
+
+        // keys are hashed on every lookup, and compared only when hashes are equal
+        private final int hash;
+
+        Key(String param1, String param2, String param3, String param4) {
+            this.param1 = param1;
+            this.param2 = param2;
+            this.param3 = param3;
+            this.param4 = param4;
+            this.hash = ((Objects.hashCode(param1) * 31 + Objects.hashCode(param2)) * 31 +
+                    Objects.hashCode(param3)) * 31 + Objects.hashCode(param4);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return hash == key.hash &&
+                    Objects.equals(param1, key.param1) &&
+                    Objects.equals(param2, key.param2) &&
+                    Objects.equals(param3, key.param3) &&
+                    Objects.equals(param4, key.param4);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Snapshot of the statistics of a memoized function.
+     */
+    public static final class Stats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long size;
+
+        Stats(long hitCount, long missCount, long evictionCount, long size) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.size = size;
+        }
+
+        /**
+         * @return number of calls that returned a cached result
+         */
+        public long hitCount() {
+            return hitCount;
+        }
+
+        /**
+         * @return number of calls that had to call the memoized function
+         */
+        public long missCount() {
+            return missCount;
+        }
+
+        /**
+         * @return number of results evicted from the cache
+         */
+        public long evictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * @return number of results currently cached
+         */
+        public long size() {
+            return size;
+        }
+
+        /**
+         * @return ratio of calls that returned a cached result, or 0 if there were no calls
+         */
+        public double hitRate() {
+            long total = hitCount + missCount;
+            return total == 0 ? 0.0 : (double) hitCount / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "Stats{hits=%d, misses=%d, evictions=%d, size=%d, hitRate=%.2f}",
+                    hitCount, missCount, evictionCount, size, hitRate());
+        }
+    }
+}
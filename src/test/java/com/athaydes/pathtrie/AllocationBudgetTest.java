@@ -0,0 +1,177 @@
+package com.athaydes.pathtrie;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Bytes allocated per operation must stay within a budget, so that allocation regressions fail the build.
+ * <p>
+ * Each operation is warmed up, so that the JIT compiler can remove allocations that do not escape, then run in
+ * rounds over the example paths of the {@link PerformanceTest} tries, and the round allocating the least is compared
+ * with the budget. Operations which re-use their state, as cursors do, must allocate nothing at all.
+ * <p>
+ * Other budgets are the most bytes measured on Java 8, 11, 17 and 21 for the object layout of the running JVM, as
+ * references and headers are larger without compressed object pointers, plus a margin of 10% for other JVM versions.
+ */
+public class AllocationBudgetTest {
+
+    private static final int WARMUP_RUNS = 50_000;
+    private static final int RUNS = 10_000;
+    private static final int ROUNDS = 5;
+
+    // bytes per lookup, with compressed object pointers and without
+    private static final long[] GET_MEASURED = {409, 542};
+    private static final long[] GET_PARAMETERIZED_MEASURED = {385, 510};
+    private static final long[] GET_CHILD_MEASURED = {337, 448};
+
+    // bytes per route put in the builder, with compressed object pointers and without
+    private static final long[] BUILD_MEASURED_PER_ROUTE = {2_198, 3_182};
+
+    private final PerformanceTestData[] tries = {
+            PerformanceTest.NO_PARAMETERS, PerformanceTest.PARAMETERIZED, PerformanceTest.BACKTRACKING
+    };
+
+    private com.sun.management.ThreadMXBean threadBean;
+    private boolean compressedOops;
+
+    // results of operations, kept so that the operations cannot be removed by the JIT compiler
+    private long sink;
+
+    @Before
+    public void setup() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue("JVM counts allocated bytes per Thread",
+                bean instanceof com.sun.management.ThreadMXBean &&
+                        ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported());
+        threadBean = (com.sun.management.ThreadMXBean) bean;
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        HotSpotDiagnosticMXBean diagnosticBean = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+        Assume.assumeTrue("JVM tells whether object pointers are compressed", diagnosticBean != null);
+        compressedOops = Boolean.parseBoolean(diagnosticBean.getVMOption("UseCompressedOops").getValue());
+    }
+
+    /**
+     * @param measured bytes measured with compressed object pointers and without
+     * @return the budget for the object layout of this JVM
+     */
+    private long budget(long[] measured) {
+        long bytes = measured[compressedOops ? 0 : 1];
+        return bytes + bytes / 10;
+    }
+
+    @Test
+    public void getStaysWithinBudget() {
+        for (PerformanceTestData data : tries) {
+            assertWithinBudget("get", budget(GET_MEASURED), data, path -> data.trie.get(path));
+        }
+    }
+
+    @Test
+    public void getParameterizedStaysWithinBudget() {
+        for (PerformanceTestData data : tries) {
+            assertWithinBudget("getParameterized", budget(GET_PARAMETERIZED_MEASURED), data,
+                    path -> data.trie.getParameterized(path));
+        }
+    }
+
+    @Test
+    public void getChildStaysWithinBudget() {
+        for (PerformanceTestData data : tries) {
+            assertWithinBudget("getChild", budget(GET_CHILD_MEASURED), data, path -> data.trie.getChild(path));
+        }
+    }
+
+    @Test
+    public void buildStaysWithinBudget() {
+        int routes = 1_000;
+        Runnable build = () -> {
+            PathTrieBuilder<Integer> builder = PathTrie.newBuilder();
+            for (int i = 0; i < routes; i++) {
+                builder.put("service" + (i % 10) + "/resource" + (i % 100) + "/:id/item" + i, i);
+            }
+            sink += builder.build().hashCode();
+        };
+        for (int i = 0; i < 20; i++) {
+            build.run();
+        }
+        long bytes = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = allocatedBytes();
+            build.run();
+            bytes = Math.min(bytes, allocatedBytes() - start);
+        }
+        long perRoute = bytes / routes;
+        long budget = budget(BUILD_MEASURED_PER_ROUTE);
+        assertTrue("build allocated " + perRoute + " bytes per route, budget is " + budget, perRoute <= budget);
+    }
+
+    @Test
+    public void reusedCursorsAllocateNothing() {
+        for (PerformanceTestData data : tries) {
+            PathCursor<?> cursor = PathCursor.of(data.trie);
+            String[][] paths = new String[data.examples.size()][];
+            for (int i = 0; i < paths.length; i++) {
+                paths[i] = data.examples.get(i).path.split("/");
+            }
+            Runnable descend = () -> {
+                for (String[] parts : paths) {
+                    cursor.reset();
+                    for (String part : parts) {
+                        if (!cursor.descend(part)) {
+                            break;
+                        }
+                    }
+                    sink += cursor.hasElement() ? cursor.depth() : 0;
+                    cursor.backtrack();
+                }
+            };
+            for (int i = 0; i < WARMUP_RUNS / paths.length; i++) {
+                descend.run();
+            }
+            long bytes = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS && bytes > 0; round++) {
+                long start = allocatedBytes();
+                for (int i = 0; i < RUNS / paths.length; i++) {
+                    descend.run();
+                }
+                bytes = Math.min(bytes, allocatedBytes() - start);
+            }
+            assertEquals("Cursor allocated on the trie of '" + data.examples.get(0).path + "'", 0L, bytes);
+        }
+    }
+
+    private void assertWithinBudget(String operation,
+                                    long budget,
+                                    PerformanceTestData data,
+                                    Function<String, Optional<?>> lookup) {
+        List<Example> examples = data.examples;
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            sink += lookup.apply(examples.get(i % examples.size()).path).isPresent() ? 1 : 0;
+        }
+        long bytes = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS && bytes > budget; round++) {
+            long start = allocatedBytes();
+            for (int i = 0; i < RUNS; i++) {
+                sink += lookup.apply(examples.get(i % examples.size()).path).isPresent() ? 1 : 0;
+            }
+            bytes = Math.min(bytes, (allocatedBytes() - start) / RUNS);
+        }
+        assertTrue(operation + " allocated " + bytes + " bytes per lookup on the trie of '" +
+                        examples.get(0).path + "', budget is " + budget,
+                bytes <= budget);
+    }
+
+    private long allocatedBytes() {
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,11 @@
+package com.athaydes.pathtrie;
+
+class Example {
+    final String path;
+    final boolean exists;
+
+    Example(String path, boolean exists) {
+        this.path = path;
+        this.exists = exists;
+    }
+}
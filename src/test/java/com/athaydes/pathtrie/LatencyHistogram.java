@@ -0,0 +1,103 @@
+package com.athaydes.pathtrie;
+
+/**
+ * Histogram of latencies, in nanoseconds, with log-bucketed counts.
+ * <p>
+ * Values below {@code 64} have a bucket each. Above that, each power of two is split into {@code 32} buckets, so a
+ * value is known within about 3% of itself however large it is, and the histogram has a fixed size regardless of the
+ * number of values recorded. Percentiles are given as the highest value of the bucket they fall in, so they never
+ * under-report a latency.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_BUCKETS = 2 * SUB_BUCKETS;
+
+    private final long[] counts = new long[indexOf(Long.MAX_VALUE) + 1];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    void record(long nanos) {
+        if (nanos < 0) {
+            throw new IllegalArgumentException("Latency cannot be negative: " + nanos);
+        }
+        counts[indexOf(nanos)]++;
+        count++;
+        sum += nanos;
+        min = Math.min(min, nanos);
+        max = Math.max(max, nanos);
+    }
+
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    long getMax() {
+        return max;
+    }
+
+    double getMean() {
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return the latency under which the given percentage of the values fall, or 0 if there are no values
+     */
+    long percentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(max, highestValueOf(i));
+            }
+        }
+        return max;
+    }
+
+    static int indexOf(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long lowestValueOf(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        return (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+
+    static long highestValueOf(int index) {
+        return index + 1 < LINEAR_BUCKETS
+                ? index
+                : lowestValueOf(index) + (1L << (index / SUB_BUCKETS - 1)) - 1;
+    }
+}
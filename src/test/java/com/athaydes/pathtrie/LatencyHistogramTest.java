@@ -0,0 +1,98 @@
+package com.athaydes.pathtrie;
+
+import org.junit.Test;
+
+import static com.athaydes.pathtrie.PathTrieTest.shouldThrow;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverEveryValueOnce() {
+        int last = LatencyHistogram.indexOf(Long.MAX_VALUE);
+        assertEquals(0L, LatencyHistogram.lowestValueOf(0));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueOf(last));
+        for (int i = 0; i <= last; i++) {
+            long lowest = LatencyHistogram.lowestValueOf(i);
+            long highest = LatencyHistogram.highestValueOf(i);
+            assertEquals("Lowest value of bucket " + i, i, LatencyHistogram.indexOf(lowest));
+            assertEquals("Highest value of bucket " + i, i, LatencyHistogram.indexOf(highest));
+            if (i > 0) {
+                assertEquals("Bucket " + i + " follows the previous one",
+                        LatencyHistogram.highestValueOf(i - 1) + 1, lowest);
+            }
+            // values are known within about 3% of themselves
+            assertTrue("Width of bucket " + i, highest - lowest <= lowest / 32);
+        }
+        assertEquals(63, LatencyHistogram.indexOf(63));
+        assertEquals(64L, LatencyHistogram.lowestValueOf(LatencyHistogram.indexOf(65)));
+        assertEquals(65L, LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(64)));
+        assertEquals(1007L, LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(1000)));
+    }
+
+    @Test
+    public void percentilesNeverUnderReportLatencies() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 100; i > 0; i--) {
+            histogram.record(i);
+        }
+        assertEquals(100L, histogram.getCount());
+        assertEquals(1L, histogram.getMin());
+        assertEquals(100L, histogram.getMax());
+        assertEquals(50.5, histogram.getMean(), 0.0);
+        assertEquals(1L, histogram.percentile(0));
+        assertEquals(50L, histogram.percentile(50));
+        // 90 falls in the bucket of 90 and 91
+        assertEquals(91L, histogram.percentile(90));
+        assertEquals(99L, histogram.percentile(99));
+        assertEquals(100L, histogram.percentile(99.9));
+        assertEquals(100L, histogram.percentile(100));
+    }
+
+    @Test
+    public void zeroLatenciesAreRecorded() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(0);
+        histogram.record(0);
+        histogram.record(0);
+        histogram.record(1000);
+        assertEquals(4L, histogram.getCount());
+        assertEquals(0L, histogram.getMin());
+        assertEquals(250.0, histogram.getMean(), 0.0);
+        assertEquals(0L, histogram.percentile(75));
+        // the bucket of 1000 goes up to 1007, but no value above the maximum is reported
+        assertEquals(1000L, histogram.percentile(90));
+    }
+
+    @Test
+    public void histogramsCanBeAdded() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        LatencyHistogram other = new LatencyHistogram();
+        histogram.add(other);
+        assertEquals(0L, histogram.getCount());
+        assertEquals(0L, histogram.getMin());
+        assertEquals(0L, histogram.getMax());
+        assertEquals(0.0, histogram.getMean(), 0.0);
+        assertEquals(0L, histogram.percentile(50));
+
+        histogram.record(10);
+        other.record(5);
+        other.record(30);
+        histogram.add(other);
+        assertEquals(3L, histogram.getCount());
+        assertEquals(5L, histogram.getMin());
+        assertEquals(30L, histogram.getMax());
+        assertEquals(15.0, histogram.getMean(), 0.0);
+        assertEquals(10L, histogram.percentile(50));
+    }
+
+    @Test
+    public void invalidValuesAreRejected() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        shouldThrow(() -> histogram.record(-1));
+        shouldThrow(() -> histogram.percentile(-0.1));
+        shouldThrow(() -> histogram.percentile(100.1));
+        assertEquals(0L, histogram.getCount());
+    }
+}
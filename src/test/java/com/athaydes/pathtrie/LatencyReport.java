@@ -0,0 +1,185 @@
+package com.athaydes.pathtrie;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Report of the latencies of a benchmark, one {@link LatencyHistogram} per series, written as CSV, JSON and a static
+ * HTML page without needing a display.
+ * <p>
+ * Each report carries the version of the code measured, so that reports of different versions can be compared.
+ */
+final class LatencyReport {
+
+    static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p99.9"};
+
+    private final String title;
+    private final String version;
+    private final Instant timestamp = Instant.now();
+    private final Map<String, LatencyHistogram> series = new LinkedHashMap<>();
+
+    LatencyReport(String title, String version) {
+        this.title = title;
+        this.version = version;
+    }
+
+    /**
+     * @return the histogram of the series with the given name, created if necessary
+     */
+    LatencyHistogram series(String name) {
+        return series.computeIfAbsent(name, ignored -> new LatencyHistogram());
+    }
+
+    /**
+     * Write the report to {@code <title>.csv}, {@code <title>.json} and {@code <title>.html} in the given directory.
+     */
+    void writeTo(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        try (Writer writer = Files.newBufferedWriter(directory.resolve(title + ".csv"), StandardCharsets.UTF_8)) {
+            writeCsv(writer);
+        }
+        try (Writer writer = Files.newBufferedWriter(directory.resolve(title + ".json"), StandardCharsets.UTF_8)) {
+            writeJson(writer);
+        }
+        try (Writer writer = Files.newBufferedWriter(directory.resolve(title + ".html"), StandardCharsets.UTF_8)) {
+            writeHtml(writer);
+        }
+    }
+
+    void writeCsv(Appendable out) throws IOException {
+        out.append("version,series,count,min,mean");
+        for (String name : PERCENTILE_NAMES) {
+            out.append(',').append(name);
+        }
+        out.append(",max\n");
+        for (Map.Entry<String, LatencyHistogram> entry : series.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            out.append(csvField(version)).append(',').append(csvField(entry.getKey()))
+                    .append(',').append(Long.toString(histogram.getCount()))
+                    .append(',').append(Long.toString(histogram.getMin()))
+                    .append(',').append(String.format(Locale.ROOT, "%.1f", histogram.getMean()));
+            for (double percentile : PERCENTILES) {
+                out.append(',').append(Long.toString(histogram.percentile(percentile)));
+            }
+            out.append(',').append(Long.toString(histogram.getMax())).append('\n');
+        }
+    }
+
+    void writeJson(Appendable out) throws IOException {
+        out.append("{\n  \"title\": ").append(jsonString(title))
+                .append(",\n  \"version\": ").append(jsonString(version))
+                .append(",\n  \"timestamp\": ").append(jsonString(timestamp.toString()))
+                .append(",\n  \"unit\": \"ns\",\n  \"series\": [");
+        boolean first = true;
+        for (Map.Entry<String, LatencyHistogram> entry : series.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            out.append(first ? "\n" : ",\n");
+            first = false;
+            out.append("    {\"name\": ").append(jsonString(entry.getKey()))
+                    .append(", \"count\": ").append(Long.toString(histogram.getCount()))
+                    .append(", \"min\": ").append(Long.toString(histogram.getMin()))
+                    .append(", \"mean\": ").append(String.format(Locale.ROOT, "%.1f", histogram.getMean()));
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                out.append(", ").append(jsonString(PERCENTILE_NAMES[i])).append(": ")
+                        .append(Long.toString(histogram.percentile(PERCENTILES[i])));
+            }
+            out.append(", \"max\": ").append(Long.toString(histogram.getMax())).append('}');
+        }
+        out.append("\n  ]\n}\n");
+    }
+
+    /**
+     * Write a page with a table of the percentiles of each series, and a bar per percentile drawn in SVG, on a
+     * logarithmic scale so that tails stay readable next to medians.
+     */
+    void writeHtml(Appendable out) throws IOException {
+        long highest = 1;
+        for (LatencyHistogram histogram : series.values()) {
+            highest = Math.max(highest, histogram.getMax());
+        }
+        double scale = Math.log10(highest + 1);
+
+        out.append("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n<title>")
+                .append(html(title)).append("</title>\n<style>\n")
+                .append("body { font-family: sans-serif; margin: 2em; }\n")
+                .append("table { border-collapse: collapse; margin-bottom: 2em; }\n")
+                .append("th, td { border: 1px solid #ccc; padding: 4px 8px; text-align: right; }\n")
+                .append("th:first-child, td:first-child { text-align: left; }\n")
+                .append("svg text { font-size: 11px; }\n")
+                .append("</style>\n</head>\n<body>\n<h1>").append(html(title)).append("</h1>\n<p>Version ")
+                .append(html(version)).append(", measured at ").append(html(timestamp.toString()))
+                .append(". Latencies in nanoseconds.</p>\n<table>\n<tr><th>Series</th><th>Count</th><th>Min</th>")
+                .append("<th>Mean</th>");
+        for (String name : PERCENTILE_NAMES) {
+            out.append("<th>").append(name).append("</th>");
+        }
+        out.append("<th>Max</th></tr>\n");
+        for (Map.Entry<String, LatencyHistogram> entry : series.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            out.append("<tr><td>").append(html(entry.getKey())).append("</td><td>")
+                    .append(Long.toString(histogram.getCount())).append("</td><td>")
+                    .append(Long.toString(histogram.getMin())).append("</td><td>")
+                    .append(String.format(Locale.ROOT, "%.1f", histogram.getMean())).append("</td>");
+            for (double percentile : PERCENTILES) {
+                out.append("<td>").append(Long.toString(histogram.percentile(percentile))).append("</td>");
+            }
+            out.append("<td>").append(Long.toString(histogram.getMax())).append("</td></tr>\n");
+        }
+        out.append("</table>\n");
+
+        for (Map.Entry<String, LatencyHistogram> entry : series.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            out.append("<h2>").append(html(entry.getKey())).append("</h2>\n")
+                    .append("<svg width=\"640\" height=\"").append(Integer.toString(22 * (PERCENTILES.length + 1)))
+                    .append("\">\n");
+            for (int i = 0; i <= PERCENTILES.length; i++) {
+                String name = i < PERCENTILES.length ? PERCENTILE_NAMES[i] : "max";
+                long value = i < PERCENTILES.length ? histogram.percentile(PERCENTILES[i]) : histogram.getMax();
+                int width = (int) Math.round(480 * Math.log10(value + 1) / scale);
+                int y = 22 * i;
+                out.append("<text x=\"0\" y=\"").append(Integer.toString(y + 15)).append("\">").append(name)
+                        .append("</text><rect x=\"50\" y=\"").append(Integer.toString(y + 3))
+                        .append("\" width=\"").append(Integer.toString(width))
+                        .append("\" height=\"16\" fill=\"#4a7ebb\"/><text x=\"")
+                        .append(Integer.toString(56 + width)).append("\" y=\"").append(Integer.toString(y + 15))
+                        .append("\">").append(Long.toString(value)).append("</text>\n");
+            }
+            out.append("</svg>\n");
+        }
+        out.append("</body>\n</html>\n");
+    }
+
+    private static String csvField(String value) {
+        return value.indexOf(',') < 0 && value.indexOf('"') < 0
+                ? value
+                : '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String jsonString(String value) {
+        StringBuilder result = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < ' ') {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.append('"').toString();
+    }
+
+    private static String html(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
@@ -0,0 +1,118 @@
+package com.athaydes.pathtrie;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyReportTest {
+
+    private static LatencyReport report() {
+        LatencyReport report = new LatencyReport("lookups", "1.2");
+        LatencyHistogram histogram = report.series("a/b");
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        LatencyHistogram quoted = report.series("x,\"y\"");
+        quoted.record(0);
+        quoted.record(0);
+        quoted.record(1000);
+        report.series("<none>");
+        return report;
+    }
+
+    @Test
+    public void csvHasOneLinePerSeries() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        report().writeCsv(csv);
+        assertEquals("version,series,count,min,mean,p50,p90,p99,p99.9,max\n" +
+                "1.2,a/b,100,1,50.5,50,91,99,100,100\n" +
+                "1.2,\"x,\"\"y\"\"\",3,0,333.3,0,1000,1000,1000,1000\n" +
+                "1.2,<none>,0,0,0.0,0,0,0,0,0\n", csv.toString());
+    }
+
+    @Test
+    public void jsonHasOneObjectPerSeries() throws IOException {
+        StringBuilder json = new StringBuilder();
+        report().writeJson(json);
+        assertEquals("{\n" +
+                "  \"title\": \"lookups\",\n" +
+                "  \"version\": \"1.2\",\n" +
+                "  \"timestamp\": \"<timestamp>\",\n" +
+                "  \"unit\": \"ns\",\n" +
+                "  \"series\": [\n" +
+                "    {\"name\": \"a/b\", \"count\": 100, \"min\": 1, \"mean\": 50.5, \"p50\": 50, \"p90\": 91, " +
+                "\"p99\": 99, \"p99.9\": 100, \"max\": 100},\n" +
+                "    {\"name\": \"x,\\\"y\\\"\", \"count\": 3, \"min\": 0, \"mean\": 333.3, \"p50\": 0, " +
+                "\"p90\": 1000, \"p99\": 1000, \"p99.9\": 1000, \"max\": 1000},\n" +
+                "    {\"name\": \"<none>\", \"count\": 0, \"min\": 0, \"mean\": 0.0, \"p50\": 0, \"p90\": 0, " +
+                "\"p99\": 0, \"p99.9\": 0, \"max\": 0}\n" +
+                "  ]\n" +
+                "}\n", json.toString().replaceFirst("\"timestamp\": \"[^\"]+\"", "\"timestamp\": \"<timestamp>\""));
+
+        StringBuilder empty = new StringBuilder();
+        new LatencyReport("empty", "1.2").writeJson(empty);
+        assertTrue(empty.toString(), empty.toString().endsWith("\"series\": [\n  ]\n}\n"));
+    }
+
+    @Test
+    public void htmlHasTableAndBarsOfEachSeries() throws IOException {
+        StringBuilder out = new StringBuilder();
+        report().writeHtml(out);
+        String html = out.toString();
+        assertTrue(html, html.startsWith("<!DOCTYPE html>\n"));
+        assertTrue(html, html.endsWith("</body>\n</html>\n"));
+        assertTrue(html, html.contains("<title>lookups</title>"));
+        assertTrue(html, html.contains("<tr><td>a/b</td><td>100</td><td>1</td><td>50.5</td><td>50</td><td>91</td>" +
+                "<td>99</td><td>100</td><td>100</td></tr>\n"));
+        // names are escaped
+        assertTrue(html, html.contains("<h2>x,&quot;y&quot;</h2>"));
+        assertTrue(html, html.contains("<tr><td>&lt;none&gt;</td><td>0</td>"));
+        // bars are on a logarithmic scale, the highest latency of all series filling the width
+        assertTrue(html, html.contains("<text x=\"0\" y=\"103\">max</text><rect x=\"50\" y=\"91\" width=\"480\""));
+        assertTrue(html, html.contains("<text x=\"0\" y=\"15\">p50</text><rect x=\"50\" y=\"3\" width=\"273\""));
+        assertTrue(html, html.contains("<text x=\"0\" y=\"15\">p50</text><rect x=\"50\" y=\"3\" width=\"0\""));
+        assertEquals(3, html.split("<svg ", -1).length - 1);
+    }
+
+    @Test
+    public void benchmarkReportsRecordRunsTakingNoTime() throws IOException {
+        Map<String, long[]> results = new LinkedHashMap<>();
+        long notRun = PerformanceTest.NOT_RUN;
+        results.put("b", new long[]{notRun, 0, notRun, 20});
+        results.put("a", new long[]{10, notRun, 0, notRun});
+        StringBuilder csv = new StringBuilder();
+        PerformanceTest.latencyReport("benchmark", results).writeCsv(csv);
+        String version = System.getProperty("pathtrie.version", "unknown");
+        assertEquals("version,series,count,min,mean,p50,p90,p99,p99.9,max\n" +
+                version + ",a,2,0,5.0,0,10,10,10,10\n" +
+                version + ",b,2,0,10.0,0,20,20,20,20\n", csv.toString());
+    }
+
+    @Test
+    public void reportIsWrittenInEachFormat() throws IOException {
+        Path directory = Files.createTempDirectory("pathtrie");
+        try {
+            LatencyReport report = report();
+            report.writeTo(directory.resolve("reports"));
+            StringBuilder csv = new StringBuilder();
+            report.writeCsv(csv);
+            StringBuilder html = new StringBuilder();
+            report.writeHtml(html);
+            assertEquals(csv.toString(), new String(Files.readAllBytes(directory.resolve("reports/lookups.csv")),
+                    StandardCharsets.UTF_8));
+            assertEquals(html.toString(), new String(Files.readAllBytes(directory.resolve("reports/lookups.html")),
+                    StandardCharsets.UTF_8));
+            assertTrue(Files.exists(directory.resolve("reports/lookups.json")));
+        } finally {
+            Files.walk(directory).sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.athaydes.pathtrie;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import org.junit.Test;
+
+import static com.athaydes.pathtrie.PathTrieTest.shouldThrow;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Differential tests comparing compiled tries with the tries they were compiled from.
+ */
+public class PathTrieCompilerTest {
+
+    private static final PathSplitter SPLITTER = PathSplitter.newBuilder().withCatchAllPrefix("*").build();
+
+    // many literals share lengths and characters at some positions, so that the matchers switch on several of them
+    private static final String[] LITERALS = {
+            "a", "b", "ab", "ba", "bb", "abc", "abd", "bbc", "10", "x", "y", "z", "users", "items", "itens",
+            "orders", "-7", "caf\u00e9", "cafe", "\u65e5\u672c"
+    };
+
+    private static final String[] PATH_PARTS = {
+            "", "a", "B", "ab", "Ba", "bb", "abc", "ABD", "abe", "bbc", "10", "-7", "99999999999", "x", "users",
+            "Items", "itens", "itemz", "nope", "caf\u00e9", "CAF\u00c9", "cafe", "\u65e5\u672c", "\u65e5",
+            "123e4567-e89b-12d3-a456-426614174000"
+    };
+
+    @Test
+    public void compiledTrieGivesSameResultsAsInterpretedTrie() {
+        Random random = new Random(42L);
+        for (int run = 0; run < 300; run++) {
+            PathTrieBuilder<Integer> builder = randomTrieBuilder(random);
+            switch (run % 3) {
+                case 1:
+                    builder.ignoringCase();
+                    break;
+                case 2:
+                    builder.sorted();
+                    break;
+                default:
+                    break;
+            }
+            PathTrie<Integer> trie = builder.build();
+            PathTrie<Integer> compiled = PathTrieCompiler.compile(trie);
+            for (int i = 0; i < 200; i++) {
+                assertSameResult(trie, compiled, randomPath(random));
+            }
+        }
+    }
+
+    @Test
+    public void compiledTrieSupportsManyLiteralsAtTheSameLevel() {
+        PathTrieBuilder<Integer> builder = PathTrie.newBuilder();
+        for (int i = 0; i < 300; i++) {
+            builder.put("p" + i + "/:id", i);
+        }
+        PathTrie<Integer> trie = builder.put(":other/x", -1).build();
+        PathTrie<Integer> compiled = PathTrieCompiler.compile(trie);
+        for (int i = 0; i < 350; i++) {
+            assertSameResult(trie, compiled, "p" + i + "/x");
+            assertSameResult(trie, compiled, "p" + i + "/y");
+            assertSameResult(trie, compiled, "q" + i + "/x");
+        }
+        assertEquals(Optional.of(299), compiled.get("p299/a"));
+        assertEquals(Optional.of(-1), compiled.get("p300/x"));
+    }
+
+    @Test
+    public void compiledTrieLooksUpHostsBytesAndRequestTargets() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder()
+                .put("api.example.com", "users/:id", 1)
+                .put("users/:id", 2)
+                .put("caf\u00e9/menu", 3)
+                .put("cafe/menu", 4)
+                .build();
+        PathTrie<Integer> compiled = PathTrieCompiler.compile(trie);
+        assertEquals(Optional.of(1), compiled.get("api.example.com", "users/joe"));
+        assertEquals(Optional.of(2), compiled.get("users/joe"));
+        assertEquals(Optional.empty(), compiled.get("other.example.com", "users/joe"));
+
+        byte[] bytes = "caf\u00e9/menu".getBytes(StandardCharsets.UTF_8);
+        assertEquals(Optional.of(3), compiled.getParameterized(bytes, 0, bytes.length).map(e -> e.getElement()));
+        bytes = "cafe/menu".getBytes(StandardCharsets.UTF_8);
+        assertEquals(Optional.of(4), compiled.getParameterized(bytes, 0, bytes.length).map(e -> e.getElement()));
+        assertEquals(Optional.of(3), compiled.getByRequestTarget("caf%C3%A9/menu?x=1")
+                .map(ParameterizedElement::getElement));
+        assertEquals(trie.toString(), compiled.toString());
+    }
+
+    @Test
+    public void onlyTriesCreatedByBuilderAreCompiled() {
+        PathTrie<Integer> empty = PathTrie.empty();
+        assertSame(empty, PathTrieCompiler.compile(empty));
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder().put("a", 1).build();
+        shouldThrow(() -> PathTrieCompiler.compile(PathTrieProfiler.profile(trie)));
+    }
+
+    static PathTrieBuilder<Integer> randomTrieBuilder(Random random) {
+        PathTrieBuilder<Integer> builder = PathTrie.newBuilder(SPLITTER);
+        int routes = 1 + random.nextInt(30);
+        for (int i = 0; i < routes; i++) {
+            String route = randomRoute(random);
+            if (random.nextInt(4) == 0) {
+                builder.put(HttpMethod.values()[random.nextInt(3)], route, i);
+            } else {
+                builder.put(route, i);
+            }
+        }
+        return builder;
+    }
+
+    private static String randomRoute(Random random) {
+        int length = 1 + random.nextInt(4);
+        List<String> parts = new ArrayList<>(length);
+        for (int depth = 0; depth < length; depth++) {
+            int kind = random.nextInt(12);
+            if (kind < 7) {
+                parts.add(LITERALS[random.nextInt(LITERALS.length)]);
+            } else if (kind < 9) {
+                parts.add(":p" + depth);
+            } else if (kind == 9) {
+                parts.add(":i" + depth + "<int>");
+            } else if (kind == 10) {
+                parts.add(":u" + depth + "<uuid>");
+            } else {
+                parts.add("*c" + depth);
+                break;
+            }
+        }
+        return String.join("/", parts);
+    }
+
+    private static String randomPath(Random random) {
+        int length = 1 + random.nextInt(5);
+        List<String> parts = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            parts.add(PATH_PARTS[random.nextInt(PATH_PARTS.length)]);
+        }
+        return String.join("/", parts);
+    }
+
+    private static void assertSameResult(PathTrie<Integer> expected, PathTrie<Integer> actual, String path) {
+        String message = "Path '" + path + "' in " + expected;
+        assertEquals(message, describe(expected.getParameterized(path)), describe(actual.getParameterized(path)));
+        byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+        assertEquals(message, describe(expected.getParameterized(bytes, 0, bytes.length)),
+                describe(actual.getParameterized(bytes, 0, bytes.length)));
+        for (HttpMethod method : HttpMethod.values()) {
+            MethodMatch<Integer> expectedMatch = expected.getByMethod(method, path);
+            MethodMatch<Integer> actualMatch = actual.getByMethod(method, path);
+            assertEquals(message, expectedMatch.getStatus(), actualMatch.getStatus());
+            assertEquals(message, expectedMatch.getAllowedMethods(), actualMatch.getAllowedMethods());
+            assertEquals(message, describe(expectedMatch.getElement()), describe(actualMatch.getElement()));
+        }
+        assertEquals(message, expected.getChild(path).map(PathTrie::toString),
+                actual.getChild(path).map(PathTrie::toString));
+        List<String> expectedOnPath = new ArrayList<>();
+        expected.forEachOnPath(path, e -> expectedOnPath.add(describe(Optional.of(e))));
+        List<String> actualOnPath = new ArrayList<>();
+        actual.forEachOnPath(path, e -> actualOnPath.add(describe(Optional.of(e))));
+        assertEquals(message, expectedOnPath, actualOnPath);
+    }
+
+    private static String describe(Optional<ParameterizedElement<Integer>> element) {
+        return element.map(e -> {
+            StringBuilder builder = new StringBuilder().append(e.getElement());
+            for (int i = 0; i < e.getParameterCount(); i++) {
+                builder.append(", ").append(e.param(i));
+            }
+            return builder.toString();
+        }).orElse("none");
+    }
+}
@@ -1,15 +1,39 @@
 package com.athaydes.pathtrie;
 
+import com.athaydes.pathtrie.functions.Memoized;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class PathTrieTest {
 
+    private static final PathSplitter CATCH_ALL = PathSplitter.newBuilder().withCatchAllPrefix("*").build();
+
     @Test
     public void emptyTreeContainsNothing() {
         PathTrie<Integer> trie = PathTrie.empty();
@@ -265,20 +289,354 @@ public class PathTrieTest {
     }
 
     @Test
-    public void toStringTest() {
+    public void literalMissFallsBackToParameterizedSibling() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder()
+                .put("/a/b/d", 10)
+                .put("/a/:x/c", 20)
+                .put("/:y/b/c/f", 30)
+                .put("/a/:x/c/e", 40)
+                .build();
+
+        assertElementHasValue(trie, "/a/b/d", 10);
+        assertParameterHasValue(trie, "/a/b/c", "x", "b", 20);
+        assertParameterHasValue(trie, "/a/z/c", "x", "z", 20);
+        assertParameterHasValue(trie, "/a/b/c/f", "y", "a", 30);
+        assertParameterHasValue(trie, "/a/b/c/e", "x", "b", 40);
+        assertFalse("Does not contain element not added", trie.get("/a/b").isPresent());
+        assertFalse("Does not contain element not added", trie.get("/a/b/c/g").isPresent());
+        assertFalse("Does not contain element not added", trie.get("/a/b/d/e").isPresent());
+
+        Optional<PathTrie<Integer>> child = trie.getChild("/a/b/c");
+        assertTrue(child.isPresent());
+        assertElementHasValue(child.get(), "e", 40);
+    }
+
+    @Test
+    public void backtrackingOnDeepPathsTerminatesQuickly() {
+        PathTrieBuilder<Integer> builder = PathTrie.newBuilder();
+        StringBuilder literalPath = new StringBuilder();
+        StringBuilder parameterizedPath = new StringBuilder();
+        StringBuilder lookup = new StringBuilder();
+        for (int i = 0; i < 64; i++) {
+            literalPath.append("/a");
+            parameterizedPath.append("/:p").append(i);
+            lookup.append("/a");
+            builder.put(literalPath + "/x", i);
+            builder.put(parameterizedPath + "/y", -i);
+        }
+        PathTrie<Integer> trie = builder.build();
+
+        assertElementHasValue(trie, lookup + "/x", 63);
+        assertElementHasValue(trie, lookup + "/y", -63);
+        assertFalse("Does not contain element not added", trie.get(lookup + "/z").isPresent());
+    }
+
+    @Test
+    public void catchAllParameterCapturesRemainderOfPath() {
+        PathTrie<String> trie = PathTrie.<String>newBuilder(CATCH_ALL)
+                .putFun("/static/*path", path -> "file " + path)
+                .put("/static/index.html", "index")
+                .putFun("/static/:dir/info", dir -> "info " + dir)
+                .build();
+
+        assertElementHasValue(trie, "/static/index.html", "index");
+        assertElementHasValue(trie, "/static/css/main.css", "file css/main.css");
+        assertElementHasValue(trie, "/static/a/b/c/d/e.png", "file a/b/c/d/e.png");
+        assertElementHasValue(trie, "/static/a//b/", "file a//b");
+        assertElementHasValue(trie, "/static/css/info", "info css");
+        assertElementHasValue(trie, "/static/css/info/more", "file css/info/more");
+        assertParameterHasValue(trie, "/static/img/x.png", "path", "img/x.png", "file img/x.png");
+        assertFalse("Catch-all requires at least one path part", trie.get("/static").isPresent());
+        assertFalse("Catch-all requires at least one path part", trie.get("/static/").isPresent());
+        assertFalse("Does not contain element not added", trie.get("/other/a/b").isPresent());
+    }
+
+    @Test
+    public void catchAllParameterWithCustomSplitter() {
+        PathTrie<String> trie = PathTrie.<String>newBuilder(
+                PathSplitter.newBuilder()
+                        .splitOn("::")
+                        .withCatchAllPrefix("...")
+                        .build())
+                .putFun("files::...rest", rest -> rest)
+                .build();
+
+        assertElementHasValue(trie, "files::a::b::c", "a::b::c");
+
+        PathSplitter upperCaseSplitter = new PathSplitter() {
+            @Override
+            public Iterable<String> apply(String path) {
+                return Arrays.asList(path.toUpperCase().split("\\."));
+            }
+
+            @Override
+            public String catchAllParameterPrefix() {
+                return "*";
+            }
+        };
+        PathTrie<String> customTrie = PathTrie.<String>newBuilder(upperCaseSplitter)
+                .putFun("A.*REST", rest -> rest)
+                .build();
+
+        assertElementHasValue(customTrie, "a.b.c", "B/C");
+    }
+
+    @Test
+    public void catchAllParametersAreOptIn() {
+        PathTrie<String> trie = PathTrie.<String>newBuilder()
+                .put("docs/*", "star")
+                .put("files/*path", "files")
+                .build();
+
+        assertElementHasValue(trie, "docs/*", "star");
+        assertElementHasValue(trie, "files/*path", "files");
+        assertFalse("Parts starting with * are literal by default", trie.get("docs/abc").isPresent());
+        assertFalse("Parts starting with * are literal by default", trie.get("files/a/b").isPresent());
+
+        PathSplitter splitter = path -> Arrays.asList(path.split("/"));
+        PathTrie<String> customTrie = PathTrie.<String>newBuilder(splitter)
+                .put("docs/*rest", "docs")
+                .build();
+        assertFalse("Custom splitters have no catch-all prefix by default", customTrie.get("docs/a").isPresent());
+    }
+
+    @Test
+    public void catchAllParameterMustBeLastPathPart() {
+        Exception error = shouldThrow(() -> PathTrie.<Integer>newBuilder(CATCH_ALL)
+                .put("files/*path/other", 10)
+                .build());
+        assertTrue("Error is of expected type :" + error, error instanceof IllegalArgumentException);
+        assertEquals("Catch-all parameter must be the last part of a path: '*path'", error.getMessage());
+    }
+
+    @Test
+    public void typedParametersOnlyMatchValidValues() {
+        PathTrie<String> trie = PathTrie.<String>newBuilder()
+                .putLongFun("/users/:id<long>", id -> "user " + (id + 1))
+                .putFun("/users/:name", name -> "name " + name)
+                .putFun("/users/:n<int>/friends", n -> "friends of " + n)
+                .putFun("/orders/:uuid<uuid>", uuid -> "order " + uuid)
+                .putLongFun("/sum/:a<long>/:b<long>", (a, b) -> "sum " + (a + b))
+                .build();
+
+        assertElementHasValue(trie, "/users/41", "user 42");
+        assertElementHasValue(trie, "/users/-10", "user -9");
+        assertElementHasValue(trie, "/users/9223372036854775806", "user 9223372036854775807");
+        assertElementHasValue(trie, "/users/9223372036854775808", "name 9223372036854775808");
+        assertElementHasValue(trie, "/users/joe", "name joe");
+        assertElementHasValue(trie, "/users/12a", "name 12a");
+        assertElementHasValue(trie, "/users/-", "name -");
+        assertElementHasValue(trie, "/users/123/friends", "friends of 123");
+        assertFalse("Does not match int parameter", trie.get("/users/3000000000/friends").isPresent());
+        assertElementHasValue(trie, "/orders/123e4567-e89b-12d3-a456-426614174000",
+                "order 123e4567-e89b-12d3-a456-426614174000");
+        assertFalse("Does not match uuid parameter", trie.get("/orders/123e4567-e89b-12d3-a456-42661417400g").isPresent());
+        assertFalse("Does not match uuid parameter", trie.get("/orders/123").isPresent());
+        assertElementHasValue(trie, "/sum/40/2", "sum 42");
+        assertFalse("Does not match long parameters", trie.get("/sum/40/two").isPresent());
+    }
+
+    @Test
+    public void typedParametersCanBeReadAsPrimitives() {
         PathTrie<Integer> trie = PathTrie.<Integer>newBuilder()
+                .put("/a/:x<long>/:y<int>/:z<uuid>/:w", 1)
+                .build();
+
+        ParameterizedElement<Integer> element = trie.getParameterized(
+                "/a/-5/7/00000000-0000-0001-0000-00000000000f/42").orElseThrow(AssertionError::new);
+
+        assertEquals(4, element.getParameterCount());
+        assertEquals(-5L, element.paramLong(0));
+        assertEquals(7, element.paramInt(1));
+        assertEquals(7L, element.paramLong(1));
+        assertEquals(new UUID(1L, 15L), element.paramUuid(2));
+        assertEquals(42L, element.paramLong(3));
+        assertEquals("-5", element.param("x"));
+        assertEquals("7", element.param(1));
+        assertEquals(Arrays.asList("x", "y", "z", "w"), new ArrayList<>(element.getParameterNames()));
+    }
+
+    @Test
+    public void typedParametersOfSameTypeMustHaveSameName() {
+        Exception error = shouldThrow(() -> PathTrie.<Integer>newBuilder()
+                .put("users/:id<long>", 10)
+                .put("users/:other<long>/x", 10)
+                .build());
+        assertTrue("Error is of expected type :" + error, error instanceof IllegalArgumentException);
+        assertEquals("Parameters with different names clash at the same level: 'other' and 'id'",
+                error.getMessage());
+    }
+
+    @Test
+    public void parametersWithSuffixOtherThanKnownTypeAreUntyped() {
+        PathTrie<String> trie = PathTrie.<String>newBuilder()
+                .putFun("a/:x<y>", x -> "x " + x)
+                .putFun("b/:id<float>/:n<int>", (id, n) -> id + " " + n)
+                .build();
+
+        ParameterizedElement<String> element = trie.getParameterized("a/abc").orElseThrow(AssertionError::new);
+        assertEquals("x abc", element.getElement());
+        assertEquals(Collections.singleton("x<y>"), element.getParameterNames());
+        assertEquals("1.5 2", trie.get("b/1.5/2").orElse("NOT FOUND"));
+        assertFalse(trie.get("b/1.5/z").isPresent());
+        assertEquals(Arrays.asList("a/:x<y>", "b/:id<float>/:n<int>"),
+                trie.glob("**").map(PathTrieEntry::getTemplate).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void canRouteOnHostAndPathTogether() {
+        PathTrie<String> trie = PathTrie.<String>newBuilder()
+                .put("/users", "no host")
+                .put("api.example.com", "/users", "api users")
+                .putFun(":tenant.example.com", "/users/:id", (tenant, id) -> tenant + " user " + id)
+                .put("example.com", "/users", "example users")
+                .put("example.com", "/:any", "example any")
+                .putFun(":sub.example.org", "/", sub -> "org " + sub)
+                .build();
+
+        assertElementHasValue(trie, "/users", "no host");
+        assertEquals("api users", trie.get("api.example.com", "/users").orElse("NOT FOUND"));
+        assertEquals("acme user 42", trie.get("acme.example.com", "/users/42").orElse("NOT FOUND"));
+        assertEquals("api user 42", trie.get("api.example.com", "/users/42").orElse("NOT FOUND"));
+        assertEquals("example users", trie.get("example.com", "/users").orElse("NOT FOUND"));
+        assertEquals("example any", trie.get("example.com", "/foo").orElse("NOT FOUND"));
+        assertEquals("org www", trie.get("www.example.org", "/").orElse("NOT FOUND"));
+
+        ParameterizedElement<String> element = trie.getParameterized("acme.example.com", "/users/42")
+                .orElseThrow(AssertionError::new);
+        assertEquals("acme", element.param("tenant"));
+        assertEquals("42", element.param("id"));
+
+        assertFalse("Host is not added", trie.get("other.com", "/users").isPresent());
+        assertFalse("Host is not added", trie.get("a.b.example.com", "/users").isPresent());
+        assertFalse("Path is not added", trie.get("api.example.com", "/other").isPresent());
+        assertFalse("Path is not added", trie.get("example.com", "users/x").isPresent());
+        assertFalse("Host is not added", trie.get("", "/users").isPresent());
+        assertFalse("Routes with host are not found without host", trie.get("/example.com/users").isPresent());
+    }
+
+    @Test
+    public void hostCannotContainEmptyLabelsOrCatchAll() {
+        Exception error = shouldThrow(() -> PathTrie.<Integer>newBuilder()
+                .put("example..com", "/", 10));
+        assertTrue("Error is of expected type :" + error, error instanceof IllegalArgumentException);
+        assertEquals("Host contains an empty label: 'example..com'", error.getMessage());
+
+        error = shouldThrow(() -> PathTrie.<Integer>newBuilder(CATCH_ALL)
+                .put("*all.example.com", "/", 10));
+        assertTrue("Error is of expected type :" + error, error instanceof IllegalArgumentException);
+        assertEquals("Host cannot contain catch-all parameters: '*all.example.com'", error.getMessage());
+    }
+
+    @Test
+    public void canResolvePathAndMethodTogether() {
+        PathTrie<String> trie = PathTrie.<String>newBuilder()
+                .put(HttpMethod.GET, "/users", "list users")
+                .put(HttpMethod.POST, "/users", "create user")
+                .putFun(HttpMethod.GET, "/users/:id", id -> "get user " + id)
+                .putFun(HttpMethod.DELETE, "/users/:id", id -> "delete user " + id)
+                .put(HttpMethod.GET, "/users/me", "get me")
+                .put("/health", "health")
+                .put(HttpMethod.HEAD, "/health", "head health")
+                .build();
+
+        assertEquals(Optional.of("list users"), trie.get(HttpMethod.GET, "/users"));
+        assertEquals(Optional.of("create user"), trie.get(HttpMethod.POST, "/users"));
+        assertEquals(Optional.of("get user 1"), trie.get(HttpMethod.GET, "/users/1"));
+        assertEquals(Optional.of("delete user 1"), trie.get(HttpMethod.DELETE, "/users/1"));
+        assertEquals(Optional.of("get me"), trie.get(HttpMethod.GET, "/users/me"));
+        assertEquals(Optional.of("delete user me"), trie.get(HttpMethod.DELETE, "/users/me"));
+        assertEquals(Optional.of("head health"), trie.get(HttpMethod.HEAD, "/health"));
+        assertEquals(Optional.of("health"), trie.get(HttpMethod.PUT, "/health"));
+        assertFalse("Elements put with a method are not found without it", trie.get("/users").isPresent());
+
+        MethodMatch<String> found = trie.getByMethod(HttpMethod.GET, "/users/2");
+        assertEquals(MethodMatch.Status.FOUND, found.getStatus());
+        assertEquals("2", found.getElement().map(e -> e.param("id")).orElse("NOT FOUND"));
+
+        MethodMatch<String> notAllowed = trie.getByMethod(HttpMethod.PUT, "/users");
+        assertEquals(MethodMatch.Status.METHOD_NOT_ALLOWED, notAllowed.getStatus());
+        assertFalse(notAllowed.getElement().isPresent());
+        assertEquals(EnumSet.of(HttpMethod.GET, HttpMethod.POST), notAllowed.getAllowedMethods());
+
+        // methods found through the literal and through the parameter are all allowed
+        MethodMatch<String> notAllowedMe = trie.getByMethod(HttpMethod.PUT, "/users/me");
+        assertEquals(MethodMatch.Status.METHOD_NOT_ALLOWED, notAllowedMe.getStatus());
+        assertEquals(EnumSet.of(HttpMethod.GET, HttpMethod.DELETE), notAllowedMe.getAllowedMethods());
+
+        MethodMatch<String> notFound = trie.getByMethod(HttpMethod.GET, "/other");
+        assertEquals(MethodMatch.Status.NOT_FOUND, notFound.getStatus());
+        assertFalse(notFound.getElement().isPresent());
+        assertTrue(notFound.getAllowedMethods().isEmpty());
+        assertEquals(MethodMatch.Status.NOT_FOUND,
+                PathTrie.empty().getByMethod(HttpMethod.GET, "/users").getStatus());
+    }
+
+    @Test
+    public void methodNotAllowedReportsMethodsOfAllTemplatesMatchingPath() {
+        PathTrie<String> trie = PathTrie.<String>newBuilder(CATCH_ALL)
+                .put(HttpMethod.GET, "files/:id<int>/raw", "raw file")
+                .put(HttpMethod.PUT, "files/:name/raw", "put file")
+                .put(HttpMethod.HEAD, "files/*path", "head any file")
+                .put(HttpMethod.DELETE, "files/10/other", "not on path")
+                .build();
+
+        MethodMatch<String> notAllowed = trie.getByMethod(HttpMethod.POST, "files/10/raw");
+        assertEquals(MethodMatch.Status.METHOD_NOT_ALLOWED, notAllowed.getStatus());
+        assertEquals(EnumSet.of(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.PUT), notAllowed.getAllowedMethods());
+
+        assertEquals(EnumSet.of(HttpMethod.HEAD, HttpMethod.PUT),
+                trie.getByMethod(HttpMethod.POST, "files/abc/raw").getAllowedMethods());
+        assertEquals(Optional.of("put file"), trie.get(HttpMethod.PUT, "files/10/raw"));
+        assertEquals(Optional.of("head any file"), trie.get(HttpMethod.HEAD, "files/10/raw"));
+        assertEquals(MethodMatch.Status.NOT_FOUND, trie.getByMethod(HttpMethod.GET, "other/10/raw").getStatus());
+    }
+
+    @Test
+    public void validatesFunParametersCountForMethodElements() {
+        Throwable error = shouldThrow(() -> PathTrie.<String>newBuilder()
+                .putFun(HttpMethod.GET, "users/:id", id -> "")
+                .putFun(HttpMethod.POST, "users/:id", () -> "")
+                .build());
+
+        assertTrue("Error is of expected type :" + error, error instanceof IllegalArgumentException);
+        assertEquals("Path 'users/:id' contains 1 parameter but Fun0 expects 0", error.getMessage());
+    }
+
+    @Test
+    public void canLookupAmongManyChildren() {
+        PathTrieBuilder<Integer> builder = PathTrie.newBuilder();
+        for (int i = 0; i < 100; i++) {
+            builder.put("/items/item" + i, i);
+        }
+        PathTrie<Integer> trie = builder.build();
+
+        for (int i = 0; i < 100; i++) {
+            assertElementHasValue(trie, "/items/item" + i, i);
+        }
+        assertFalse("Does not contain element not added", trie.get("/items/item100").isPresent());
+        assertFalse("Does not contain element not added", trie.get("/items/item").isPresent());
+    }
+
+    @Test
+    public void toStringTest() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder(CATCH_ALL)
                 .put("hello", 10)
                 .put("hello/:there", 20)
                 .put("boo", 30)
                 .put("boo/foo/bar", 61)
+                .put("boo/*rest", 70)
+                .put(HttpMethod.GET, "boo/foo", 80)
+                .put(HttpMethod.POST, "boo/foo", 81)
                 .build();
 
         assertEquals("PathTrie {\n" +
                 "hello: 10\n" +
                 "  <there>: 20\n" +
                 "boo: 30\n" +
-                "  foo\n" +
+                "  foo {GET: 80, POST: 81}\n" +
                 "    bar: 61\n" +
+                "  <*rest>: 70\n" +
                 "}", trie.toString());
     }
 
@@ -371,6 +729,1545 @@ public class PathTrieTest {
         assertEquals("Path 'hello/:name' contains 1 parameter but Fun0 expects 0", error.getMessage());
     }
 
+    @Test
+    public void canVisitAllElementsOnPath() {
+        PathTrie<String> trie = PathTrie.<String>newBuilder()
+                .put("", "root")
+                .put("/api", "api")
+                .putFun("/api/:tenant", tenant -> "tenant " + tenant)
+                .put("/api/:tenant/users", "users")
+                .put("/api/:tenant/users/:id/x", "not on path")
+                .put("/other", "other")
+                .build();
+
+        List<String> elements = new ArrayList<>();
+        List<String> tenants = new ArrayList<>();
+        trie.forEachOnPath("/api/acme/users/123", p -> {
+            elements.add(p.getElement());
+            tenants.add(p.getParameterNames().contains("tenant") ? p.param("tenant") : "-");
+        });
+
+        assertEquals(Arrays.asList("root", "api", "tenant acme", "users"), elements);
+        assertEquals(Arrays.asList("-", "-", "acme", "acme"), tenants);
+    }
+
+    @Test
+    public void visitsElementsOnRouteOfDeepestElementOnPath() {
+        PathTrie<String> trie = PathTrie.<String>newBuilder()
+                .put("a", "a")
+                .put("a/b", "a b")
+                .putFun("a/:x/c", x -> "a " + x + " c")
+                .build();
+
+        // the literal branch dead-ends at "c", so the route under the parameter is followed, as in a lookup
+        List<String> elements = new ArrayList<>();
+        trie.forEachOnPath("a/b/c/d", p -> elements.add(p.getElement()));
+        assertEquals(Arrays.asList("a", "a b c"), elements);
+        assertEquals(Optional.of("a b c"), trie.get("a/b/c"));
+
+        elements.clear();
+        trie.forEachOnPath("a/b/c", p -> elements.add(p.getElement()));
+        assertEquals(Arrays.asList("a", "a b c"), elements);
+
+        elements.clear();
+        trie.forEachOnPath("a/b/z", p -> elements.add(p.getElement()));
+        assertEquals(Arrays.asList("a", "a b"), elements);
+    }
+
+    @Test
+    public void customTriesOnlyNeedToImplementBasicLookups() {
+        PathSplitter dots = PathSplitter.newBuilder().splitOn(".").build();
+        PathTrie<String> routes = PathTrie.<String>newBuilder(dots)
+                .put("api", "api")
+                .put("api.:tenant.users", "users")
+                .build();
+        PathTrie<String> custom = new PathTrie<String>() {
+            @Override
+            public PathSplitter getPathSplitter() {
+                return dots;
+            }
+
+            @Override
+            public Optional<String> get(String path) {
+                return routes.get(path);
+            }
+
+            @Override
+            public Optional<ParameterizedElement<String>> getParameterized(String path) {
+                return routes.getParameterized(path);
+            }
+
+            @Override
+            public Optional<PathTrie<String>> getChild(String path) {
+                return routes.getChild(path);
+            }
+        };
+
+        for (String path : Arrays.asList(".api.acme.users.123", "api.acme.users.", "api..x", "api/acme", "other")) {
+            List<ParameterizedElement<String>> expected = new ArrayList<>();
+            List<ParameterizedElement<String>> result = new ArrayList<>();
+            routes.forEachOnPath(path, expected::add);
+            custom.forEachOnPath(path, result::add);
+            assertEquals(path, expected.stream().map(ParameterizedElement::getElement).collect(Collectors.toList()),
+                    result.stream().map(ParameterizedElement::getElement).collect(Collectors.toList()));
+        }
+
+        assertEquals(Optional.of("users"), custom.get(HttpMethod.POST, "api.acme.users"));
+        assertEquals(MethodMatch.Status.NOT_FOUND, custom.getByMethod(HttpMethod.GET, "api.acme").getStatus());
+        assertFalse(custom.get("example.com", "api").isPresent());
+    }
+
+    @Test
+    public void canCollectAllElementsOnPathIntoReusableList() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder()
+                .put("a", 1)
+                .put("a/b/c", 3)
+                .put("a/b/c/:y", 4)
+                .build();
+
+        List<ParameterizedElement<Integer>> result = new ArrayList<>();
+
+        assertEquals(3, trie.collectOnPath("a/b/c/d", result));
+        assertEquals(Arrays.asList(1, 3), Arrays.asList(result.get(0).getElement(), result.get(1).getElement()));
+        assertEquals("d", result.get(2).param("y"));
+        assertEquals(Integer.valueOf(4), result.get(2).getElement());
+
+        result.clear();
+        assertEquals(1, trie.collectOnPath("a/z", result));
+        assertEquals(Integer.valueOf(1), result.get(0).getElement());
+
+        result.clear();
+        assertEquals(0, trie.collectOnPath("other/a", result));
+        assertEquals(0, PathTrie.<Integer>empty().collectOnPath("a", result));
+    }
+
+    @Test
+    public void prefilterRejectsMissesWithoutChangingResults() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder(CATCH_ALL)
+                .put("api/users", 1)
+                .put("api/users/:id", 2)
+                .put(HttpMethod.POST, "api/items", 3)
+                .put("static/*file", 4)
+                .withPrefilter()
+                .build();
+        assertElementHasValue(trie, "api/users", 1);
+        assertParameterHasValue(trie, "api/users/joe", "id", "joe", 2);
+        assertEquals(MethodMatch.Status.FOUND, trie.getByMethod(HttpMethod.POST, "api/items").getStatus());
+        assertEquals(MethodMatch.Status.METHOD_NOT_ALLOWED, trie.getByMethod(HttpMethod.GET, "api/items").getStatus());
+        assertParameterHasValue(trie, "static/css/main.css", "file", "css/main.css", 4);
+        assertFalse(trie.get("wp-admin").isPresent());
+        assertFalse(trie.get(".env").isPresent());
+        assertFalse(trie.get("api").isPresent());
+        assertFalse(trie.get("api/users/joe/more").isPresent());
+        assertEquals(MethodMatch.Status.NOT_FOUND, trie.getByMethod(HttpMethod.GET, "wp-admin").getStatus());
+        assertTrue(trie.toString(), trie.toString().startsWith(
+                "PathTrie [prefilter: 2 keys in 8 bytes, 0.07% false positives, depth 2..*] {\n"));
+    }
+
+    @Test
+    public void prefilterLetsThroughEveryPathThatCanMatch() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder()
+                .put("Caf\u00e9/menu", 1)
+                .put("api/:version/users/:id", 2)
+                .put("api.example.com", "status", 3)
+                .ignoringCase()
+                .withPrefilter()
+                .build();
+        // first parts are folded and hashed in the same form as the keys, whether given as chars or bytes
+        assertElementHasValue(trie, "CAF\u00c9/Menu", 1);
+        byte[] bytes = "caf\u00e9/menu".getBytes(StandardCharsets.UTF_8);
+        assertEquals(Optional.of(1), trie.getParameterized(bytes, 0, bytes.length).map(ParameterizedElement::getElement));
+        bytes = "CAF\u00e9/menu".getBytes(StandardCharsets.UTF_8);
+        assertEquals(Optional.of(1), trie.getParameterized(bytes, 0, bytes.length).map(ParameterizedElement::getElement));
+        assertEquals(Optional.of(1), trie.getByRequestTarget("caf%C3%A9/menu?x=1").map(ParameterizedElement::getElement));
+        assertEquals(Optional.of(1), trie.getByRequestTarget("%43af\u00e9/menu").map(ParameterizedElement::getElement));
+        assertParameterHasValue(trie, "API/v1/users/joe", "id", "joe", 2);
+        // routes with a host are not filtered
+        assertEquals(Optional.of(3), trie.get("api.example.com", "status"));
+
+        // paths shallower or deeper than any element still reach the nodes on the way
+        assertTrue(trie.getChild("api").isPresent());
+        assertTrue(trie.getChild("api/v1").isPresent());
+        List<ParameterizedElement<Integer>> result = new ArrayList<>();
+        assertEquals(1, trie.collectOnPath("api/v1/users/joe/more/parts", result));
+        assertEquals(Integer.valueOf(2), result.get(0).getElement());
+        assertFalse(trie.get("api/v1/users").isPresent());
+        assertFalse(trie.get("api/v1/users/joe/more").isPresent());
+        assertFalse(trie.get("cafe/menu").isPresent());
+    }
+
+    @Test
+    public void prefilterOfRootWithParameterOnlyChecksDepth() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder(CATCH_ALL)
+                .put(":tenant/home", 1)
+                .put("a/b/c", 2)
+                .withPrefilter()
+                .build();
+        assertParameterHasValue(trie, "anything/home", "tenant", "anything", 1);
+        assertElementHasValue(trie, "a/b/c", 2);
+        assertFalse(trie.get("a").isPresent());
+        assertFalse(trie.get("a/b/c/d").isPresent());
+        assertTrue(trie.toString(), trie.toString().startsWith(
+                "PathTrie [prefilter: 0 keys in 0 bytes, 100.00% false positives, depth 2..3] {\n"));
+
+        PathTrie<Integer> withCatchAll = PathTrie.<Integer>newBuilder(CATCH_ALL)
+                .put("*all", 1)
+                .withPrefilter()
+                .build();
+        assertParameterHasValue(withCatchAll, "x/y/z/w", "all", "x/y/z/w", 1);
+        assertParameterHasValue(withCatchAll, "x", "all", "x", 1);
+    }
+
+    @Test
+    public void profilerOrdersChildrenByHits() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder()
+                .put("a", 1)
+                .put("b", 2)
+                .put("c/:id", 3)
+                .put("c/d", 4)
+                .build();
+        PathTrieProfiler<Integer> profiler = PathTrieProfiler.profile(trie);
+        assertEquals(Optional.of(3), profiler.get("c/x"));
+        assertEquals(Optional.of(4), profiler.get("c/d"));
+        profiler.record("b");
+        profiler.record("c/d");
+        profiler.record("wrong");
+
+        PathTrie<Integer> optimized = profiler.optimize();
+        assertEquals("PathTrie {\n" +
+                "c\n" +
+                "  d: 4\n" +
+                "  <id>: 3\n" +
+                "b: 2\n" +
+                "a: 1\n" +
+                "}", optimized.toString());
+        assertEquals(Optional.of(1), optimized.get("a"));
+        assertEquals(Optional.of(2), optimized.get("b"));
+        assertParameterHasValue(optimized, "c/x", "id", "x", 3);
+        assertEquals(Optional.of(4), optimized.get("c/d"));
+    }
+
+    @Test
+    public void profilerMovesChildrenWithoutHitsOutOfTheWay() {
+        PathTrieBuilder<Integer> builder = PathTrie.newBuilder();
+        for (int i = 0; i < 20; i++) {
+            builder.put("s/k" + i, i);
+        }
+        PathTrie<Integer> trie = builder
+                .put("s/caf\u00e9", 20)
+                .put("s/:other", 21)
+                .put(HttpMethod.GET, "s/k5/m", 22)
+                .put(HttpMethod.PUT, "s/:other/m", 23)
+                .build();
+        PathTrieProfiler<Integer> profiler = PathTrieProfiler.profile(trie);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Optional.of(19), profiler.get("s/k19"));
+        }
+        assertEquals(Optional.of(17), profiler.get("s/k17"));
+        // only the nodes of the route taken by the lookup are recorded
+        assertEquals(Optional.of(23), profiler.getByMethod(HttpMethod.PUT, "s/k5/m").getElement()
+                .map(ParameterizedElement::getElement));
+
+        PathTrie<Integer> optimized = profiler.optimize();
+        assertTrue(optimized.toString().startsWith("PathTrie {\ns\n  k19: 19\n  k17: 17\n  k0: 0\n"));
+        for (int i = 0; i < 20; i++) {
+            assertEquals(Optional.of(i), optimized.get("s/k" + i));
+        }
+        assertEquals(Optional.of(20), optimized.get("s/caf\u00e9"));
+        byte[] bytes = "s/caf\u00e9".getBytes(StandardCharsets.UTF_8);
+        assertEquals(Optional.of(20), optimized.getParameterized(bytes, 0, bytes.length)
+                .map(ParameterizedElement::getElement));
+        assertParameterHasValue(optimized, "s/k20", "other", "k20", 21);
+        assertEquals(Optional.of(22), optimized.getByMethod(HttpMethod.GET, "s/k5/m").getElement()
+                .map(ParameterizedElement::getElement));
+        assertEquals(Optional.of(23), optimized.getByMethod(HttpMethod.PUT, "s/k5/m").getElement()
+                .map(ParameterizedElement::getElement));
+        assertEquals(EnumSet.of(HttpMethod.GET, HttpMethod.PUT),
+                optimized.getByMethod(HttpMethod.POST, "s/k5/m").getAllowedMethods());
+    }
+
+    @Test
+    public void profilerKeepsCaseInsensitiveLookupsOfChildrenWithoutHits() {
+        PathTrieBuilder<Integer> builder = PathTrie.<Integer>newBuilder().ignoringCase();
+        for (int i = 0; i < 12; i++) {
+            builder.put("Key" + i, i);
+        }
+        PathTrieProfiler<Integer> profiler = PathTrieProfiler.profile(builder.build());
+        profiler.record("key3");
+        PathTrie<Integer> optimized = profiler.optimize();
+        for (int i = 0; i < 12; i++) {
+            assertEquals(Optional.of(i), optimized.get("KEY" + i));
+            assertEquals(Optional.of(i), optimized.get("key" + i));
+        }
+        assertFalse(optimized.get("key12").isPresent());
+    }
+
+    @Test
+    public void canLookUpBatchOfPaths() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder()
+                .put("logs/app/:date", 1)
+                .put("logs/app/latest", 2)
+                .put("logs/:service/:date", 3)
+                .build();
+        List<String> paths = Arrays.asList(
+                new StringBuilder("logs/app").toString(), "logs/app/2024", "logs/app/latest", "logs/db/2024", "other");
+        Integer[] results = new Integer[paths.size()];
+        List<Integer> misses = new ArrayList<>();
+        trie.getAll(paths, new ResultSink<Integer>() {
+            @Override
+            public void found(int index, ParameterizedElement<Integer> element) {
+                results[index] = element.getElement();
+            }
+
+            @Override
+            public void notFound(int index) {
+                misses.add(index);
+            }
+        });
+        assertEquals(Arrays.asList(null, 1, 2, 3, null), Arrays.asList(results));
+        assertEquals(Arrays.asList(0, 4), misses);
+
+        List<String> values = new ArrayList<>();
+        trie.getAll(Collections.singletonList(new StringBuilder("logs/db/2025")),
+                (index, element) -> values.add(element.param("service") + " " + element.param("date")));
+        assertEquals(Collections.singletonList("db 2025"), values);
+    }
+
+    @Test
+    public void batchLookupReusesWorkOfSharedPrefixes() {
+        PathTrie<String> trie = PathTrie.<String>newBuilder()
+                .put("a/b/:x", "abx")
+                .put("a/b/c", "abc")
+                .put("a/:y/c", "ayc")
+                .put("b", "b")
+                .build();
+        // consecutive paths share prefixes of different lengths, some are repeated and some are mutable
+        List<CharSequence> paths = Arrays.asList("", "a/a/c", "a/b", "a/b/c", "a/b/c", "a/b/c/d",
+                new StringBuilder("a/b/d"), "a/z/c", "b", "b");
+        List<String> results = new ArrayList<>();
+        trie.getAll(paths, new ResultSink<String>() {
+            @Override
+            public void found(int index, ParameterizedElement<String> element) {
+                results.add(index + ": " + element.getElement() +
+                        (element.getParameterCount() > 0 ? " " + element.param(0) : ""));
+            }
+
+            @Override
+            public void notFound(int index) {
+                results.add(index + ": none");
+            }
+        });
+        assertEquals(Arrays.asList("0: none", "1: ayc a", "2: none", "3: abc", "4: abc", "5: none", "6: abx d",
+                "7: ayc z", "8: b", "9: b"), results);
+
+        results.clear();
+        trie.getAll(Collections.emptyList(), (index, element) -> results.add(element.getElement()));
+        assertTrue(results.isEmpty());
+    }
+
+    @Test
+    public void batchLookupRejectsUnsortedBatches() {
+        PathTrie<String> trie = PathTrie.<String>newBuilder().put("a/:x", "ax").put("b", "b").build();
+        List<String> results = new ArrayList<>();
+        shouldThrow(() -> trie.getAll(Arrays.asList("a/1", "b", "a/2"), (index, element) -> results.add("found")));
+        shouldThrow(() -> trie.getAll(Arrays.asList("a/1", "a/"), (index, element) -> results.add("found")));
+        shouldThrow(() -> PathTrie.<String>empty().getAll(Arrays.asList("b", "a"),
+                (index, element) -> results.add("found")));
+        assertTrue("No results are reported for unsorted batches", results.isEmpty());
+    }
+
+    @Test
+    public void canCountPathsByTemplateInParallel() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder(CATCH_ALL)
+                .put("users", 1)
+                .put("users/:id<int>", 2)
+                .put("users/:name", 3)
+                .put("files/*path", 4)
+                .put("unused", 5)
+                .build();
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            paths.add("users/" + i);
+            paths.add("users/joe" + i);
+            paths.add("files/a/b/" + i);
+            paths.add("wrong/" + i);
+        }
+        paths.add("users");
+
+        Map<String, Long> expected = new LinkedHashMap<>();
+        expected.put("users", 1L);
+        expected.put("users/:id<int>", 1000L);
+        expected.put("users/:name", 1000L);
+        expected.put("files/*path", 1000L);
+
+        assertEquals(expected, paths.parallelStream().collect(PathTrieCollectors.countingByTemplate(trie)));
+        assertEquals(expected, paths.stream().collect(PathTrieCollectors.countingByTemplate(
+                PathTrieProfiler.profile(trie))));
+        assertEquals(Collections.emptyMap(), paths.stream().collect(
+                PathTrieCollectors.countingByTemplate(PathTrie.empty())));
+    }
+
+    @Test
+    public void canCountPathsByTemplateOfMethodRoutes() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder()
+                .put(HttpMethod.GET, "users/:id", 1)
+                .put(HttpMethod.DELETE, "users/:id", 2)
+                .put(HttpMethod.POST, "users", 3)
+                .put("users/:id/avatar", 4)
+                .build();
+        List<String> paths = Arrays.asList("users/1", "users", "users/2/avatar", "users/3", "users/4/other");
+
+        Map<String, Long> expected = new LinkedHashMap<>();
+        expected.put("users", 1L);
+        expected.put("users/:id", 2L);
+        expected.put("users/:id/avatar", 1L);
+
+        assertEquals(expected, paths.stream().collect(PathTrieCollectors.countingByTemplate(trie)));
+        assertEquals(expected, paths.stream().collect(PathTrieCollectors.countingByTemplate(
+                PathTrieHolder.of(trie))));
+    }
+
+    @Test
+    public void onlyTriesCreatedByBuilderCanBeCountedByTemplate() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder().put("a", 1).build();
+        PathTrie<Integer> custom = new PathTrie<Integer>() {
+            @Override
+            public Optional<Integer> get(String path) {
+                return trie.get(path);
+            }
+
+            @Override
+            public Optional<ParameterizedElement<Integer>> getParameterized(String path) {
+                return trie.getParameterized(path);
+            }
+
+            @Override
+            public Optional<PathTrie<Integer>> getChild(String path) {
+                return trie.getChild(path);
+            }
+        };
+        shouldThrow(() -> PathTrieCollectors.countingByTemplate(custom));
+    }
+
+    @Test
+    public void cursorDescendsOnePartAtATime() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder(CATCH_ALL)
+                .put("src/main/:lang", 1)
+                .put("src/test/:lang/*file", 2)
+                .build();
+        PathCursor<Integer> cursor = PathCursor.of(trie);
+        assertTrue(cursor.descend("src"));
+        assertFalse(cursor.hasElement());
+        assertFalse("Dead end", cursor.descend("docs"));
+        cursor.backtrack();
+        assertTrue(cursor.descend(new StringBuilder("main")));
+        assertTrue(cursor.descend("java"));
+        assertTrue(cursor.hasElement());
+        assertEquals(Integer.valueOf(1), cursor.element().getElement());
+        assertEquals("java", cursor.element().param("lang"));
+        assertFalse(cursor.descend("Foo.java"));
+        assertFalse(cursor.hasElement());
+        shouldThrow(cursor::element);
+
+        cursor.backtrack();
+        cursor.backtrack();
+        cursor.backtrack();
+        assertTrue(cursor.descend("test"));
+        assertTrue(cursor.descend("kotlin"));
+        assertTrue(cursor.descend("a"));
+        assertTrue(cursor.descend("B.kt"));
+        assertEquals(5, cursor.depth());
+        ParameterizedElement<Integer> element = cursor.element();
+        assertEquals(Integer.valueOf(2), element.getElement());
+        assertEquals("kotlin", element.param("lang"));
+        assertEquals("a/B.kt", element.param("file"));
+
+        cursor.reset();
+        assertEquals(0, cursor.depth());
+        shouldThrow(cursor::backtrack);
+    }
+
+    @Test
+    public void cursorBacktracksLikeLookups() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder(CATCH_ALL)
+                .put("a/b/c", 1)
+                .put("a/:x/d", 2)
+                .put(":y/b/d", 3)
+                .put("a/*rest", 4)
+                .put("n/:i<int>/:j<int>", 5)
+                .put("n/:s/x", 6)
+                .build();
+        PathCursor<Integer> cursor = PathCursor.of(trie);
+        cursor.descend("a");
+        cursor.descend("b");
+        // the literal branch wins while it has an element
+        assertEquals("4 [b]", describe(cursor));
+        cursor.descend("c");
+        assertEquals("1 []", describe(cursor));
+        cursor.backtrack();
+        // a miss under the literal branch falls back to the parameter, then to the catch-all, as lookups do
+        cursor.descend("d");
+        assertEquals("2 [b]", describe(cursor));
+        cursor.backtrack();
+        cursor.descend("e");
+        assertEquals("4 [b/e]", describe(cursor));
+        cursor.descend("f");
+        assertEquals("4 [b/e/f]", describe(cursor));
+        for (String path : Arrays.asList("a/b/c", "a/b/d", "a/b/e", "a/b/e/f")) {
+            assertEquals(path, trie.getParameterized(path).map(PathTrieTest::describe).get(), describe(
+                    cursorAt(trie, path)));
+        }
+        assertEquals(Optional.of(3), trie.get("b/b/d"));
+        assertEquals("3 [b]", describe(cursorAt(trie, "b/b/d")));
+
+        // typed values parsed for a previous part are not kept after backtracking
+        cursor.reset();
+        cursor.descend("n");
+        cursor.descend("1");
+        cursor.descend("2");
+        assertEquals("5 [1, 2]", describe(cursor));
+        cursor.backtrack();
+        cursor.descend("x");
+        assertEquals("6 [1]", describe(cursor));
+        cursor.backtrack();
+        cursor.backtrack();
+        cursor.descend("7");
+        cursor.descend("8");
+        assertEquals("5 [7, 8]", describe(cursor));
+        cursor.backtrack();
+        cursor.backtrack();
+        assertTrue(cursor.descend("y"));
+        assertFalse(cursor.descend("2"));
+        assertEquals(Optional.empty(), trie.get("n/y/2"));
+    }
+
+    @Test
+    public void cursorKeepsEveryCandidateOfAmbiguousParts() {
+        PathTrieBuilder<Integer> builder = PathTrie.<Integer>newBuilder(CATCH_ALL).ignoringCase();
+        // more candidates than the initial capacity of a frame, each only matching at the last part
+        builder.put("Item/:a<int>/:b<int>/1", 1)
+                .put("item/:a<int>/:b/2", 2)
+                .put("item/:a/:b<int>/3", 3)
+                .put("item/:a/:b/4", 4)
+                .put("item/*rest", 5)
+                .put(":k/:a<int>/:b<int>/6", 6);
+        PathTrie<Integer> trie = builder.build();
+        for (int last = 1; last <= 7; last++) {
+            String path = "ITEM/10/20/" + last;
+            assertEquals(path, trie.getParameterized(path).map(PathTrieTest::describe).get(),
+                    describe(cursorAt(trie, path)));
+        }
+        // the catch-all under the literal part wins over the parameter at the root
+        assertEquals("5 [10/20/6]", describe(cursorAt(trie, "ITEM/10/20/6")));
+        assertEquals("5 [10/20/7]", describe(cursorAt(trie, "ITEM/10/20/7")));
+
+        // unlike lookups, cursors do not ignore trailing empty parts
+        PathCursor<Integer> cursor = cursorAt(trie, "other/1/2/6");
+        assertEquals("6 [other, 1, 2]", describe(cursor));
+        assertFalse(cursor.descend(""));
+        assertFalse(cursor.hasElement());
+        assertEquals(Optional.of(6), trie.get("other/1/2/6/"));
+
+        PathCursor<Integer> profiled = PathCursor.of(PathTrieProfiler.profile(trie));
+        profiled.descend("item");
+        profiled.descend("x");
+        assertEquals("5 [x]", describe(profiled));
+    }
+
+    private static PathCursor<Integer> cursorAt(PathTrie<Integer> trie, String path) {
+        PathCursor<Integer> cursor = PathCursor.of(trie);
+        for (String part : path.split("/", -1)) {
+            cursor.descend(part);
+        }
+        return cursor;
+    }
+
+    private static String describe(PathCursor<Integer> cursor) {
+        return cursor.hasElement() ? describe(cursor.element()) : "none";
+    }
+
+    private static String describe(ParameterizedElement<Integer> element) {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < element.getParameterCount(); i++) {
+            values.add(element.param(i));
+        }
+        return element.getElement() + " " + values;
+    }
+
+    @Test
+    public void canLookUpFileSystemPaths() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder(CATCH_ALL)
+                .put("src/main/:lang", 1)
+                .put("src/test/*file", 2)
+                .put(Paths.get("src", ":lang", "*file"), 3)
+                .build();
+        assertEquals(Optional.of(1), trie.get(Paths.get("src", "main", "java")));
+        assertEquals(Optional.of(1), trie.get(Paths.get("src/main/java").toAbsolutePath().getRoot()
+                .resolve("src/main/java")));
+        assertEquals(Optional.of(2), trie.get(Paths.get("src/test/a/B.java")));
+        assertEquals("a/B.java", trie.getParameterized(Paths.get("src/test/a/B.java")).get().param("file"));
+        assertFalse(trie.get(Paths.get("src/main")).isPresent());
+        assertFalse(trie.get(Paths.get("src/docs/index.md")).isPresent());
+        // names of paths are literal parts
+        assertEquals(Optional.of(3), trie.get(Paths.get("src/:lang/*file")));
+        assertFalse(trie.get(Paths.get("src/java/a")).isPresent());
+
+        PathTrie<Integer> dotTrie = PathTrie.<Integer>newBuilder(PathSplitter.newBuilder().splitOn(".").build())
+                .put(Paths.get("a", "b"), 3)
+                .build();
+        assertEquals(Optional.of(3), dotTrie.get("a.b"));
+        assertEquals(Optional.of(3), dotTrie.get(Paths.get("a/b")));
+    }
+
+    @Test
+    public void canLookUpPathsGivenAsBytes() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder()
+                .put("users/:id<int>", 1)
+                .put("caf\u00e9/:name", 2)
+                .build();
+        byte[] request = "GET /users/42 HTTP/1.1".getBytes(StandardCharsets.UTF_8);
+        ParameterizedElement<Integer> element = trie.getParameterized(request, 5, 8).get();
+        assertEquals(Integer.valueOf(1), element.getElement());
+        assertEquals(42, element.paramInt(0));
+        assertEquals("42", element.param("id"));
+        assertFalse(trie.get(request, 5, 6).isPresent());
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(32);
+        buffer.put("caf\u00e9/cr\u00e8me".getBytes(StandardCharsets.UTF_8)).flip();
+        assertEquals("cr\u00e8me", trie.getParameterized(buffer).get().param("name"));
+        assertEquals(0, buffer.position());
+        assertFalse(trie.get(ByteBuffer.wrap("caf\u00c3\u00a9/x".getBytes(StandardCharsets.UTF_8))).isPresent());
+        assertEquals(Optional.of(2), trie.get(ByteBuffer.wrap("caf\u00e9/x".getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void byteLookupsOfNonAsciiPathsMatchTheSameAsStringLookups() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder(CATCH_ALL)
+                .put("ab", 1)
+                .put("\u00e9", 2)
+                .put("\ud83d\ude00/:x", 3)
+                .put("files/*path", 4)
+                .put("n/:i<int>", 5)
+                .put("n/:s", 6)
+                .put("ab/:y/\u65e5", 7)
+                .build();
+        // keys with the same number of bytes but not of chars, keys made of surrogate pairs, parameters and
+        // catch-alls spanning multi-byte chars, and digits which are not ASCII
+        String[] paths = {"ab", "\u00e9", "\u00c3\u00a9", "\ud83d\ude00/\u00e9", "\ud83d\ude00",
+                "files/\u65e5\u672c/x", "n/4\u00b2", "n/\u0664", "ab/\u00e9/\u65e5", "ab/\u00e9/\u65e6", "abc"};
+        String[] expected = {"1 []", "2 []", "none", "3 [\u00e9]", "none", "4 [\u65e5\u672c/x]", "6 [4\u00b2]",
+                "6 [\u0664]", "7 [\u00e9]", "none", "none"};
+        for (int i = 0; i < paths.length; i++) {
+            String path = paths[i];
+            assertEquals(path, expected[i], trie.getParameterized(path).map(PathTrieTest::describe).orElse("none"));
+            byte[] bytes = ("GET " + path + " HTTP/1.1").getBytes(StandardCharsets.UTF_8);
+            int length = path.getBytes(StandardCharsets.UTF_8).length;
+            assertEquals(path, expected[i],
+                    trie.getParameterized(bytes, 4, length).map(PathTrieTest::describe).orElse("none"));
+            ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+            direct.put(bytes).position(4).limit(4 + length);
+            assertEquals(path, expected[i], trie.getParameterized(direct).map(PathTrieTest::describe).orElse("none"));
+            assertEquals(4, direct.position());
+        }
+    }
+
+    @Test
+    public void byteLookupsMatchNonAsciiSeparators() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder(PathSplitter.newBuilder().splitOn("\u00b7").build())
+                .put("a\u00b7:b", 1)
+                .put("\u00e9\u00b7c", 2)
+                .build();
+        // the separator shares its first byte with the other chars of the Latin-1 Supplement block
+        assertEquals("1 [\u00e9]", describe(trie.getParameterized(bytes("a\u00b7\u00e9")).get()));
+        assertEquals(Optional.of(2), trie.get(bytes("\u00e9\u00b7c")));
+        assertFalse(trie.get(bytes("a\u00c2\u00b7b")).isPresent());
+        assertFalse(trie.get(bytes("a\u00b8b")).isPresent());
+    }
+
+    @Test
+    public void malformedBytesNeverMatchLiteralParts() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder()
+                .put("\ufffd/x", 1)
+                .put("p/:v", 2)
+                .build();
+        byte[] malformed = {(byte) 0xC3, '/', 'x'};
+        assertEquals(Optional.of(1), trie.get(new String(malformed, StandardCharsets.UTF_8)));
+        assertFalse(trie.get(malformed, 0, malformed.length).isPresent());
+        byte[] parameter = {'p', '/', (byte) 0xC3, 'a'};
+        assertEquals("\ufffda", trie.getParameterized(parameter, 0, parameter.length).get().param("v"));
+    }
+
+    private static ByteBuffer bytes(String path) {
+        return ByteBuffer.wrap(path.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void canLookUpRawRequestTargets() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder(CATCH_ALL)
+                .put("/users/:name", 1)
+                .put("/files/*path", 2)
+                .put("/caf\u00e9", 3)
+                .build();
+        assertEquals("joe", trie.getByRequestTarget("/users/joe?page=2").get().param("name"));
+        assertEquals("jo\u00e3o", trie.getByRequestTarget("//users///jo%C3%A3o#top").get().param("name"));
+        assertEquals("a/b c", trie.getByRequestTarget("/users/a%2Fb%20c").get().param("name"));
+        assertEquals("a/b", trie.getByRequestTarget("/files//a//b?x=/c").get().param("path"));
+        assertEquals(Optional.of(3), trie.getByRequestTarget("/caf%c3%a9").map(ParameterizedElement::getElement));
+        assertEquals(Optional.of(1), trie.getByRequestTarget("/%75sers/joe").map(ParameterizedElement::getElement));
+        assertEquals("100%", trie.getByRequestTarget("/users/100%").get().param("name"));
+        assertFalse(trie.getByRequestTarget("/users%2Fjoe").isPresent());
+        assertFalse(trie.getByRequestTarget("?/users/joe").isPresent());
+    }
+
+    @Test
+    public void requestTargetsMixingEscapesWithNonAsciiCharsAreDecodedConsistently() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder(CATCH_ALL)
+                .put("/caf\u00e9/\u00e9", 1)
+                .put("/caf\u00e9/:x", 2)
+                .put("/\u00e9/caf\u00e9", 3)
+                .put("/\ud83d\ude00/*rest", 4)
+                .build();
+        assertEquals(Optional.of(1), trie.getByRequestTarget("/caf%C3%A9/\u00e9").map(ParameterizedElement::getElement));
+        assertEquals(Optional.of(1), trie.getByRequestTarget("/caf\u00e9/%C3%A9").map(ParameterizedElement::getElement));
+        assertEquals(Optional.of(1), trie.getByRequestTarget("/caf\u00e9//\u00e9").map(ParameterizedElement::getElement));
+        assertEquals(Optional.of(3), trie.getByRequestTarget("/\u00e9/caf%c3%a9?q=\u00e9").map(ParameterizedElement::getElement));
+        assertEquals("\u00e8\u00e9", trie.getByRequestTarget("/caf%C3%A9/\u00e8%C3%A9").get().param("x"));
+        assertEquals("\u65e5\u672c", trie.getByRequestTarget("/caf%C3%A9/\u65e5%E6%9C%AC").get().param("x"));
+        // lone surrogates are encoded as '?', as by String.getBytes
+        assertEquals("a?", trie.getByRequestTarget("/caf%C3%A9/a\ud83d").get().param("x"));
+        ParameterizedElement<Integer> element = trie.getByRequestTarget("/%F0%9F%98%80/\ud83d\ude00//a%20b").get();
+        assertEquals(Integer.valueOf(4), element.getElement());
+        assertEquals("\ud83d\ude00/a b", element.param("rest"));
+        assertEquals(Optional.of(4), trie.getByRequestTarget("/\ud83d\ude00/%F0%9F%98%80")
+                .map(ParameterizedElement::getElement));
+        assertFalse(trie.getByRequestTarget("/caf%C3/\u00e9").isPresent());
+
+        PathTrie<Integer> dotTrie = PathTrie.<Integer>newBuilder(PathSplitter.newBuilder().splitOn("\u00b7").build())
+                .put("a\u00b7:b", 1)
+                .build();
+        assertEquals("\u00e9", dotTrie.getByRequestTarget("a\u00b7\u00b7%C3%A9").get().param("b"));
+        assertEquals("caf\u00e9", dotTrie.getByRequestTarget("a\u00b7caf%C3%A9").get().param("b"));
+        // percent-encoded separators do not separate parts, even if not ASCII
+        assertFalse(dotTrie.getByRequestTarget("a%C2%B7%C3%A9").isPresent());
+    }
+
+    @Test
+    public void canIgnoreCase() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder(CATCH_ALL)
+                .put("Users/:name", 1)
+                .put("users/:name/Posts", 2)
+                .put("Files/*path", 3)
+                .put("Example.com", "Stra\u00dfe/:name", 4)
+                .ignoringCase()
+                .build();
+        ParameterizedElement<Integer> element = trie.getParameterized("USERS/Joe").get();
+        assertEquals(Integer.valueOf(1), element.getElement());
+        assertEquals("Joe", element.param("name"));
+        assertEquals(Optional.of(2), trie.get("uSeRs/Joe/posts"));
+        assertEquals("A/B", trie.getParameterized("files/A/B").get().param("path"));
+        assertEquals(Optional.of(4), trie.get("EXAMPLE.com", "STRA\u00dfE/x"));
+        assertEquals(Optional.of(1), trie.get("USERS/Joe".getBytes(StandardCharsets.UTF_8), 0, 9));
+        assertEquals("Joe", trie.getByRequestTarget("%55sers//Joe?x").get().param("name"));
+        assertFalse(trie.get("userss/Joe").isPresent());
+
+        shouldThrow(() -> PathTrie.<Integer>newBuilder()
+                .put("a/B", 1)
+                .put("A/b", 2)
+                .ignoringCase()
+                .build());
+    }
+
+    @Test
+    public void ignoringCaseFoldsCharsWhichAreNotAscii() {
+        // the Kelvin sign, the long s and the final sigma are equal ignoring case to chars which have another length
+        // in UTF-8, and the dotted capital I and the dotless i to an ASCII letter
+        String[] paths = {"caf\u00e9/Jos\u00c9", "Caf\u00c9/x", "\u212aEY/\u03a3", "key/\u03c2", "\u0130",
+                "\u0131", "\u017f/X", "\u00df/x", "ss/x", "caf\u00c3\u00a9/x"};
+        String[] expected = {"1 [Jos\u00c9]", "1 [x]", "2 []", "2 []", "3 []", "3 []", "4 []", "none", "none",
+                "none"};
+        for (int variant = 0; variant < 4; variant++) {
+            PathTrieBuilder<Integer> builder = PathTrie.<Integer>newBuilder()
+                    .put("CAF\u00c9/:name", 1)
+                    .put("key/\u03c3", 2)
+                    .put("i", 3)
+                    .put("s/x", 4)
+                    .ignoringCase();
+            if (variant == 1) {
+                builder.withPrefilter();
+            } else if (variant == 2) {
+                builder.sorted();
+            }
+            PathTrie<Integer> trie = variant == 3 ? PathTrieCompiler.compile(builder.build()) : builder.build();
+            for (int i = 0; i < paths.length; i++) {
+                String path = paths[i];
+                String message = "Path '" + path + "' in variant " + variant;
+                assertEquals(message, expected[i],
+                        trie.getParameterized(path).map(PathTrieTest::describe).orElse("none"));
+                assertEquals(message, expected[i],
+                        trie.getParameterized(bytes(path)).map(PathTrieTest::describe).orElse("none"));
+                assertEquals(message, expected[i],
+                        trie.getByRequestTarget(percentEncoded(path)).map(PathTrieTest::describe).orElse("none"));
+            }
+        }
+    }
+
+    /**
+     * @return the path with the bytes of chars which are not ASCII percent-encoded
+     */
+    private static String percentEncoded(String path) {
+        StringBuilder result = new StringBuilder();
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            if (b >= 0) {
+                result.append((char) b);
+            } else {
+                result.append(String.format("%%%02X", b & 0xFF));
+            }
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void memoizedFunctionsAreOnlyCalledForNewParameters() {
+        AtomicInteger calls = new AtomicInteger();
+        Memoized.Memoized0<String> index = Memoized.of(() -> "index " + calls.incrementAndGet());
+        Memoized.Memoized2<String> page = Memoized.of((a, b) -> a + b + calls.incrementAndGet(), 2);
+        PathTrie<String> trie = PathTrie.<String>newBuilder()
+                .putFun("index", index)
+                .putFun(":a/:b", page)
+                .build();
+        assertEquals(Optional.of("index 1"), trie.get("index"));
+        assertEquals(Optional.of("index 1"), trie.get("index"));
+        assertEquals(1L, index.stats().missCount());
+        assertEquals(1L, index.stats().hitCount());
+
+        assertEquals(Optional.of("xy2"), trie.get("x/y"));
+        assertEquals(Optional.of("xy2"), trie.get("x/y"));
+        assertEquals(Optional.of("yx3"), trie.get("y/x"));
+        // "x/y" was used since it was cached, so "y/x" is evicted instead
+        assertEquals(Optional.of("zz4"), trie.get("z/z"));
+        assertEquals(Optional.of("xy2"), trie.get("x/y"));
+        assertEquals(Optional.of("yx5"), trie.get("y/x"));
+
+        Memoized.Stats stats = page.stats();
+        assertEquals(2L, stats.hitCount());
+        assertEquals(4L, stats.missCount());
+        assertEquals(2L, stats.evictionCount());
+        assertEquals(2L, stats.size());
+        assertEquals("Stats{hits=2, misses=4, evictions=2, size=2, hitRate=0.33}", stats.toString());
+        shouldThrow(() -> Memoized.of(a -> a, 0));
+    }
+
+    @Test
+    public void memoizedFunctionsTellParametersApart() {
+        AtomicInteger calls = new AtomicInteger();
+        Memoized.Memoized3<String> three = Memoized.of((a, b, c) -> a + "|" + b + "|" + c, 10);
+        Memoized.Memoized4<String> four = Memoized.of((a, b, c, d) -> a + b + c + d + calls.incrementAndGet(), 10);
+        PathTrie<String> trie = PathTrie.<String>newBuilder()
+                .putFun("three/:a/:b/:c", three)
+                .putFun("four/:a/:b/:c/:d", four)
+                .build();
+
+        // the same characters split differently between parameters are different keys
+        assertEquals(Optional.of("ab|c|d"), trie.get("three/ab/c/d"));
+        assertEquals(Optional.of("a|bc|d"), trie.get("three/a/bc/d"));
+        assertEquals(Optional.of("ab|c|d"), trie.get("three/ab/c/d"));
+        assertEquals(1L, three.stats().hitCount());
+        assertEquals(2L, three.stats().missCount());
+
+        assertEquals(Optional.of("abcd1"), trie.get("four/a/b/c/d"));
+        assertEquals(Optional.of("dcba2"), trie.get("four/d/c/b/a"));
+        assertEquals(Optional.of("abcd1"), trie.get("four/a/b/c/d"));
+        assertEquals(Optional.of("abce3"), trie.get("four/a/b/c/e"));
+        assertEquals(1L, four.stats().hitCount());
+        assertEquals(3L, four.stats().size());
+    }
+
+    @Test
+    public void canSwapTriesHeldInHolder() {
+        PathTrieHolder<Integer> holder = PathTrieHolder.of(PathTrie.<Integer>newBuilder()
+                .put("a/:b", 1)
+                .build(), 8);
+        assertEquals(1L, holder.version());
+        assertFalse(holder.lastSwap().isPresent());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Optional.of(1), holder.get("a/" + (i % 10)));
+        }
+
+        assertEquals(2L, holder.swap(PathTrie.<Integer>newBuilder()
+                .put("a/:b", 2)
+                .build()));
+        assertEquals(2L, holder.version());
+        assertEquals(Optional.of(2), holder.get("a/x"));
+        assertEquals("x", holder.getParameterized("a/x").get().param("b"));
+
+        PathTrieHolder.SwapMetrics metrics = holder.lastSwap().get();
+        assertEquals(2L, metrics.version());
+        assertEquals(PathTrieHolder.DEFAULT_WARM_UP_LOOKUPS, metrics.warmUpLookups());
+        assertTrue(metrics.swapNanos() > 0L);
+        assertEquals(2, metrics.postSwapLookups());
+        assertTrue(metrics.postSwapP99Nanos() >= 0L);
+
+        assertFalse(holder.compareAndSwap(1L, PathTrie.empty()));
+        assertEquals(Optional.of(2), holder.get("a/x"));
+        assertTrue(holder.compareAndSwap(2L, PathTrie.<Integer>newBuilder()
+                .put("a/b", 3)
+                .build()));
+        assertEquals(3L, holder.version());
+        assertEquals(Optional.of(3), holder.get("a/b"));
+        assertFalse(holder.get("a/x").isPresent());
+        assertFalse(PathTrieHolder.of(PathTrie.empty()).lastSwap().isPresent());
+
+        shouldThrow(() -> PathTrieHolder.of(PathTrie.empty(), 0));
+    }
+
+    @Test
+    public void lastSwapAlwaysDescribesCurrentVersion() throws InterruptedException {
+        PathTrieHolder<Integer> holder = PathTrieHolder.of(PathTrie.empty());
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int value = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 200; i++) {
+                    holder.swap(PathTrie.<Integer>newBuilder().put("a", value).build(), 0);
+                    long version = holder.lastSwap().get().version();
+                    assertTrue(version <= holder.version());
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(801L, holder.version());
+        assertEquals(holder.version(), holder.lastSwap().get().version());
+    }
+
+    @Test
+    public void canDiffTries() {
+        PathTrie<String> before = PathTrie.<String>newBuilder(CATCH_ALL)
+                .put("users/:id", "user")
+                .put("users/:id/posts", "posts")
+                .put(HttpMethod.DELETE, "users/:id", "delete")
+                .put(":tenant.example.com", "status", "status")
+                .put("docs/*page", "docs")
+                .build();
+        PathTrie<String> after = PathTrie.<String>newBuilder(CATCH_ALL)
+                .put("users/:id", "user")
+                .put("users/:id/posts", "all posts")
+                .put("users/:id<int>/friends", "friends")
+                .put(":tenant.example.com", "status", "status")
+                .put("docs/*page", "docs")
+                .build();
+
+        List<String> changes = before.diff(after).map(RouteChange::toString).collect(Collectors.toList());
+        assertEquals(Arrays.asList(
+                "REMOVED DELETE users/:id",
+                "CHANGED users/:id/posts",
+                "ADDED users/:id<int>/friends"), changes);
+
+        RouteChange<String> change = before.diff(after).skip(1).findFirst().get();
+        assertEquals(RouteChange.Kind.CHANGED, change.getKind());
+        assertEquals(Optional.of("posts"), change.getBefore());
+        assertEquals(Optional.of("all posts"), change.getAfter());
+        assertFalse(change.getMethod().isPresent());
+        assertFalse(change.getHost().isPresent());
+
+        List<String> hostChanges = PathTrie.<String>empty().diff(after)
+                .filter(c -> c.getHost().isPresent())
+                .map(c -> c.getHost().get() + " " + c.getTemplate())
+                .collect(Collectors.toList());
+        assertEquals(Collections.singletonList(":tenant.example.com status"), hostChanges);
+
+        assertEquals(0L, after.diff(after).count());
+        assertEquals(0L, after.diff(PathTrieProfiler.profile(after)).count());
+        assertEquals(5L, after.diff(PathTrie.empty()).filter(c -> c.getKind() == RouteChange.Kind.REMOVED).count());
+    }
+
+    @Test
+    public void diffPairsParametersAndLiteralsByTemplate() {
+        PathTrie<String> before = PathTrie.<String>newBuilder(CATCH_ALL)
+                .put("files/:path", "files")
+                .put("x/:id", "x")
+                .put("y/:a/:b", "y")
+                .put("a/b/c", "c")
+                .put("Users/:id", "users")
+                .put("api.example.com", "status", "status")
+                .put("same", new String("same"))
+                .build();
+        PathTrie<String> after = PathTrie.<String>newBuilder(CATCH_ALL)
+                .put("files/*path", "files")
+                .put("x/:id<int>", "x")
+                .put("y/:a/:c", "y")
+                .put(HttpMethod.GET, "a/b/c", "c")
+                .put("users/:id", "users")
+                .put("www.example.com", "status", "status")
+                .put("same", new String("same"))
+                .build();
+        // parameters of another name, type or kind are other routes, as are nodes without elements on the way
+        assertEquals(Arrays.asList(
+                "REMOVED files/:path",
+                "ADDED files/*path",
+                "REMOVED x/:id",
+                "ADDED x/:id<int>",
+                "REMOVED y/:a/:b",
+                "ADDED y/:a/:c",
+                "REMOVED a/b/c",
+                "ADDED GET a/b/c",
+                "REMOVED Users/:id",
+                "ADDED users/:id",
+                "REMOVED api.example.com status",
+                "ADDED www.example.com status"),
+                before.diff(after).map(RouteChange::toString).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void diffPairsKeysOfTriesWithDifferentCaseSensitivityByTemplate() {
+        PathTrie<String> caseSensitive = PathTrie.<String>newBuilder()
+                .put("users/:id", "user")
+                .put("USERS/:id", "other user")
+                .put("Files", "files")
+                .build();
+        PathTrie<String> ignoringCase = PathTrie.<String>newBuilder()
+                .put("Users/:id", "user")
+                .put("files", "files")
+                .ignoringCase()
+                .build();
+        // keys are folded when ignoring case, so templates are only the same as those of lower case keys
+        assertEquals(Arrays.asList("REMOVED USERS/:id", "REMOVED Files", "ADDED files"),
+                caseSensitive.diff(ignoringCase).map(RouteChange::toString).collect(Collectors.toList()));
+        assertEquals(Arrays.asList("REMOVED files", "ADDED USERS/:id", "ADDED Files"),
+                ignoringCase.diff(caseSensitive).map(RouteChange::toString).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void diffSkipsNodesSharedByBothTries() {
+        AtomicInteger comparisons = new AtomicInteger();
+        class Counted {
+            @Override
+            public boolean equals(Object other) {
+                comparisons.incrementAndGet();
+                return other instanceof Counted;
+            }
+
+            @Override
+            public int hashCode() {
+                return 0;
+            }
+        }
+        Supplier<PathTrie<Object>> newBase = () -> {
+            PathTrieBuilder<Object> builder = PathTrie.newBuilder();
+            for (int i = 0; i < 100; i++) {
+                builder.put("base/" + i + "/:id", new Counted());
+            }
+            return builder.build();
+        };
+        PathTrie<Object> base = newBase.get();
+        PathTrie<Object> derived = PathTrie.merge(base, PathTrie.newBuilder().put("extra/:id", new Counted()).build());
+        assertEquals(Collections.singletonList("ADDED extra/:id"),
+                base.diff(derived).map(RouteChange::toString).collect(Collectors.toList()));
+        assertEquals(0, comparisons.get());
+
+        // tries built separately share no nodes, so all of their elements are compared
+        assertEquals(0L, base.diff(newBase.get()).count());
+        assertEquals(100, comparisons.get());
+    }
+
+    @Test
+    public void canMountAndMergeTries() {
+        PathTrie<String> users = PathTrie.<String>newBuilder()
+                .put("users", "users")
+                .put("users/:id", "user")
+                .build();
+        PathTrie<String> posts = PathTrie.<String>newBuilder()
+                .put("posts/:post", "post")
+                .putFun("posts/:post/likes", post -> "likes " + post)
+                .build();
+        PathTrie<String> statusTrie = PathTrie.<String>newBuilder()
+                .put("status", "ok")
+                .put("api.example.com", "status", "api ok")
+                .build();
+
+        PathTrie<String> trie = PathTrie.merge(statusTrie, PathTrie.<String>empty()
+                .mount("api/:tenant", users)
+                .mount("api/v1", posts));
+        assertEquals(Optional.of("ok"), trie.get("status"));
+        assertEquals(Optional.of("api ok"), trie.get("api.example.com", "status"));
+        assertEquals(Optional.of("users"), trie.get("api/acme/users"));
+        assertEquals(Optional.of("user"), trie.get("api/acme/users/10"));
+        assertEquals("acme", trie.getParameterized("api/acme/users/10").get().param("tenant"));
+        assertEquals("10", trie.getParameterized("api/acme/users/10").get().param("id"));
+        assertEquals(Optional.of("post"), trie.get("api/v1/posts/1"));
+        assertEquals(Optional.of("likes 1"), trie.get("api/v1/posts/1/likes"));
+        assertFalse(trie.get("users").isPresent());
+
+        // the sub-tries are grafted, not copied
+        assertEquals(0L, posts.diff(trie.getChild("api/v1").get()).count());
+
+        // parameters anywhere in the prefix are parameters, as if the routes were put with the prefix
+        PathTrie<String> tenants = PathTrie.<String>empty()
+                .mount(":tenant/api", users)
+                .mount(":region<int>/:tenant/api", users);
+        assertEquals(Optional.of("user"), tenants.get("acme/api/users/10"));
+        assertEquals("acme", tenants.getParameterized("acme/api/users/10").get().param("tenant"));
+        assertEquals(Optional.of("users"), tenants.get("acme/api/users"));
+        assertEquals(Optional.of("users"), tenants.get("7/acme/api/users"));
+        assertEquals(7, tenants.getParameterized("7/acme/api/users/10").get().paramInt(0));
+        assertEquals(0L, tenants.diff(PathTrie.<String>newBuilder()
+                .put(":tenant/api/users", "users")
+                .put(":tenant/api/users/:id", "user")
+                .put(":region<int>/:tenant/api/users", "users")
+                .put(":region<int>/:tenant/api/users/:id", "user")
+                .build()).count());
+
+        shouldThrow(() -> PathTrie.merge(users, PathTrie.<String>newBuilder().put("users", "other").build()));
+        shouldThrow(() -> PathTrie.merge(users, PathTrie.<String>newBuilder().put("users/:name", "name").build()));
+        shouldThrow(() -> PathTrie.<String>empty().mount("teams/:id", users));
+        shouldThrow(() -> PathTrie.<String>empty().mount("docs/*page",
+                PathTrie.<String>newBuilder(CATCH_ALL).put("x", "x").build()));
+        shouldThrow(() -> PathTrie.<String>empty().mount("api", statusTrie));
+        // functions would not take the parameters of the prefix
+        shouldThrow(() -> PathTrie.<String>empty().mount("api/:tenant", posts));
+    }
+
+    @Test
+    public void mergeCombinesNodesFoundInBothTries() {
+        PathTrie<String> first = PathTrie.<String>newBuilder()
+                .put(HttpMethod.GET, "users", "get")
+                .put("users/:id/a", "a")
+                .put("n/:id<int>", "int")
+                .put("h.com", "x", "hx")
+                .build();
+        PathTrie<String> second = PathTrie.<String>newBuilder()
+                .put(HttpMethod.POST, "users", "post")
+                .put("users/:id/b", "b")
+                .put("n/:name", "name")
+                .put("h.com", "y", "hy")
+                .build();
+        PathTrie<String> merged = PathTrie.merge(first, second);
+        // methods, parameters and hosts found in both tries are combined
+        assertEquals(Optional.of("get"), merged.getByMethod(HttpMethod.GET, "users").getElement()
+                .map(ParameterizedElement::getElement));
+        assertEquals(Optional.of("post"), merged.getByMethod(HttpMethod.POST, "users").getElement()
+                .map(ParameterizedElement::getElement));
+        assertEquals(MethodMatch.Status.METHOD_NOT_ALLOWED, merged.getByMethod(HttpMethod.PUT, "users").getStatus());
+        assertEquals(Optional.of("a"), merged.get("users/1/a"));
+        assertEquals(Optional.of("b"), merged.get("users/1/b"));
+        assertEquals(Optional.of("int"), merged.get("n/1"));
+        assertEquals(Optional.of("name"), merged.get("n/x"));
+        assertEquals(Optional.of("hx"), merged.get("h.com", "x"));
+        assertEquals(Optional.of("hy"), merged.get("h.com", "y"));
+
+        // an element for all methods does not clash with an element for a single method
+        PathTrie<String> withAnyMethod = PathTrie.merge(first, PathTrie.<String>newBuilder().put("users", "any").build());
+        assertEquals(Optional.of("get"), withAnyMethod.getByMethod(HttpMethod.GET, "users").getElement()
+                .map(ParameterizedElement::getElement));
+        assertEquals(Optional.of("any"), withAnyMethod.get("users"));
+
+        assertSame(first, PathTrie.merge(first, PathTrie.empty()));
+        assertSame(first, PathTrie.merge(PathTrie.empty(), first));
+        Exception error = shouldThrow(() -> PathTrie.merge(first, PathTrie.<String>newBuilder()
+                .put(HttpMethod.GET, "users", "other")
+                .build()));
+        assertEquals("Paths clash when merging tries: 'GET users'", error.getMessage());
+    }
+
+    @Test
+    public void mergeKeepsTheKindOfTheMergedTries() {
+        PathTrie<String> ignoringCase = PathTrie.merge(
+                PathTrie.<String>newBuilder().put("Users/:id", "user").ignoringCase().build(),
+                PathTrie.<String>newBuilder().put("USERS/:id/x", "x").ignoringCase().build());
+        assertEquals(Optional.of("user"), ignoringCase.get("users/1"));
+        assertEquals(Optional.of("x"), ignoringCase.get("uSeRs/1/X"));
+
+        PathTrie<String> sorted = PathTrie.merge(
+                PathTrie.<String>newBuilder().put("d", "d").put("b", "b").sorted().build(),
+                PathTrie.<String>newBuilder().put("c", "c").put("a", "a").sorted().build());
+        assertEquals(Arrays.asList("a", "b", "c", "d"),
+                sorted.entries().map(PathTrieEntry::getTemplate).collect(Collectors.toList()));
+
+        // profiled, optimized and compiled tries are merged as the tries they are made of
+        PathTrieProfiler<String> profiler = PathTrieProfiler.profile(PathTrie.<String>newBuilder()
+                .put("a", "a")
+                .put("b/:x", "b")
+                .build());
+        profiler.record("a");
+        PathTrie<String> merged = PathTrie.merge(profiler, PathTrie.merge(profiler.optimize(),
+                PathTrieCompiler.compile(PathTrie.<String>newBuilder().put("b/:x/c", "c").build())));
+        assertEquals(Optional.of("a"), merged.get("a"));
+        assertEquals(Optional.of("b"), merged.get("b/1"));
+        assertEquals(Optional.of("c"), merged.get("b/1/c"));
+        assertFalse(merged instanceof PathTrieProfiler);
+
+        PathTrie<String> plain = PathTrie.<String>newBuilder().put("z", "z").build();
+        shouldThrow(() -> PathTrie.merge(plain, PathTrie.<String>newBuilder().put("y", "y").ignoringCase().build()));
+        shouldThrow(() -> PathTrie.merge(plain, PathTrie.<String>newBuilder().put("y", "y").sorted().build()));
+        shouldThrow(() -> PathTrie.merge(plain, PathTrie.<String>newBuilder(PathSplitter.newBuilder().splitOn(".")
+                .build()).put("y", "y").build()));
+    }
+
+    @Test
+    public void graftedTriesKeepDepthsAndParametersOfTheirRoutes() {
+        PathTrie<String> files = PathTrie.<String>newBuilder(CATCH_ALL)
+                .put("files/:owner/*path", "file")
+                .withPrefilter()
+                .build();
+        PathTrie<String> status = PathTrie.<String>newBuilder(CATCH_ALL)
+                .put("a/b/c/status", "status")
+                .withPrefilter()
+                .build();
+        PathTrie<String> merged = PathTrie.merge(status, files);
+        assertTrue(merged.toString().startsWith("PathTrie [prefilter: 2 keys in 8 bytes, 0.07% false positives, " +
+                "depth 3..*]"));
+        assertEquals(Optional.of("status"), merged.get("a/b/c/status"));
+        assertEquals(Optional.of("file"), merged.get("files/joe/x/y/z"));
+        assertFalse(merged.get("a/b/c").isPresent());
+
+        PathTrie<String> mounted = status.mount("v1/:tenant", PathTrie.<String>newBuilder(CATCH_ALL)
+                .put("x", "x")
+                .put("x/y/:owner", "owner")
+                .build());
+        assertTrue(mounted.toString().startsWith("PathTrie [prefilter: 2 keys in 8 bytes, 0.07% false positives, " +
+                "depth 3..5]"));
+        assertEquals(Optional.of("x"), mounted.get("v1/acme/x"));
+        assertEquals("joe", mounted.getParameterized("v1/acme/x/y/joe").get().param("owner"));
+
+        // parameters deep in the mounted trie may clash with those of the prefix
+        Exception error = shouldThrow(() -> status.mount("v1/:owner", PathTrie.<String>newBuilder(CATCH_ALL)
+                .put("x/y/:owner", "owner")
+                .build()));
+        assertEquals("Parameter name appears more than once on same hierarchy: owner", error.getMessage());
+        error = shouldThrow(() -> status.mount("v1/:tenant", PathTrie.<String>newBuilder(CATCH_ALL)
+                .put("x/y/*tenant", "tenant")
+                .build()));
+        assertEquals("Parameter name appears more than once on same hierarchy: tenant", error.getMessage());
+    }
+
+    @Test
+    public void canQueryRoutesWithGlobs() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder()
+                .put("logs/app/2024-01/a.gz", 1)
+                .put("logs/app/2024-01/b.txt", 2)
+                .put("logs/db/2024-02/x/y/c.gz", 3)
+                .put("logs/db/2023-12/d.gz", 4)
+                .put("logs/:service/latest", 5)
+                .put(HttpMethod.GET, "logs/web/2024-03/e.gz", 6)
+                .build();
+
+        assertEquals(Arrays.asList("logs/app/2024-01/a.gz", "logs/db/2024-02/x/y/c.gz", "GET logs/web/2024-03/e.gz"),
+                trie.glob("logs/*/2024-*/**/*.gz").map(PathTrieEntry::toString).collect(Collectors.toList()));
+        assertEquals(Arrays.asList(1, 2), trie.glob("logs/app/**").map(e -> e.getElement().get())
+                .collect(Collectors.toList()));
+        assertEquals(Collections.singletonList("logs/:service/latest"),
+                trie.glob("**/:service/*").map(PathTrieEntry::getTemplate).collect(Collectors.toList()));
+        assertEquals(Arrays.asList("logs/app/2024-01/a.gz", "logs/db/2023-12/d.gz"),
+                trie.glob("logs/[!w]*/202?-[01]?/?.gz").map(PathTrieEntry::getTemplate).collect(Collectors.toList()));
+        assertEquals(6L, trie.glob("**", true).count());
+        assertEquals(0L, trie.glob("logs").count());
+        assertEquals(0L, PathTrie.empty().glob("**").count());
+        shouldThrow(() -> trie.glob("logs/[abc"));
+    }
+
+    @Test
+    public void globDoubleStarsMatchAnyNumberOfParts() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder(CATCH_ALL)
+                .put("a", 1)
+                .put("a/b", 2)
+                .put("a/a", 3)
+                .put("a/a/a", 4)
+                .put("a/:name", 5)
+                .put(HttpMethod.POST, "a/b", 6)
+                .put("example.com", "a/b", 7)
+                .build();
+
+        assertEquals(Arrays.asList("a", "a/b", "POST a/b", "a/a", "a/a/a", "a/:name"), globbed(trie, "**"));
+        assertEquals(Arrays.asList("a/b", "POST a/b"), globbed(trie, "a/**/b"));
+        assertEquals(Arrays.asList("a/b", "POST a/b"), globbed(trie, "**/**/b"));
+        assertEquals(Arrays.asList("a", "a/a", "a/a/a"), globbed(trie, "**/a"));
+        // routes reached by several positions of the pattern are found once
+        assertEquals(Arrays.asList("a", "a/b", "POST a/b", "a/a", "a/a/a", "a/:name"), globbed(trie, "**/a/**"));
+        assertEquals(Arrays.asList("a/b", "POST a/b"), globbed(trie, "a/b/**"));
+        assertEquals(Collections.emptyList(), globbed(trie, "a/b/c/**"));
+        assertEquals(Collections.singletonList("a/a/a"), globbed(trie, "*/*/*"));
+    }
+
+    @Test
+    public void globMatchesParametersAsWrittenInTemplates() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder(CATCH_ALL)
+                .put("a/b", 1)
+                .put("a/:id<int>", 2)
+                .put("a/:name", 3)
+                .put("a/*rest", 4)
+                .put("x/?", 5)
+                .build();
+
+        assertEquals(Arrays.asList("a/:id<int>", "a/:name"), globbed(trie, "a/:*"));
+        assertEquals(Collections.singletonList("a/:id<int>"), globbed(trie, "a/:id<int>"));
+        assertEquals(Collections.singletonList("a/:name"), globbed(trie, "a/:name"));
+        assertEquals(Collections.singletonList("a/*rest"), globbed(trie, "a/\\*rest"));
+        assertEquals(Collections.singletonList("a/*rest"), globbed(trie, "a/\\**"));
+        assertEquals(Collections.singletonList("a/b"), globbed(trie, "a/[!:*]"));
+        assertEquals(Collections.singletonList("x/?"), globbed(trie, "x/\\?"));
+    }
+
+    @Test
+    public void globIgnoresCaseOfTriesIgnoringCase() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder()
+                .ignoringCase()
+                .put("Users/Me", 1)
+                .put("users/:id", 2)
+                .put("Items", 3)
+                .build();
+
+        assertEquals(Collections.singletonList("users/me"), globbed(trie, "USERS/me"));
+        assertEquals(Collections.singletonList("users/me"), globbed(trie, "users/M*"));
+        assertEquals(Collections.singletonList("users/:id"), globbed(trie, "uSeRs/:ID"));
+        assertEquals(Collections.singletonList("items"), globbed(trie, "I?EMS"));
+        assertEquals(Collections.singletonList("items"), globbed(trie, "[I]tems"));
+    }
+
+    @Test
+    public void parallelGlobFindsRoutesInTheSameOrder() {
+        PathTrieBuilder<Integer> builder = PathTrie.newBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            for (int j = 0; j < 20; j++) {
+                builder.put("p" + i + "/q" + j + "/r", i * 20 + j);
+                builder.put("p" + i + "/q" + j + "/s", -1);
+                expected.add("p" + i + "/q" + j + "/r");
+            }
+        }
+        PathTrie<Integer> trie = builder.build();
+
+        assertEquals(expected, globbed(trie, "**/r"));
+        assertEquals(expected, trie.glob("**/r", true).map(PathTrieEntry::toString).collect(Collectors.toList()));
+    }
+
+    private static List<String> globbed(PathTrie<Integer> trie, String pattern) {
+        return trie.glob(pattern).map(PathTrieEntry::toString).collect(Collectors.toList());
+    }
+
+    @Test
+    public void canNavigateSortedTriesInOrder() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder(CATCH_ALL)
+                .sorted()
+                .put("c", 1)
+                .put("a/*rest", 2)
+                .put("a/:name", 3)
+                .put("a/x", 4)
+                .put("b/c", 5)
+                .put(HttpMethod.GET, "a", 6)
+                .put("a", 7)
+                .put("a/:id<int>", 8)
+                .build();
+
+        List<String> routes = Arrays.asList("a", "GET a", "a/x", "a/:id<int>", "a/:name", "a/*rest", "b/c", "c");
+        assertEquals(routes, trie.entries().map(PathTrieEntry::toString).collect(Collectors.toList()));
+        assertEquals(8L, trie.size());
+        for (int i = 0; i < routes.size(); i++) {
+            assertEquals(routes.get(i), trie.select(i).toString());
+        }
+        assertEquals(0L, trie.rank("a"));
+        assertEquals(2L, trie.rank("a/x"));
+        assertEquals(3L, trie.rank("a/y"));
+        assertEquals(6L, trie.rank("b"));
+        assertEquals(6L, trie.rank("b/c"));
+        assertEquals(7L, trie.rank("bb"));
+        assertEquals(8L, trie.rank("z"));
+        assertEquals(Arrays.asList(4, 8, 3, 2), trie.range("a/x", "b/c").map(e -> e.getElement().get())
+                .collect(Collectors.toList()));
+        assertEquals(0L, trie.range("z", "a").count());
+        shouldThrow(() -> trie.select(8));
+        shouldThrow(() -> trie.select(-1));
+
+        // tries derived from a sorted trie are sorted
+        PathTrie<Integer> merged = PathTrie.merge(trie, PathTrie.<Integer>newBuilder(CATCH_ALL).sorted().put("aa", 9).build());
+        assertEquals(9L, merged.size());
+        assertEquals("aa", merged.select(6).getTemplate());
+        assertEquals(Arrays.asList("x", ":id<int>"),
+                trie.getChild("a").get().entries().map(PathTrieEntry::getTemplate).limit(2).collect(Collectors.toList()));
+
+        PathTrie<Integer> unsorted = PathTrie.<Integer>newBuilder().put("a", 1).put("b/c", 2).build();
+        assertEquals(2L, unsorted.size());
+        assertTrue(shouldThrow(unsorted::entries) instanceof IllegalStateException);
+        shouldThrow(() -> PathTrie.merge(trie, unsorted));
+        assertEquals(0L, PathTrie.empty().size());
+        assertEquals(0L, PathTrie.empty().entries().count());
+    }
+
+    @Test
+    public void sortedTriesRankPathsAmongNestedRoutes() {
+        PathTrie<Integer> trie = PathTrie.<Integer>newBuilder(CATCH_ALL)
+                .sorted()
+                .put("a", 1)
+                .put("a/x", 2)
+                .put("a/x/y", 3)
+                .put("a/:id<int>", 4)
+                .put("a/:id<int>/z", 5)
+                .put("a/:name", 6)
+                .put("ab", 7)
+                .put(HttpMethod.POST, "b", 8)
+                .put(HttpMethod.GET, "b", 9)
+                .put("b", 10)
+                .build();
+
+        assertEquals(Arrays.asList("a", "a/x", "a/x/y", "a/:id<int>", "a/:id<int>/z", "a/:name", "ab", "b", "GET b",
+                "POST b"), trie.entries().map(PathTrieEntry::toString).collect(Collectors.toList()));
+        assertEquals(0L, trie.rank(""));
+        assertEquals(0L, trie.rank("A"));
+        // paths are ranked as literals, which come before the parameters of the same node
+        assertEquals(1L, trie.rank("a/5"));
+        assertEquals(1L, trie.rank("a/5/z"));
+        assertEquals(2L, trie.rank("a/x/y"));
+        assertEquals(3L, trie.rank("a/x/z"));
+        assertEquals(3L, trie.rank("a/y"));
+        assertEquals(6L, trie.rank("aa"));
+        assertEquals(7L, trie.rank("b"));
+        assertEquals(10L, trie.rank("b/c"));
+
+        assertEquals(0L, trie.range("a", "a").count());
+        assertEquals(Collections.singletonList(1), trie.range("a", "a/x").map(e -> e.getElement().get())
+                .collect(Collectors.toList()));
+        assertEquals(Arrays.asList(2, 3), trie.range("a/x", "a/y").map(e -> e.getElement().get())
+                .collect(Collectors.toList()));
+        assertEquals(Arrays.asList(4, 5, 6), trie.range("a/y", "ab").map(e -> e.getElement().get())
+                .collect(Collectors.toList()));
+        assertEquals(Arrays.asList(7, 10, 9, 8), trie.range("ab", "c").map(e -> e.getElement().get())
+                .collect(Collectors.toList()));
+
+        PathTrie<Integer> ignoringCase = PathTrie.<Integer>newBuilder()
+                .sorted()
+                .ignoringCase()
+                .put("B", 1)
+                .put("a", 2)
+                .put("C/d", 3)
+                .build();
+        assertEquals(Arrays.asList("a", "b", "c/d"), ignoringCase.entries().map(PathTrieEntry::getTemplate)
+                .collect(Collectors.toList()));
+        assertEquals(0L, ignoringCase.rank("A"));
+        assertEquals(1L, ignoringCase.rank("B"));
+        assertEquals(2L, ignoringCase.rank("C/D"));
+        assertEquals(3L, ignoringCase.rank("D"));
+    }
+
+    @Test
+    public void sortedTriesBinarySearchLiteralsAsUnsortedTriesLookThemUp() {
+        // more literals than are scanned linearly, some being prefixes of others
+        String[] literals = {"-7", "10", "a", "aa", "ab", "abc", "b", "ba", "caf\u00e9", "cafe", "users", "z"};
+        String[] misses = {"", "-", "0", "aaa", "ab0", "abcd", "c", "caf", "\u00e9", "zz", "~"};
+        for (boolean ignoreCase : new boolean[]{false, true}) {
+            PathTrieBuilder<Integer> builder = PathTrie.newBuilder();
+            PathTrieBuilder<Integer> sortedBuilder = PathTrie.<Integer>newBuilder().sorted();
+            if (ignoreCase) {
+                builder.ignoringCase();
+                sortedBuilder.ignoringCase();
+            }
+            for (int i = 0; i < literals.length; i++) {
+                builder.put(literals[i] + "/x", i);
+                sortedBuilder.put(literals[i] + "/x", i);
+            }
+            PathTrie<Integer> trie = builder.put(":other/x", -1).build();
+            PathTrie<Integer> sorted = sortedBuilder.put(":other/x", -1).build();
+
+            List<String> paths = new ArrayList<>();
+            for (String literal : literals) {
+                paths.add(literal);
+                paths.add(literal.toUpperCase(Locale.ROOT));
+            }
+            paths.addAll(Arrays.asList(misses));
+            for (String part : paths) {
+                String path = part + "/x";
+                String message = "Path " + path + (ignoreCase ? " ignoring case" : "");
+                String expected = trie.getParameterized(path).map(PathTrieTest::describe).orElse("none");
+                assertEquals(message, expected, sorted.getParameterized(path).map(PathTrieTest::describe)
+                        .orElse("none"));
+                assertEquals(message, expected, sorted.getParameterized(bytes(path)).map(PathTrieTest::describe)
+                        .orElse("none"));
+                assertEquals(message, expected, sorted.getByRequestTarget(percentEncoded(path))
+                        .map(PathTrieTest::describe).orElse("none"));
+            }
+            assertEquals(Optional.of(5), sorted.get("abc/x"));
+            assertEquals(Optional.of(-1), sorted.get("abcd/x"));
+            assertEquals(Optional.of(ignoreCase ? 8 : -1), sorted.get(bytes("CAF\u00c9/x")));
+        }
+    }
+
+    @Test
+    public void canWritePathsOfRoutes() throws IOException {
+        PathTrieBuilder<String> builder = PathTrie.<String>newBuilder(CATCH_ALL)
+                .putLongFun("users/:id<long>/orders/:order<long>", (id, order) -> "order " + id + "/" + order)
+                .put(HttpMethod.GET, "/files/:owner/*rest", "file")
+                .put("about", "about");
+        ReverseRoute orders = builder.route("users/:id<long>/orders/:order<long>");
+        ReverseRoute files = builder.route("/files/:owner/*rest");
+        PathTrie<String> trie = builder.build();
+
+        assertEquals(Arrays.asList("id", "order"), orders.getParameterNames());
+        assertEquals("users/123/orders/-9", orders.path(123, -9L));
+        assertEquals(Optional.of("order 123/9"), trie.get(orders.path(123, 9)));
+        StringBuilder links = new StringBuilder("<a href=\"");
+        orders.appendTo(links, Long.MIN_VALUE, 0L).append("\">");
+        assertEquals("<a href=\"users/" + Long.MIN_VALUE + "/orders/0\">", links.toString());
+        assertEquals("/files/joe/a/b.txt", files.appendTo(new StringBuilder(), "joe", "a/b.txt").toString());
+        StringWriter writer = new StringWriter();
+        files.writeTo(writer, new StringBuilder("joe"), Long.MIN_VALUE);
+        assertEquals("/files/joe/" + Long.MIN_VALUE, writer.toString());
+        writer = new StringWriter();
+        orders.writeTo(writer, 0, UUID.fromString("00000000-0000-0001-0000-000000000002"));
+        assertEquals("users/0/orders/00000000-0000-0001-0000-000000000002", writer.toString());
+        assertEquals("about", builder.route("about").path());
+
+        shouldThrow(() -> orders.path(1));
+        shouldThrow(() -> orders.path(1, null));
+        shouldThrow(() -> files.appendTo(new StringBuilder(), 1L));
+        shouldThrow(() -> builder.route("users/:id<long>"));
+        shouldThrow(() -> builder.route("users/:user<long>/orders/:order<long>"));
+        shouldThrow(() -> builder.route("missing"));
+    }
+
+    @Test
+    public void canLoadDirectoryTree() throws IOException {
+        Path directory = Files.createTempDirectory("pathtrie");
+        try {
+            Files.createDirectories(directory.resolve("users/:id"));
+            Files.createDirectories(directory.resolve("docs"));
+            Files.createDirectories(directory.resolve("empty/nested"));
+            Files.write(directory.resolve("index.html"), new byte[0]);
+            Files.write(directory.resolve("users/:id/profile"), new byte[0]);
+            Files.write(directory.resolve("docs/*page"), new byte[0]);
+            try {
+                Files.createSymbolicLink(directory.resolve("link"), directory.resolve("docs"));
+            } catch (UnsupportedOperationException | IOException e) {
+                // symbolic links are not supported everywhere
+            }
+
+            PathTrie<String> trie = PathTrie.<String>newBuilder()
+                    .put("users/:name", "user")
+                    .putDirectory(directory, file -> directory.relativize(file).toString())
+                    .build();
+            assertEquals(Optional.of("index.html"), trie.get("index.html"));
+            // names of files and directories are literal parts
+            assertEquals(Optional.of(Paths.get("users/:id/profile").toString()), trie.get("users/:id/profile"));
+            assertFalse(trie.get("users/10/profile").isPresent());
+            assertEquals(Optional.of("user"), trie.get("users/10"));
+            assertEquals(Optional.of(Paths.get("docs/*page").toString()), trie.get("docs/*page"));
+            assertFalse(trie.get("docs/a").isPresent());
+            assertFalse(trie.get("docs").isPresent());
+            // only regular files and directories with files under them have nodes
+            assertFalse(trie.getChild("link").isPresent());
+            assertFalse(trie.getChild("empty").isPresent());
+
+            shouldThrow(() -> {
+                try {
+                    PathTrie.<String>newBuilder().putDirectory(directory.resolve("missing"), Path::toString);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        } finally {
+            Files.walk(directory).sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
     private <V> void assertParameterHasValue(PathTrie<V> trie, String key, String parameterName,
                                              String parameterValue, V value) {
         Optional<ParameterizedElement<V>> element = trie.getParameterized(key);
@@ -384,7 +2281,7 @@ public class PathTrieTest {
         assertEquals("Element has correct value", trie.get(key).get(), value);
     }
 
-    private static Exception shouldThrow(Runnable action) {
+    static Exception shouldThrow(Runnable action) {
         try {
             action.run();
         } catch (Exception e) {
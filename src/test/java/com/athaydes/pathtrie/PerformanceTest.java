@@ -1,5 +1,8 @@
 package com.athaydes.pathtrie;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -8,6 +11,7 @@ import java.util.LongSummaryStatistics;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
+import java.util.TreeMap;
 import java.util.function.Supplier;
 import java.util.stream.LongStream;
 import org.junit.Ignore;
@@ -21,6 +25,9 @@ public class PerformanceTest {
     static final int WARMUP_RUNS = 50_000;
     static final int RUNS = 100_000;
 
+    // time of the runs which looked up other paths, as a lookup may take 0ns on coarse clocks
+    static final long NOT_RUN = -1;
+
     static PerformanceTestData NO_PARAMETERS = new PerformanceTestData(PathTrie.<Integer>newBuilder()
             .put("abc", 123)
             .put("abc/def", 456)
@@ -54,18 +61,114 @@ public class PerformanceTest {
                     new Example("not/existing/path", false)))
     );
 
+    static PerformanceTestData BACKTRACKING = new PerformanceTestData(PathTrie.<Integer>newBuilder()
+            .put("home/:param", 123)
+            .put("abc/def/ghi", 456)
+            .put("abc/:param/jkl", 789)
+            .put("mno/pqr/stu/vxz/wy", 100)
+            .put(":p1/pqr/:p2/vxz/yw", 200)
+            .build(),
+            new ArrayList<>(Arrays.asList(
+                    new Example("home/joe", true),
+                    new Example("abc/def/ghi", true),
+                    new Example("abc/def/jkl", true),
+                    new Example("abc/ghi/jkl", true),
+                    new Example("mno/pqr/stu/vxz/wy", true),
+                    new Example("mno/pqr/stu/vxz/yw", true),
+                    new Example("abc/def/mno", false),
+                    new Example("mno/pqr/stu/vxz/zz", false)))
+    );
+
+    // most lookups go to the last few of many siblings, more than are scanned without hashing
+    static PerformanceTestData SKEWED = skewed(32);
+
     @Test
     public void noParameters() {
         Map<String, long[]> results = run(NO_PARAMETERS);
-        Map<String, LongSummaryStatistics> stats = collectStats(results);
-        printReport(stats);
+        report("noParameters", results);
     }
 
     @Test
     public void parameterized() {
         Map<String, long[]> results = run(PARAMETERIZED);
-        Map<String, LongSummaryStatistics> stats = collectStats(results);
-        printReport(stats);
+        report("parameterized", results);
+    }
+
+    @Test
+    public void backtracking() {
+        Map<String, long[]> results = run(BACKTRACKING);
+        report("backtracking", results);
+    }
+
+    @Test
+    public void skewed() {
+        Map<String, long[]> results = run(SKEWED);
+        report("skewed", results);
+    }
+
+    @Test
+    public void compiledNoParameters() {
+        Map<String, long[]> results = run(NO_PARAMETERS, PathTrieCompiler.compile(NO_PARAMETERS.trie));
+        report("compiledNoParameters", results);
+    }
+
+    @Test
+    public void compiledParameterized() {
+        Map<String, long[]> results = run(PARAMETERIZED, PathTrieCompiler.compile(PARAMETERIZED.trie));
+        report("compiledParameterized", results);
+    }
+
+    @Test
+    public void compiledBacktracking() {
+        Map<String, long[]> results = run(BACKTRACKING, PathTrieCompiler.compile(BACKTRACKING.trie));
+        report("compiledBacktracking", results);
+    }
+
+    @Test
+    public void profileGuidedSkewed() {
+        PathTrieProfiler<?> profiler = PathTrieProfiler.profile(SKEWED.trie);
+        for (Example example : SKEWED.examples) {
+            profiler.record(example.path);
+        }
+        Map<String, long[]> results = run(SKEWED, profiler.optimize());
+        report("profileGuidedSkewed", results);
+    }
+
+    @Test
+    public void batch() {
+        List<String> paths = new ArrayList<>(RUNS);
+        Random random = new Random();
+        for (int i = 0; i < RUNS; i++) {
+            paths.add(PARAMETERIZED.examples.get(random.nextInt(PARAMETERIZED.examples.size())).path);
+        }
+        List<String> sortedPaths = new ArrayList<>(paths);
+        sortedPaths.sort(null);
+        PathTrie<?> trie = PARAMETERIZED.trie;
+        for (int i = 0; i < 10; i++) {
+            long loop = withTimer(() -> paths.stream().filter(path -> trie.get(path).isPresent()).count()).time;
+            long loopSorted = withTimer(() -> sortedPaths.stream().filter(path -> trie.get(path).isPresent()).count()).time;
+            long batchSorted = withTimer(() -> {
+                trie.getAll(sortedPaths, (index, element) -> {
+                });
+                return null;
+            }).time;
+            System.out.println("Batch of " + RUNS + " paths, ns per path: " +
+                    "loop=" + loop / RUNS + ", sorted loop=" + loopSorted / RUNS +
+                    ", sorted getAll=" + batchSorted / RUNS);
+        }
+    }
+
+    private static PerformanceTestData skewed(int siblings) {
+        PathTrieBuilder<Integer> builder = PathTrie.newBuilder();
+        List<Example> examples = new ArrayList<>();
+        for (int i = 0; i < siblings; i++) {
+            builder.put("service/s" + i, i);
+        }
+        examples.add(new Example("service/s0", true));
+        for (int i = 0; i < 7; i++) {
+            examples.add(new Example("service/s" + (siblings - 1 - i % 2), true));
+        }
+        return new PerformanceTestData(builder.build(), examples);
     }
 
     static Map<String, LongSummaryStatistics> collectStats(Map<String, long[]> data) {
@@ -90,9 +193,12 @@ public class PerformanceTest {
     }
 
     static Map<String, long[]> run(PerformanceTestData data) {
-        final boolean parameterized = data == PARAMETERIZED;
+        return run(data, data.trie);
+    }
+
+    static Map<String, long[]> run(PerformanceTestData data, PathTrie<?> trie) {
+        final boolean parameterized = data == PARAMETERIZED || data == BACKTRACKING;
         final List<Example> examples = data.examples;
-        final PathTrie<?> trie = data.trie;
         final Random random = new Random();
 
         for (int i = 0; i < WARMUP_RUNS; i++) {
@@ -102,7 +208,9 @@ public class PerformanceTest {
 
         Map<String, long[]> results = new HashMap<>(examples.size());
         for (Example ex : examples) {
-            results.put(ex.path, new long[RUNS]);
+            long[] times = new long[RUNS];
+            Arrays.fill(times, NOT_RUN);
+            results.put(ex.path, times);
         }
 
         for (int i = 0; i < RUNS; i++) {
@@ -117,13 +225,34 @@ public class PerformanceTest {
         return results;
     }
 
-    static void printReport(Map<String, LongSummaryStatistics> statisticsMap) {
-        statisticsMap.forEach((path, stats) -> {
-            System.out.println("  " + path + ":");
-            System.out.println("    - min: " + stats.getMin());
-            System.out.println("    - max: " + stats.getMax());
-            System.out.println("    - avg: " + stats.getAverage());
+    /**
+     * Print the latency percentiles of each path and write them as CSV, JSON and HTML to the directory given by the
+     * {@code pathtrie.reportDir} system property, {@code build/reports/latency} by default.
+     */
+    static void report(String title, Map<String, long[]> results) {
+        LatencyReport report = latencyReport(title, results);
+        try {
+            report.writeCsv(System.out);
+            report.writeTo(Paths.get(System.getProperty("pathtrie.reportDir", "build/reports/latency")));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return report with a series per path, of the times of the runs which looked the path up
+     */
+    static LatencyReport latencyReport(String title, Map<String, long[]> results) {
+        LatencyReport report = new LatencyReport(title, System.getProperty("pathtrie.version", "unknown"));
+        new TreeMap<>(results).forEach((path, times) -> {
+            LatencyHistogram histogram = report.series(path);
+            for (long time : times) {
+                if (time != NOT_RUN) {
+                    histogram.record(time);
+                }
+            }
         });
+        return report;
     }
 
     private static <T> TimerResult<T> withTimer(Supplier<T> action) {
@@ -143,23 +272,3 @@ class TimerResult<T> {
         this.time = time;
     }
 }
-
-class Example {
-    final String path;
-    final boolean exists;
-
-    Example(String path, boolean exists) {
-        this.path = path;
-        this.exists = exists;
-    }
-}
-
-class PerformanceTestData {
-    final PathTrie<?> trie;
-    final List<Example> examples;
-
-    PerformanceTestData(PathTrie<?> trie, List<Example> examples) {
-        this.trie = trie;
-        this.examples = examples;
-    }
-}
\ No newline at end of file
@@ -0,0 +1,13 @@
+package com.athaydes.pathtrie;
+
+import java.util.List;
+
+class PerformanceTestData {
+    final PathTrie<?> trie;
+    final List<Example> examples;
+
+    PerformanceTestData(PathTrie<?> trie, List<Example> examples) {
+        this.trie = trie;
+        this.examples = examples;
+    }
+}